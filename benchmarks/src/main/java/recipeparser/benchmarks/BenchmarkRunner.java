@@ -0,0 +1,53 @@
+package recipeparser.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Entry point of benchmarks.jar - same command line as JMH, with the GC profiler always added so every
+ * result carries allocation per op (gc.alloc.rate.norm) next to throughput / time.
+ * 
+ * @author NicholasChristou
+ *
+ */
+public class BenchmarkRunner {
+
+	private BenchmarkRunner()
+	{
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		
+		//Listing and help are left to JMH itself
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+				|| commandLine.shouldListProfilers() || commandLine.shouldListResultFormats())
+		{
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (!hasGcProfiler(commandLine))
+			options.addProfiler(GCProfiler.class);
+		new Runner(options.build()).run();
+	}
+
+	/**
+	 * @return - true if "-prof gc" was already given
+	 */
+	private static boolean hasGcProfiler(CommandLineOptions commandLine)
+	{
+		for (ProfilerConfig profiler : commandLine.getProfilers())
+		{
+			if (profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName()))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,97 @@
+package recipeparser.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import recipeparser.input.RecipeBinaryReader;
+import recipeparser.output.RecipeBinaryWriter;
+import recipeparser.output.RecipeMarshallerPool;
+import recipeparser.output.RecipeOutputWriter;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Reloading a parsed corpus - binary format vs JAXB unmarshalling of each recipe's xml. One op is the whole
+ * corpus (fixtures repeated with new ids, -p corpusSize) loaded from memory.
+ * 
+ * @author NicholasChristou
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.sun.xml.bind.v2.bytecode.ClassTailor.noOptimize=true")
+public class BinaryFormatBenchmark {
+
+	@Param({ "10000" })
+	public int corpusSize;
+
+	private byte[] binary;
+	private List<String> xml;
+	private Unmarshaller unmarshaller;
+
+	@Setup
+	public void setup() throws IOException, JAXBException
+	{
+		List<Recipe> fixtures = Fixtures.recipes();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		xml = new ArrayList<>(corpusSize);
+		try (RecipeBinaryWriter writer = new RecipeBinaryWriter(bytes))
+		{
+			for (int i=0; i<corpusSize; i++)
+			{
+				Recipe recipe = fixtures.get(i % fixtures.size());
+				recipe.setId(i);
+				writer.write(recipe);
+				xml.add(RecipeOutputWriter.marshalRecipe(recipe));
+			}
+		}
+		binary = bytes.toByteArray();
+		unmarshaller = RecipeMarshallerPool.getContext().createUnmarshaller();
+	}
+
+	@Benchmark
+	public int readBinary() throws IOException
+	{
+		int count = 0;
+		try (RecipeBinaryReader reader = new RecipeBinaryReader(new ByteArrayInputStream(binary)))
+		{
+			while (reader.read() != null)
+				count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int unmarshalXml() throws JAXBException
+	{
+		int count = 0;
+		for (String recipe : xml)
+		{
+			if (unmarshaller.unmarshal(new StringReader(recipe)) != null)
+				count++;
+		}
+		return count;
+	}
+}
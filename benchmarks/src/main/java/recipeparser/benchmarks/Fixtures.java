@@ -0,0 +1,221 @@
+package recipeparser.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import recipeparser.input.RecipeFileReader;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Seed inputs for benchmarks, taken from the recipe-parser test resources
+ * 
+ * Directory defaults to ../src/test/resources (running from the benchmarks directory), 
+ * override with -Drecipeparser.fixtures=path
+ * 
+ * @author NicholasChristou
+ *
+ */
+public class Fixtures {
+
+	/**
+	 * Fixture lines split by recipe section
+	 */
+	public static class Lines {
+		private final List<String> firstLines = new ArrayList<>();
+		private final List<String> ingredientLines = new ArrayList<>();
+		private final List<String> methodLines = new ArrayList<>();
+		private final List<String> amountWords = new ArrayList<>();
+
+		public List<String> getFirstLines()
+		{
+			return firstLines;
+		}
+
+		public List<String> getIngredientLines()
+		{
+			return ingredientLines;
+		}
+
+		public List<String> getMethodLines()
+		{
+			return methodLines;
+		}
+
+		/**
+		 * @return - first word of each ingredient line (amount, amount with uom, or start of item)
+		 */
+		public List<String> getAmountWords()
+		{
+			return amountWords;
+		}
+	}
+
+	private Fixtures()
+	{
+	}
+
+	/**
+	 * @return - fixture directory
+	 */
+	public static File directory()
+	{
+		File dir = new File(System.getProperty("recipeparser.fixtures", "../src/test/resources"));
+		if (!dir.isDirectory())
+			throw new IllegalStateException("Fixture directory not found: " + dir.getAbsolutePath());
+		return dir;
+	}
+
+	/**
+	 * @return - raw content of every .txt fixture
+	 * @throws IOException - if a fixture could not be read
+	 */
+	public static List<byte[]> rawRecipes() throws IOException
+	{
+		List<byte[]> contents = new ArrayList<>();
+		File[] files = directory().listFiles((dir, name) -> name.endsWith(".txt"));
+		if (files != null)
+		{
+			for (File file : files)
+				contents.add(Files.readAllBytes(file.toPath()));
+		}
+		return contents;
+	}
+
+	/**
+	 * Splits fixtures into first, ingredient and method lines (non-empty, BOM removed) the same way the
+	 * reader does
+	 * 
+	 * @return - fixture lines
+	 * @throws IOException - if a fixture could not be read
+	 */
+	public static Lines lines() throws IOException
+	{
+		Lines lines = new Lines();
+		for (byte[] content : rawRecipes())
+		{
+			boolean firstLineRead = false;
+			List<String> section = null;
+			for (String line : new String(content, StandardCharsets.UTF_8).split("\\r\\n|\\r|\\n"))
+			{
+				line = line.replace("\uFEFF", "");
+				String lower = line.toLowerCase(Locale.ROOT);
+				if (line.trim().isEmpty())
+					continue;
+				else if (lower.contains("ingredient"))
+					section = lines.ingredientLines;
+				else if (lower.contains("method"))
+					section = lines.methodLines;
+				else if (!firstLineRead)
+				{
+					lines.firstLines.add(line);
+					firstLineRead = true;
+				}
+				else if (section != null)
+				{
+					section.add(line);
+					if (section == lines.ingredientLines)
+						lines.amountWords.add(line.trim().split("\\s+")[0]);
+				}
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Writes count recipe files to dir, cycling through the valid fixtures with the id on the first line
+	 * replaced by a running number (1..count) so every file produces its own xml
+	 * 
+	 * @param dir - target directory
+	 * @param count - number of files
+	 * @throws IOException - if a fixture could not be read or a file written
+	 */
+	public static void generateCorpus(File dir, int count) throws IOException
+	{
+		List<byte[]> contents = generateContents(count);
+		for (int i=1; i<=count; i++)
+			Files.write(new File(dir, i + ".txt").toPath(), contents.get(i - 1));
+	}
+
+	/**
+	 * Same recipes as generateCorpus, in memory
+	 * 
+	 * @param count - number of recipes
+	 * @return - content of recipes 1..count
+	 * @throws IOException - if a fixture could not be read
+	 */
+	public static List<byte[]> generateContents(int count) throws IOException
+	{
+		//Valid fixtures only, with leading BOM and id removed (everything from the id's period kept)
+		List<String> bodies = new ArrayList<>();
+		for (byte[] content : rawRecipes())
+		{
+			if (RecipeFileReader.parseRecipe(content, "fixture") == null)
+				continue;
+			String text = new String(content, StandardCharsets.UTF_8).replace("\uFEFF", "");
+			bodies.add(text.substring(text.indexOf('.')));
+		}
+		if (bodies.isEmpty())
+			throw new IllegalStateException("No valid fixtures in " + directory().getAbsolutePath());
+
+		List<byte[]> contents = new ArrayList<>(count);
+		for (int i=1; i<=count; i++)
+		{
+			String body = bodies.get(i % bodies.size());
+			contents.add((i + body).getBytes(StandardCharsets.UTF_8));
+		}
+		return contents;
+	}
+
+	/**
+	 * Deletes directory and everything below it
+	 * 
+	 * @param dir - directory to delete
+	 * @throws IOException - if anything could not be deleted
+	 */
+	public static void deleteRecursively(File dir) throws IOException
+	{
+		if (dir == null || !dir.exists())
+			return;
+		Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+			{
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException
+			{
+				Files.delete(directory);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * @return - every fixture that parses to a recipe
+	 * @throws IOException - if a fixture could not be read
+	 */
+	public static List<Recipe> recipes() throws IOException
+	{
+		List<Recipe> recipes = new ArrayList<>();
+		for (byte[] content : rawRecipes())
+		{
+			Recipe recipe = RecipeFileReader.parseRecipe(content, "fixture");
+			if (recipe != null)
+				recipes.add(recipe);
+		}
+		return recipes;
+	}
+}
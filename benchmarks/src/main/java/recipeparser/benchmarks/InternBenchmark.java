@@ -0,0 +1,108 @@
+package recipeparser.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import recipeparser.input.RecipeFileReader;
+import recipeparser.input.StringInterner;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Retained heap of a parsed corpus with and without interning of authors and ingredient items. One op parses
+ * the whole corpus (fixtures repeated with new ids, -p corpusSize) and keeps every recipe.
+ *
+ * Read the retainedBytesPer100k counter (heap used after a full GC, with the recipes held vs before
+ * parsing, scaled to 100k recipes). One measured op, as the counter is summed over iterations. The time includes
+ * those GCs.
+ *
+ * @author NicholasChristou
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Dcom.sun.xml.bind.v2.bytecode.ClassTailor.noOptimize=true" })
+public class InternBenchmark {
+
+	/**
+	 * Retained heap of the last op, reported next to the time
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Retained {
+		public long retainedBytesPer100k;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			retainedBytesPer100k = 0;
+		}
+	}
+
+	@Param({ "true", "false" })
+	public boolean intern;
+
+	@Param({ "100000" })
+	public int corpusSize;
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+	private List<byte[]> contents;
+	private List<Recipe> recipes;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		StringInterner.setEnabled(intern);
+		contents = Fixtures.generateContents(corpusSize);
+	}
+
+	@Setup(Level.Iteration)
+	public void clear()
+	{
+		//Each op starts from empty tables and nothing held
+		recipes = null;
+		StringInterner.AUTHORS.clear();
+		StringInterner.ITEMS.clear();
+	}
+
+	@Benchmark
+	public int parseAndRetain(Retained retained)
+	{
+		long before = usedAfterGc();
+		List<Recipe> parsed = new ArrayList<>(corpusSize);
+		for (byte[] content : contents)
+			parsed.add(RecipeFileReader.parseRecipe(content, "benchmark"));
+
+		//Held by the field while measuring
+		recipes = parsed;
+		retained.retainedBytesPer100k = (usedAfterGc() - before) * 100000 / corpusSize;
+		return recipes.size();
+	}
+
+	private long usedAfterGc()
+	{
+		System.gc();
+		System.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,67 @@
+package recipeparser.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import recipeparser.RecipeParser;
+
+/**
+ * End to end processFiles over a generated corpus (fixtures copied with new ids) - one op is one full run,
+ * read through to every {id}.xml written.
+ * 
+ * The pipeline works on its own threads, which the GC profiler's gc.alloc.rate.norm does not see - use the
+ * gc.alloc.rate (MB/sec, whole JVM) figure for this one.
+ * 
+ * @author NicholasChristou
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.sun.xml.bind.v2.bytecode.ClassTailor.noOptimize=true")
+public class ProcessFilesBenchmark {
+
+	@Param({ "100", "2000" })
+	public int corpusSize;
+
+	private File inputDir;
+	private File outputDir;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		inputDir = Files.createTempDirectory("recipe-corpus").toFile();
+		outputDir = Files.createTempDirectory("recipe-corpus-out").toFile();
+		Fixtures.generateCorpus(inputDir, corpusSize);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Fixtures.deleteRecursively(inputDir);
+		Fixtures.deleteRecursively(outputDir);
+	}
+
+	@Benchmark
+	public void processFiles()
+	{
+		RecipeParser.processFiles(inputDir, outputDir);
+	}
+}
@@ -0,0 +1,99 @@
+package recipeparser.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import recipeparser.input.RecipeFileReaderUtils;
+import recipeparser.recipe.MetaDataAndId;
+import recipeparser.recipe.Recipe.Content.Ingredients.Ingredient;
+
+/**
+ * Line level parsing in RecipeFileReaderUtils - one op is one fixture line (cycling through all of them).
+ * 
+ * tryParseIngAmt is fed the first word of each ingredient line, a mix of amounts and plain words as
+ * seen while reading ingredients.
+ * 
+ * @author NicholasChristou
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderUtilsBenchmark {
+
+	private RecipeFileReaderUtils utils;
+	private List<String> firstLines;
+	private List<String> ingredientLines;
+	private List<String> methodLines;
+	private List<String> amountWords;
+	private int nextFirst;
+	private int nextIngredient;
+	private int nextMethod;
+	private int nextAmount;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		utils = new RecipeFileReaderUtils();
+		Fixtures.Lines lines = Fixtures.lines();
+		firstLines = lines.getFirstLines();
+		ingredientLines = lines.getIngredientLines();
+		methodLines = lines.getMethodLines();
+		amountWords = lines.getAmountWords();
+	}
+
+	@Benchmark
+	public MetaDataAndId firstLineScan()
+	{
+		String line = firstLines.get(nextFirst);
+		nextFirst = (nextFirst + 1) % firstLines.size();
+		return utils.firstLineScan(line);
+	}
+
+	@Benchmark
+	public Ingredient readIngredientLine()
+	{
+		String line = ingredientLines.get(nextIngredient);
+		nextIngredient = (nextIngredient + 1) % ingredientLines.size();
+		return utils.readIngredientLine(line);
+	}
+
+	@Benchmark
+	public String readMethodStepLine()
+	{
+		String line = methodLines.get(nextMethod);
+		nextMethod = (nextMethod + 1) % methodLines.size();
+		return utils.readMethodStepLine(line);
+	}
+
+	@Benchmark
+	public String checkNumbering()
+	{
+		String line = methodLines.get(nextMethod);
+		nextMethod = (nextMethod + 1) % methodLines.size();
+		return utils.checkNumbering(line);
+	}
+
+	@Benchmark
+	public Double tryParseIngAmt()
+	{
+		String word = amountWords.get(nextAmount);
+		nextAmount = (nextAmount + 1) % amountWords.size();
+		return utils.tryParseIngAmt(word);
+	}
+}
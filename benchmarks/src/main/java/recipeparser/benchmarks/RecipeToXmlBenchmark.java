@@ -0,0 +1,62 @@
+package recipeparser.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import recipeparser.output.RecipeOutputWriter;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Marshal and write of a single recipe to {id}.xml in a temp directory - one op is one recipe.
+ * 
+ * @author NicholasChristou
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.sun.xml.bind.v2.bytecode.ClassTailor.noOptimize=true")
+public class RecipeToXmlBenchmark {
+
+	private List<Recipe> recipes;
+	private File outputDir;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		recipes = Fixtures.recipes();
+		outputDir = Files.createTempDirectory("recipe-xml-bench").toFile();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Fixtures.deleteRecursively(outputDir);
+	}
+
+	@Benchmark
+	public boolean recipeToXml()
+	{
+		Recipe recipe = recipes.get(next);
+		next = (next + 1) % recipes.size();
+		return RecipeOutputWriter.recipeToXml(recipe, outputDir);
+	}
+}
@@ -0,0 +1,69 @@
+package recipeparser.benchmarks;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import recipeparser.output.OutputFormat;
+import recipeparser.output.RecipeSerializer;
+import recipeparser.output.XmlBackend;
+import recipeparser.recipe.Recipe;
+
+/**
+ * JAXB vs streaming XML backend, and the streaming JSON generator - one op is one recipe serialized.
+ * 
+ * gc.alloc.rate.norm (GC profiler, added by BenchmarkRunner) is bytes allocated per recipe.
+ * 
+ * @author NicholasChristou
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.sun.xml.bind.v2.bytecode.ClassTailor.noOptimize=true")
+public class SerializerBenchmark {
+
+	@Param({ "JAXB", "STREAMING", "JSON" })
+	public String backend;
+
+	private RecipeSerializer serializer;
+	private List<Recipe> recipes;
+	private StringWriter writer;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		serializer = "JSON".equals(backend) ? OutputFormat.JSON.getSerializer(XmlBackend.STREAMING)
+				: XmlBackend.fromName(backend).getSerializer();
+		recipes = Fixtures.recipes();
+		writer = new StringWriter(8192);
+	}
+
+	@Benchmark
+	public int serialize() throws IOException
+	{
+		Recipe recipe = recipes.get(next);
+		next = (next + 1) % recipes.size();
+
+		//Reuse buffer so only serializer allocations are measured
+		writer.getBuffer().setLength(0);
+		serializer.serialize(recipe, writer);
+		return writer.getBuffer().length();
+	}
+}
@@ -0,0 +1,137 @@
+package recipeparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import recipeparser.input.UnitOfMeasureLexicon;
+
+/**
+ * Unit lexicon trie vs the original toLowerCase() + string switch - one op is the second word of
+ * every sample line looked up (mix of units and non-units).
+ * 
+ * gc.alloc.rate.norm (GC profiler, added by BenchmarkRunner) is bytes allocated per op.
+ * 
+ * @author NicholasChristou
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnitLookupBenchmark {
+
+	private static final String[] LINES = {
+			"225 g unsalted butter",
+			"4 large eggs",
+			"2 TBSP flaked almonds",
+			"1 Teaspoon vanilla extract",
+			"20 ml milk",
+			"3 cups plain flour",
+			"1 pinch salt",
+			"2 icing sugar",
+			"500 Millilitres water",
+			"1 lemon zested" };
+
+	private UnitOfMeasureLexicon lexicon;
+	private int[] starts;
+	private int[] ends;
+
+	@Setup
+	public void setup()
+	{
+		lexicon = UnitOfMeasureLexicon.getDefault();
+		starts = new int[LINES.length];
+		ends = new int[LINES.length];
+		for (int i=0; i<LINES.length; i++)
+		{
+			starts[i] = LINES[i].indexOf(' ') + 1;
+			ends[i] = LINES[i].indexOf(' ', starts[i]);
+		}
+	}
+
+	@Benchmark
+	public int lexicon()
+	{
+		int matched = 0;
+		for (int i=0; i<LINES.length; i++)
+		{
+			if (lexicon.lookup(LINES[i], starts[i], ends[i]) != null)
+				matched++;
+		}
+		return matched;
+	}
+
+	@Benchmark
+	public int legacySwitch()
+	{
+		int matched = 0;
+		for (int i=0; i<LINES.length; i++)
+		{
+			if (legacyFindUnitOfMeasure(LINES[i].substring(starts[i], ends[i])) != null)
+				matched++;
+		}
+		return matched;
+	}
+
+	/**
+	 * Copy of the switch the lexicon replaced
+	 */
+	private static String legacyFindUnitOfMeasure(String uom)
+	{
+		switch (uom.toLowerCase())
+		{
+		case "g":
+		case "grams":
+			return "grams";
+		case "kg":
+		case "kilograms":
+			return "kilograms";
+		case "dr":
+		case "drop":
+		case "drops":
+			return "drops";
+		case "pn":
+		case "pinch":
+		case "pinches":
+			return "pinches";
+		case "tsp":
+		case "teaspoon":
+		case "teaspoons":
+			return "teaspoons";
+		case "tbsp":
+		case "tablespoon":
+		case "tablespoons":
+			return "tablespoons";
+		case "ml":
+		case "millilitre":
+		case "millilitres":
+			return "millilitres";
+		case "l":
+		case "litre":
+		case "litres":
+			return "litres";
+		case "pt":
+		case "pint":
+		case "pints":
+			return "pints";
+		case "c":
+		case "cup":
+		case "cups":
+			return "cups";
+		default:
+			return null;
+		}
+	}
+}
@@ -1,11 +1,19 @@
 package recipeparser;
 
 import java.io.File;
-import java.util.List;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
-import recipeparser.input.RecipeFileReader;
-import recipeparser.output.RecipeOutputWriter;
-import recipeparser.recipe.Recipe;
+import javax.management.JMException;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.input.RecipeArchiveReader;
+import recipeparser.input.RecipeBinaryReader;
+import recipeparser.input.UnitOfMeasureLexicon;
+import recipeparser.metrics.RecipeMetrics;
+import recipeparser.pipeline.PipelineConfig;
+import recipeparser.pipeline.RecipeDirectoryWatcher;
+import recipeparser.pipeline.RecipePipeline;
 
 /**
  * Recipe Parser App
@@ -18,13 +26,26 @@ public class RecipeParser {
  /**
   * Entry Point
   * 
-  * @param args: 0 - inputDir, 1 - outputDir
+  * @param args: 0 - inputDir, 1 - outputDir, 2+ - options (eg. --parseThreads=4)
   */
 public static void main(String[] args) {
 	  
 	  //Check correct number of args
-	  if (args.length != 2) {
-		  System.out.println("Requires 2 args: [InputDir] [OutputDir]");
+	  if (args.length < 2) {
+		  System.out.println("Requires 2 args: [InputDir] [OutputDir] [--option=value ...]");
+		  System.out.println("Options: --readThreads --parseThreads --marshalThreads --writeThreads --queueCapacity --xmlBackend=jaxb|streaming --units=file --incremental --watch --watchDebounce=ms --virtualThreads --maxOpenFiles --recursive --include=globs --exclude=globs --outputZip=name.zip --zipLevel=0-9 --zipIndex --corpus --metrics=report.json|report.prom --failures=file --consoleLimit=n --writeBehind --writeBuffers=n --writeBufferKB=n --flush=none|data|all --skipUnchanged --outputBinary=name.rcpb --format=xml|json --outputNdjson=name.ndjson --index --duplicateIds=first|newest|divert");
+		  return;
+	  }
+	  
+	  //Options
+	  RecipeParserOptions options;
+	  try
+	  {
+		  options = RecipeParserOptions.parse(args, 2);
+	  }
+	  catch (IllegalArgumentException e)
+	  {
+		  System.out.println(e.getMessage());
 		  return;
 	  }
 	  
@@ -33,8 +54,10 @@ public static void main(String[] args) {
 	  File outputDir = new File(args[1]);
 	  boolean invalidArgs = false;
 	  
-	  //Check input directory valid
-	  if (!inputDir.isDirectory())
+	  //Check input directory (or archive, or corpus file) valid
+	  boolean inputValid = options.isSet("corpus") ? inputDir.isFile()
+			  : inputDir.isDirectory() || (inputDir.isFile() && (RecipeArchiveReader.isArchive(inputDir) || RecipeBinaryReader.isBinary(inputDir)));
+	  if (!inputValid)
 	  {
 		  System.out.println("Input path not valid - " + args[0]);
 		  invalidArgs = true;
@@ -51,13 +74,114 @@ public static void main(String[] args) {
 	  if(invalidArgs)
 		  return;
 	  
+	  //Replace built in unit of measure lexicon
+	  String unitsFile = options.getString("units", null);
+	  if (unitsFile != null)
+	  {
+		  try
+		  {
+			  UnitOfMeasureLexicon.setDefault(UnitOfMeasureLexicon.load(new File(unitsFile)));
+		  }
+		  catch (IOException | IllegalArgumentException e)
+		  {
+			  System.out.println("Units file not valid - " + unitsFile + " - " + e.getMessage());
+			  return;
+		  }
+	  }
+	  
+	  //Diagnostics (skipped files, unreadable ids, dates etc.) to failures file and rate limited console
+	  String failuresFile = options.getString("failures", null);
+	  try
+	  {
+		  Diagnostics.configure(failuresFile == null ? null : new File(failuresFile), 
+				  options.getInt("consoleLimit", Diagnostics.DEFAULT_CONSOLE_LIMIT));
+	  }
+	  catch (IOException e)
+	  {
+		  System.out.println("Failures file not valid - " + failuresFile + " - " + e.getMessage());
+		  return;
+	  }
+	  catch (IllegalArgumentException e)
+	  {
+		  System.out.println(e.getMessage());
+		  return;
+	  }
+	  
+	  //Stage counters and latencies, over JMX while running and as a report at exit
+	  String metricsReport = options.getString("metrics", null);
+	  if (metricsReport != null)
+		  enableMetrics();
+	  
+	  //Long running mode, until stopped (Ctrl+C)
+	  if (options.isSet("watch"))
+	  {
+		  if (!inputDir.isDirectory())
+		  {
+			  System.out.println("Watch mode needs an input directory - " + args[0]);
+			  return;
+		  }
+		  watchFiles(inputDir, outputDir, options);
+		  Diagnostics.close();
+		  writeMetricsReport(metricsReport);
+		  return;
+	  }
+	  
 	  //Actual work
-	  int processedFiles = processFiles(inputDir, outputDir);
+	  int processedFiles;
+	  try
+	  {
+		  processedFiles = processFiles(inputDir, outputDir, options.toPipelineConfig());
+	  }
+	  catch (IllegalArgumentException e)
+	  {
+		  System.out.println(e.getMessage());
+		  return;
+	  }
 	  
 	  //Complete
+	  Diagnostics.close();
+	  writeMetricsReport(metricsReport);
 	  System.out.println("Recipe Parsing Complete. Files output: " + processedFiles);
   }
   
+ /**
+  * Starts timing stages and registers the metrics MXBean
+  */
+private static void enableMetrics() 
+  {
+	  RecipeMetrics.enable();
+	  try
+	  {
+		  RecipeMetrics.registerMBean();
+	  }
+	  catch (JMException e)
+	  {
+		  System.out.println("Failed to register metrics MBean - " + e.getMessage());
+	  }
+  }
+  
+ /**
+  * Writes metrics run report, if metrics enabled
+  * 
+  * @param reportPath - report file (.json, or .prom / .txt for Prometheus text), null if metrics not enabled
+  */
+private static void writeMetricsReport(String reportPath) 
+  {
+	  if (reportPath == null)
+		  return;
+	  
+	  RecipeMetrics.disable();
+	  try
+	  {
+		  RecipeMetrics.writeReport(new File(reportPath));
+		  System.out.println("Metrics report written - " + reportPath);
+	  }
+	  catch (IOException e)
+	  {
+		  System.out.println("Failed to write metrics report - " + reportPath + " - " + e.getMessage());
+	  }
+  }
+  
  /**
   * Reads txt files from input dir and print xml to output dir
   * 
@@ -67,11 +191,72 @@ public static void main(String[] args) {
   */
 public static int processFiles(File inputDir, File outputDir) 
   {
-	  //Read files from input
-	  List<Recipe> recipes = RecipeFileReader.readFilesFromInput(inputDir);
+	  return processFiles(inputDir, outputDir, new PipelineConfig());
+  }
+  
+ /**
+  * Reads txt files from input dir (or .zip / .tar.gz archive, or corpus file) and print xml to output dir, with reading, 
+  * parsing, marshalling and writing overlapped across the configured stage threads
+  * 
+  * @param inputDir - input directory or archive
+  * @param outputDir - output directory
+  * @param config - stage thread counts and queue sizing
+  * @return - successfully created xmls
+  */
+public static int processFiles(File inputDir, File outputDir, PipelineConfig config) 
+  {
+	  return new RecipePipeline(config).run(inputDir, outputDir);
+  }
+  
+ /**
+  * Watches input dir and writes xml for each txt file as it lands, until the JVM is stopped
+  * 
+  * @param inputDir - input directory
+  * @param outputDir - output directory
+  * @param options - worker threads, xml backend and debounce (ms)
+  */
+private static void watchFiles(File inputDir, File outputDir, RecipeParserOptions options) 
+  {
+	  RecipeDirectoryWatcher watcher;
+	  try
+	  {
+		  watcher = new RecipeDirectoryWatcher(inputDir, outputDir, options.toPipelineConfig(), options.getInt("watchDebounce", 100));
+	  }
+	  catch (IllegalArgumentException e)
+	  {
+		  System.out.println(e.getMessage());
+		  return;
+	  }
+	  
+	  //On Ctrl+C let main finish stable files (and write any metrics report) before the JVM exits
+	  Thread mainThread = Thread.currentThread();
+	  Runtime.getRuntime().addShutdownHook(new Thread(() ->
+	  {
+		  watcher.close();
+		  try
+		  {
+			  mainThread.join(TimeUnit.SECONDS.toMillis(30));
+		  }
+		  catch (InterruptedException e)
+		  {
+			  Thread.currentThread().interrupt();
+		  }
+	  }));
 	  
-	  //Write to XML from output
-	  return RecipeOutputWriter.parseAllRecipes(recipes, outputDir);
+	  System.out.println("Watching " + inputDir.getAbsolutePath() + " for recipe files (Ctrl+C to stop)");
+	  try
+	  {
+		  watcher.run();
+	  }
+	  catch (IOException e)
+	  {
+		  System.out.println("Failed to watch input directory - " + e.getMessage());
+	  }
+	  catch (InterruptedException e)
+	  {
+		  Thread.currentThread().interrupt();
+	  }
+	  System.out.println("Recipe watching stopped. Files output: " + watcher.getFilesOutput());
   }
   
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package recipeparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import recipeparser.output.FlushPolicy;
+import recipeparser.output.OutputFormat;
+import recipeparser.output.XmlBackend;
+import recipeparser.pipeline.DuplicateIdPolicy;
+import recipeparser.pipeline.PipelineConfig;
+
+/**
+ * Optional command line switches following the input and output directories, in the form
+ * "--name=value" or "--flag"
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeParserOptions {
+
+	//Recognised option names
+	private static final Set<String> KNOWN_OPTIONS = new HashSet<>(Arrays.asList(
+			"readThreads", "parseThreads", "marshalThreads", "writeThreads", "queueCapacity",
+			"xmlBackend", "units", "incremental", "watch", "watchDebounce", "virtualThreads", "maxOpenFiles",
+			"recursive", "include", "exclude", "outputZip", "zipLevel", "zipIndex", "corpus", "metrics", "failures", "consoleLimit",
+			"writeBehind", "writeBuffers", "writeBufferKB", "flush", "skipUnchanged", "outputBinary",
+			"format", "outputNdjson", "index", "duplicateIds"));
+
+	private final Map<String, String> values = new HashMap<>();
+
+	/**
+	 * Parses options from command line args
+	 *
+	 * @param args - command line args
+	 * @param offset - index of first option arg
+	 * @return - parsed options
+	 * @throws IllegalArgumentException - if an option is malformed or unknown
+	 */
+	public static RecipeParserOptions parse(String[] args, int offset)
+	{
+		RecipeParserOptions options = new RecipeParserOptions();
+		for (int i=offset; i<args.length; i++)
+		{
+			String arg = args[i];
+			if (!arg.startsWith("--"))
+				throw new IllegalArgumentException("Expected option starting with -- : " + arg);
+
+			int equalsIndex = arg.indexOf('=');
+			String name = equalsIndex == -1 ? arg.substring(2) : arg.substring(2, equalsIndex);
+			String value = equalsIndex == -1 ? "true" : arg.substring(equalsIndex + 1);
+
+			if (!KNOWN_OPTIONS.contains(name))
+				throw new IllegalArgumentException("Unknown option: " + arg);
+
+			options.values.put(name, value);
+		}
+		return options;
+	}
+
+	/**
+	 * @param name - option name
+	 * @param defaultValue - value if option not given
+	 * @return - option value as int
+	 */
+	public int getInt(String name, int defaultValue)
+	{
+		String value = values.get(name);
+		if (value == null)
+			return defaultValue;
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Option --" + name + " requires a whole number - " + value);
+		}
+	}
+
+	/**
+	 * @param name - option name
+	 * @param defaultValue - value if option not given
+	 * @return - option value
+	 */
+	public String getString(String name, String defaultValue)
+	{
+		String value = values.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Comma separated values, commas inside {} kept (eg. glob "*.{txt,rcp}")
+	 *
+	 * @param name - option name
+	 * @return - values, empty if option not given
+	 */
+	public List<String> getList(String name)
+	{
+		String value = values.get(name);
+		List<String> result = new ArrayList<>();
+		if (value == null)
+			return result;
+
+		int depth = 0;
+		int start = 0;
+		for (int i=0; i<=value.length(); i++)
+		{
+			char c = i < value.length() ? value.charAt(i) : ',';
+			if (c == '{')
+				depth++;
+			else if (c == '}')
+				depth--;
+			else if (c == ',' && depth <= 0)
+			{
+				String item = value.substring(start, i).trim();
+				if (!item.isEmpty())
+					result.add(item);
+				start = i + 1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param name - option name
+	 * @return - true if flag given (or set to "true")
+	 */
+	public boolean isSet(String name)
+	{
+		return Boolean.parseBoolean(values.get(name));
+	}
+
+	/**
+	 * @return - pipeline thread counts and queue sizing, defaults where not given
+	 */
+	public PipelineConfig toPipelineConfig()
+	{
+		PipelineConfig config = new PipelineConfig();
+		config.setReadThreads(getInt("readThreads", config.getReadThreads()));
+		config.setParseThreads(getInt("parseThreads", config.getParseThreads()));
+		config.setMarshalThreads(getInt("marshalThreads", config.getMarshalThreads()));
+		config.setWriteThreads(getInt("writeThreads", config.getWriteThreads()));
+		config.setQueueCapacity(getInt("queueCapacity", config.getQueueCapacity()));
+		config.setXmlBackend(XmlBackend.fromName(getString("xmlBackend", config.getXmlBackend().name())));
+		config.setIncremental(isSet("incremental"));
+		config.setVirtualThreads(isSet("virtualThreads"));
+		config.setMaxOpenFiles(getInt("maxOpenFiles", config.getMaxOpenFiles()));
+		config.setRecursive(isSet("recursive"));
+		config.setInclude(getList("include"));
+		config.setExclude(getList("exclude"));
+		config.setOutputZip(getString("outputZip", null));
+		config.setZipLevel(getInt("zipLevel", config.getZipLevel()));
+		config.setZipIndex(isSet("zipIndex"));
+		config.setCorpus(isSet("corpus"));
+		config.setWriteBehind(isSet("writeBehind"));
+		config.setWriteBuffers(getInt("writeBuffers", config.getWriteBuffers()));
+		config.setWriteBufferSize(getInt("writeBufferKB", config.getWriteBufferSize() / 1024) * 1024);
+		config.setFlushPolicy(FlushPolicy.fromName(getString("flush", config.getFlushPolicy().name())));
+		config.setSkipUnchanged(isSet("skipUnchanged"));
+		config.setOutputBinary(getString("outputBinary", null));
+		config.setOutputFormat(OutputFormat.fromName(getString("format", config.getOutputFormat().name())));
+		config.setOutputNdjson(getString("outputNdjson", null));
+		config.setIndex(isSet("index"));
+		String duplicateIds = getString("duplicateIds", null);
+		if (duplicateIds != null)
+			config.setDuplicateIds(DuplicateIdPolicy.fromName(duplicateIds));
+		if (config.getDuplicateIds() != null && config.getDuplicateIds() != DuplicateIdPolicy.FIRST && config.isSingleFileOutput())
+			throw new IllegalArgumentException("Only --duplicateIds=first can be used with --outputZip, --outputBinary or --outputNdjson");
+		int singleFileOutputs = (config.getOutputZip() != null ? 1 : 0) + (config.getOutputBinary() != null ? 1 : 0)
+				+ (config.getOutputNdjson() != null ? 1 : 0);
+		if (singleFileOutputs > 1)
+			throw new IllegalArgumentException("Only one of --outputZip, --outputBinary and --outputNdjson can be used");
+		if (config.getOutputFormat() != OutputFormat.XML && config.isSingleFileOutput())
+			throw new IllegalArgumentException("Option --format applies to {id} files only, not --outputZip, --outputBinary or --outputNdjson");
+		return config;
+	}
+}
@@ -0,0 +1,66 @@
+package recipeparser.diagnostics;
+
+/**
+ * Single diagnostic event - what went wrong, where, and the offending text
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class Diagnostic {
+
+	private final ReasonCode code;
+	private final String source;
+	private final int line;
+	private final String element;
+	private final String detail;
+
+	/**
+	 * @param code - reason
+	 * @param source - input file (or archive entry / corpus offset), null if not known
+	 * @param line - line number within source (1 based), 0 if not known
+	 * @param element - recipe element concerned (eg. "id", "created"), null for the whole file
+	 * @param detail - offending text or error message
+	 */
+	public Diagnostic(ReasonCode code, String source, int line, String element, String detail)
+	{
+		this.code = code;
+		this.source = source;
+		this.line = line;
+		this.element = element;
+		this.detail = detail;
+	}
+
+	/**
+	 * @return - console line, eg. Failed to read ID from first line: NONSENSE [62.txt:1]
+	 */
+	public String toConsoleString()
+	{
+		StringBuilder s = new StringBuilder(code.getMessage());
+		if (detail != null)
+			s.append(": ").append(detail);
+		if (source != null)
+		{
+			s.append(" [").append(source);
+			if (line > 0)
+				s.append(':').append(line);
+			s.append(']');
+		}
+		return s.toString();
+	}
+
+	public ReasonCode getCode() {
+		return code;
+	}
+	public String getSource() {
+		return source;
+	}
+	public int getLine() {
+		return line;
+	}
+	public String getElement() {
+		return element;
+	}
+	public String getDetail() {
+		return detail;
+	}
+}
@@ -0,0 +1,352 @@
+package recipeparser.diagnostics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Diagnostics channel for the parsing and writing hot paths, in place of printing to the console from
+ * every thread.
+ *
+ * Each thread records events into its own lock-free queue, tagged with the source and line it is on
+ * (see {@link #beginSource(String)}), so reporting never waits on the console or on other threads. A
+ * background thread drains the queues every 50ms: events go to the console, at most consoleLimit per
+ * second with a count of those held back, and all of them to the failures file when one is configured
+ * (tab separated: code, source, line, element, detail).
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class Diagnostics {
+
+	public static final int DEFAULT_CONSOLE_LIMIT = 20;
+	private static final long DRAIN_INTERVAL_MILLIS = 50;
+	private static final String FAILURES_HEADER = "#code\tsource\tline\telement\tdetail";
+
+	/**
+	 * Per thread - source and line being parsed, and the thread's event queue
+	 */
+	public static final class Context {
+		private final Queue<Diagnostic> events = new ConcurrentLinkedQueue<>();
+		private String source;
+		private int line;
+		private Thread owner;
+		private boolean registered;
+
+		private Context()
+		{
+		}
+
+		/**
+		 * @param line - line now being parsed (1 based)
+		 */
+		public void setLine(int line) {
+			this.line = line;
+		}
+	}
+
+	private static final ThreadLocal<Context> CONTEXT = ThreadLocal.withInitial(Context::new);
+
+	//Queues of threads that have reported, dead threads removed once drained
+	private static final Queue<Context> REGISTERED = new ConcurrentLinkedQueue<>();
+	private static final LongAdder[] COUNTS = new LongAdder[ReasonCode.values().length];
+	static
+	{
+		for (int i=0; i<COUNTS.length; i++)
+			COUNTS[i] = new LongAdder();
+	}
+
+	//Set once by the first event, so reporting never takes DRAIN_LOCK (held by the drainer while printing)
+	private static final AtomicBoolean DRAINER_STARTED = new AtomicBoolean();
+
+	//Drain state, guarded by DRAIN_LOCK
+	private static final Object DRAIN_LOCK = new Object();
+	private static int consoleLimit = DEFAULT_CONSOLE_LIMIT;
+	private static BufferedWriter failures;
+	private static long windowStart = System.nanoTime();
+	private static int windowPrinted;
+	private static long suppressed;
+
+	private Diagnostics()
+	{
+	}
+
+	/**
+	 * Marks the calling thread as starting on a source, events it reports are tagged with it
+	 *
+	 * @param source - input file name (or archive entry / corpus offset)
+	 * @return - thread's context, to update the line number as parsing goes
+	 */
+	public static Context beginSource(String source)
+	{
+		Context context = CONTEXT.get();
+		context.source = source;
+		context.line = 0;
+		return context;
+	}
+
+	/**
+	 * @return - calling thread's context (source and line last set)
+	 */
+	public static Context context()
+	{
+		return CONTEXT.get();
+	}
+
+	/**
+	 * Records event against the calling thread's current source and line
+	 *
+	 * @param code - reason
+	 * @param element - recipe element concerned, null for the whole file
+	 * @param detail - offending text or error message
+	 */
+	public static void report(ReasonCode code, String element, String detail)
+	{
+		Context context = CONTEXT.get();
+		enqueue(context, new Diagnostic(code, context.source, context.line, element, detail));
+	}
+
+	/**
+	 * Records event against a given source (eg. outside parsing)
+	 *
+	 * @param code - reason
+	 * @param source - input or output file name
+	 * @param element - recipe element concerned, null for the whole file
+	 * @param detail - offending text or error message
+	 */
+	public static void report(ReasonCode code, String source, String element, String detail)
+	{
+		enqueue(CONTEXT.get(), new Diagnostic(code, source, 0, element, detail));
+	}
+
+	private static void enqueue(Context context, Diagnostic diagnostic)
+	{
+		COUNTS[diagnostic.getCode().ordinal()].increment();
+		if (!context.registered)
+		{
+			context.owner = Thread.currentThread();
+			context.registered = true;
+			REGISTERED.add(context);
+			startDrainer();
+		}
+		context.events.offer(diagnostic);
+	}
+
+	/**
+	 * Sets console rate and failures file (replacing any previous one)
+	 *
+	 * @param failuresFile - file for every event, null for console only
+	 * @param consoleLimitPerSecond - events printed per second, 0 for none
+	 * @throws IOException - if failures file could not be created
+	 */
+	public static void configure(File failuresFile, int consoleLimitPerSecond) throws IOException
+	{
+		if (consoleLimitPerSecond < 0)
+			throw new IllegalArgumentException("consoleLimit must not be negative - " + consoleLimitPerSecond);
+
+		synchronized (DRAIN_LOCK)
+		{
+			drain();
+			closeFailures();
+			consoleLimit = consoleLimitPerSecond;
+			if (failuresFile != null)
+			{
+				failures = Files.newBufferedWriter(failuresFile.toPath(), StandardCharsets.UTF_8);
+				failures.write(FAILURES_HEADER);
+				failures.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Drains all events reported so far (by threads that have finished reporting) to console and file
+	 */
+	public static void flush()
+	{
+		synchronized (DRAIN_LOCK)
+		{
+			drain();
+			if (suppressed > 0)
+			{
+				System.out.println("Diagnostics: " + suppressed + " more not shown (console limit " + consoleLimit + "/s)");
+				suppressed = 0;
+			}
+		}
+	}
+
+	/**
+	 * Flushes and closes failures file, console only after this
+	 */
+	public static void close()
+	{
+		synchronized (DRAIN_LOCK)
+		{
+			flush();
+			closeFailures();
+		}
+	}
+
+	/**
+	 * @param code - reason
+	 * @return - events reported with code since start (or last reset)
+	 */
+	public static long getCount(ReasonCode code)
+	{
+		return COUNTS[code.ordinal()].sum();
+	}
+
+	/**
+	 * Clears event counts
+	 */
+	public static void resetCounts()
+	{
+		for (LongAdder count : COUNTS)
+			count.reset();
+	}
+
+	/**
+	 * Moves queued events to console / file, holding DRAIN_LOCK
+	 */
+	private static void drain()
+	{
+		StringBuilder console = new StringBuilder();
+		Iterator<Context> it = REGISTERED.iterator();
+		while (it.hasNext())
+		{
+			Context context = it.next();
+
+			//Dead thread - nothing more can arrive once checked empty
+			boolean dead = !context.owner.isAlive();
+			Diagnostic diagnostic;
+			while ((diagnostic = context.events.poll()) != null)
+			{
+				writeFailure(diagnostic);
+				if (allowConsole())
+					console.append(diagnostic.toConsoleString()).append(System.lineSeparator());
+			}
+			if (dead)
+				it.remove();
+		}
+
+		if (console.length() > 0)
+			System.out.print(console);
+		if (failures != null)
+		{
+			try
+			{
+				failures.flush();
+			}
+			catch (IOException e)
+			{
+				failuresFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * Console rate limit, one second windows
+	 */
+	private static boolean allowConsole()
+	{
+		long now = System.nanoTime();
+		if (now - windowStart >= TimeUnit.SECONDS.toNanos(1))
+		{
+			if (suppressed > 0)
+				System.out.println("Diagnostics: " + suppressed + " more not shown (console limit " + consoleLimit + "/s)");
+			windowStart = now;
+			windowPrinted = 0;
+			suppressed = 0;
+		}
+		if (windowPrinted < consoleLimit)
+		{
+			windowPrinted++;
+			return true;
+		}
+		suppressed++;
+		return false;
+	}
+
+	private static void writeFailure(Diagnostic diagnostic)
+	{
+		if (failures == null)
+			return;
+		try
+		{
+			failures.write(diagnostic.getCode().name() + '\t' + escape(diagnostic.getSource()) + '\t' + diagnostic.getLine() + '\t'
+					+ escape(diagnostic.getElement()) + '\t' + escape(diagnostic.getDetail()));
+			failures.newLine();
+		}
+		catch (IOException e)
+		{
+			failuresFailed(e);
+		}
+	}
+
+	private static void failuresFailed(IOException e)
+	{
+		System.out.println("Failed to write failures file, console only - " + e.getMessage());
+		failures = null;
+	}
+
+	private static void closeFailures()
+	{
+		if (failures == null)
+			return;
+		try
+		{
+			failures.close();
+		}
+		catch (IOException e)
+		{
+			System.out.println("Failed to close failures file - " + e.getMessage());
+		}
+		failures = null;
+	}
+
+	/**
+	 * Backslash escapes for the chars that would break a line, empty for null
+	 */
+	private static String escape(String s)
+	{
+		if (s == null)
+			return "";
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	/**
+	 * Starts the background drain thread on the first call, lock-free (a plain read once started)
+	 */
+	private static void startDrainer()
+	{
+		if (DRAINER_STARTED.get() || !DRAINER_STARTED.compareAndSet(false, true))
+			return;
+		Thread drainer = new Thread(() ->
+		{
+			while (true)
+			{
+				try
+				{
+					Thread.sleep(DRAIN_INTERVAL_MILLIS);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				synchronized (DRAIN_LOCK)
+				{
+					drain();
+				}
+			}
+		}, "recipe-diagnostics");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+}
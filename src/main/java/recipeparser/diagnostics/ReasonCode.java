@@ -0,0 +1,35 @@
+package recipeparser.diagnostics;
+
+/**
+ * Why a file, line or element was skipped or failed, with the console message for it
+ *
+ * @author NicholasChristou
+ *
+ */
+public enum ReasonCode {
+
+	FILE_SKIPPED("Skipping file not matching input filter"),
+	READ_FAILED("Failed to read file"),
+	ID_NOT_READ("Failed to read ID from first line"),
+	TITLE_NOT_READ("Failed to read title from first line"),
+	DATE_UNPARSEABLE("Failed to parse date - Unparseable date"),
+	SECTION_MISSING("Recipe section not found"),
+	MARSHAL_FAILED("Failed to marshal to XML"),
+	WRITE_FAILED("Failed to write to XML"),
+	PROCESS_FAILED("Failed to process"),
+	DUPLICATE_ID("Duplicate recipe id");
+
+	private final String message;
+
+	ReasonCode(String message)
+	{
+		this.message = message;
+	}
+
+	/**
+	 * @return - console message (detail follows it)
+	 */
+	public String getMessage() {
+		return message;
+	}
+}
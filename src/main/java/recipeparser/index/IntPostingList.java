@@ -0,0 +1,72 @@
+package recipeparser.index;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of recipe ids in a plain int array (no boxing), sorted and de-duplicated by seal().
+ *
+ * Not thread safe, RecipeIndex guards it.
+ *
+ * @author NicholasChristou
+ *
+ */
+final class IntPostingList {
+
+	private static final int[] EMPTY = new int[0];
+
+	private int[] ids = new int[4];
+	private int size;
+	private boolean sealed = true;
+
+	/**
+	 * @param id - recipe id, in any order
+	 */
+	void add(int id)
+	{
+		if (size == ids.length)
+			ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+		//Ids added in ascending order need no sort, a repeat (eg. same item twice in a recipe) does
+		if (size > 0 && id <= ids[size - 1])
+			sealed = false;
+		ids[size++] = id;
+	}
+
+	/**
+	 * Sorts ids and drops duplicates, once per batch of adds
+	 */
+	void seal()
+	{
+		if (sealed)
+			return;
+		Arrays.sort(ids, 0, size);
+		int unique = 0;
+		for (int i=0; i<size; i++)
+		{
+			if (unique == 0 || ids[i] != ids[unique - 1])
+				ids[unique++] = ids[i];
+		}
+		size = unique;
+		sealed = true;
+	}
+
+	/**
+	 * @param id - recipe id
+	 * @return - true if in the sealed ids
+	 */
+	boolean contains(int id)
+	{
+		return Arrays.binarySearch(ids, 0, size, id) >= 0;
+	}
+
+	/**
+	 * @return - copy of the sealed ids, ascending
+	 */
+	int[] toArray()
+	{
+		return size == 0 ? EMPTY : Arrays.copyOf(ids, size);
+	}
+
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,273 @@
+package recipeparser.index;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import recipeparser.recipe.Recipe;
+import recipeparser.recipe.Recipe.Content;
+import recipeparser.recipe.Recipe.Content.Ingredients.Ingredient;
+import recipeparser.recipe.Recipe.Metadata;
+
+/**
+ * In-memory index of parsed recipes by id, author, created date and ingredient item, so lookups do not
+ * need to rescan the output xml.
+ *
+ * Authors and items (matched ignoring case and surrounding spaces) map to posting lists of recipe ids in
+ * plain int arrays. Created dates are kept as one sorted array of epoch day and id packed into a long, so a
+ * date range is two binary searches. Recipes are added from any number of threads as they are parsed; the
+ * lists are sorted once on the first query after adds. Every query returns ascending ids, ready for
+ * intersect(). Entries are only ever added, a recipe parsed again (eg. by --watch) keeps its old entries.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeIndex {
+
+	private static final int[] EMPTY = new int[0];
+
+	private final IntPostingList ids = new IntPostingList();
+	private final Map<String, IntPostingList> authors = new HashMap<>();
+	private final Map<String, IntPostingList> items = new HashMap<>();
+	//Epoch day (high 32 bits) and id (low 32 bits) per dated recipe, sorted by seal()
+	private long[] created = new long[64];
+	private int createdSize;
+	private boolean sealed = true;
+
+	/**
+	 * Adds recipe's id, author, created date and ingredient items
+	 *
+	 * @param recipe - parsed recipe
+	 */
+	public void add(Recipe recipe)
+	{
+		//Read outside the lock (getters would create missing parts, so checked first)
+		int id = recipe.getId();
+		String author = null;
+		long day = Long.MIN_VALUE;
+		if (recipe.isSetMetadata())
+		{
+			Metadata metadata = recipe.getMetadata();
+			author = key(metadata.getAuthor());
+			day = epochDay(metadata.getCreated());
+		}
+		List<Ingredient> ingredients = null;
+		if (recipe.isSetContent())
+		{
+			Content content = recipe.getContent();
+			if (content.isSetIngredients())
+				ingredients = content.getIngredients().getIngredient();
+		}
+
+		synchronized (this)
+		{
+			sealed = false;
+			ids.add(id);
+			if (author != null)
+				authors.computeIfAbsent(author, k -> new IntPostingList()).add(id);
+			if (day != Long.MIN_VALUE)
+			{
+				if (createdSize == created.length)
+					created = Arrays.copyOf(created, createdSize + (createdSize >> 1));
+				created[createdSize++] = (day << 32) | (id & 0xffffffffL);
+			}
+			if (ingredients != null)
+			{
+				for (Ingredient ingredient : ingredients)
+				{
+					String item = key(ingredient.getItem());
+					if (item != null)
+						items.computeIfAbsent(item, k -> new IntPostingList()).add(id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param id - recipe id
+	 * @return - true if a recipe with this id was added
+	 */
+	public synchronized boolean contains(int id)
+	{
+		seal();
+		return ids.contains(id);
+	}
+
+	/**
+	 * @param author - author name (case insensitive)
+	 * @return - ids of recipes by author, ascending
+	 */
+	public synchronized int[] byAuthor(String author)
+	{
+		return lookup(authors, author);
+	}
+
+	/**
+	 * @param item - ingredient item, eg. "self-raising flour" (case insensitive)
+	 * @return - ids of recipes using item, ascending
+	 */
+	public synchronized int[] byItem(String item)
+	{
+		return lookup(items, item);
+	}
+
+	/**
+	 * @param from - first created date (inclusive)
+	 * @param to - last created date (inclusive)
+	 * @return - ids of recipes created in range, ascending
+	 */
+	public synchronized int[] createdBetween(LocalDate from, LocalDate to)
+	{
+		seal();
+		int start = lowerBound(from.toEpochDay() << 32);
+		int end = lowerBound((to.toEpochDay() + 1) << 32);
+		if (start >= end)
+			return EMPTY;
+
+		int[] result = new int[end - start];
+		for (int i=start; i<end; i++)
+			result[i - start] = (int) created[i];
+		Arrays.sort(result);
+
+		//Same recipe added again on the same day
+		int size = 0;
+		for (int i=0; i<result.length; i++)
+		{
+			if (size == 0 || result[i] != result[size - 1])
+				result[size++] = result[i];
+		}
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Ids in both results (eg. an author's recipes using an item)
+	 *
+	 * @param a - ascending ids
+	 * @param b - ascending ids
+	 * @return - ids in both, ascending
+	 */
+	public static int[] intersect(int[] a, int[] b)
+	{
+		int[] result = new int[Math.min(a.length, b.length)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length)
+		{
+			if (a[i] < b[j])
+				i++;
+			else if (a[i] > b[j])
+				j++;
+			else
+			{
+				result[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * @return - recipes indexed
+	 */
+	public synchronized int size()
+	{
+		seal();
+		return ids.size();
+	}
+
+	/**
+	 * @return - distinct authors
+	 */
+	public synchronized int getAuthors() {
+		return authors.size();
+	}
+
+	/**
+	 * @return - distinct ingredient items
+	 */
+	public synchronized int getItems() {
+		return items.size();
+	}
+
+	/**
+	 * @return - console summary
+	 */
+	public String report()
+	{
+		return String.format("Index - recipes: %d, authors: %d, items: %d", size(), getAuthors(), getItems());
+	}
+
+	private int[] lookup(Map<String, IntPostingList> map, String name)
+	{
+		String key = key(name);
+		IntPostingList list = key == null ? null : map.get(key);
+		if (list == null)
+			return EMPTY;
+		seal();
+		return list.toArray();
+	}
+
+	/**
+	 * Sorts all lists after adds, holding the lock
+	 */
+	private void seal()
+	{
+		if (sealed)
+			return;
+		ids.seal();
+		for (IntPostingList list : authors.values())
+			list.seal();
+		for (IntPostingList list : items.values())
+			list.seal();
+		Arrays.sort(created, 0, createdSize);
+		sealed = true;
+	}
+
+	/**
+	 * @return - first index in created with value at least key (createdSize if none)
+	 */
+	private int lowerBound(long key)
+	{
+		int low = 0;
+		int high = createdSize;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (created[mid] < key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * @return - lower case trimmed name, null if none
+	 */
+	private static String key(String name)
+	{
+		if (name == null)
+			return null;
+		String key = name.trim().toLowerCase(Locale.ROOT);
+		return key.isEmpty() ? null : key;
+	}
+
+	/**
+	 * @return - days since 1970-01-01, Long.MIN_VALUE if no (complete) date
+	 */
+	private static long epochDay(XMLGregorianCalendar created)
+	{
+		if (created == null || created.getYear() == DatatypeConstants.FIELD_UNDEFINED
+				|| created.getMonth() == DatatypeConstants.FIELD_UNDEFINED || created.getDay() == DatatypeConstants.FIELD_UNDEFINED)
+			return Long.MIN_VALUE;
+		return LocalDate.of(created.getYear(), created.getMonth(), created.getDay()).toEpochDay();
+	}
+}
@@ -0,0 +1,225 @@
+package recipeparser.input;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * Parses the created date from the first line of a recipe ([2018-12-03]), safe to call from any number of threads.
+ *
+ * yyyy-MM-dd is read directly off the chars, other accepted formats are tried in order with java.time. Recently
+ * seen date strings (valid or not) are held in a small direct-mapped cache, as many recipes share dates, so a
+ * repeated date costs a hash and compare over the line. Each call still returns its own XMLGregorianCalendar,
+ * as those are mutable.
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class CreatedDateParser {
+
+	//newInstance() is a service lookup, only done once (factory itself holds no state)
+	private static final DatatypeFactory DATATYPE_FACTORY = createDatatypeFactory();
+
+	//Tried in order after the yyyy-MM-dd fast path. No slash formats as dd/MM and MM/dd cannot be told apart
+	private static final List<DateTimeFormatter> FORMATS = Arrays.asList(
+			formatter("uuuu-M-d"),
+			formatter("uuuu.M.d"),
+			formatter("uuuuMMdd"),
+			formatter("d MMMM uuuu"),
+			formatter("d MMM uuuu"),
+			formatter("MMMM d, uuuu"),
+			formatter("MMM d, uuuu"));
+
+	//Power of 2, slots overwritten on collision
+	private static final int CACHE_SIZE = 1024;
+	private static final CacheEntry[] CACHE = new CacheEntry[CACHE_SIZE];
+
+	/**
+	 * Immutable (final fields) so entries can be shared between threads through the plain array
+	 */
+	private static final class CacheEntry {
+		private final String key;
+		private final int hash;
+		private final LocalDate date;
+
+		private CacheEntry(String key, int hash, LocalDate date)
+		{
+			this.key = key;
+			this.hash = hash;
+			this.date = date;
+		}
+	}
+
+	private CreatedDateParser()
+	{
+	}
+
+	/**
+	 * Parses trimmed [start, end) as a date
+	 *
+	 * @param s - text (eg. whole first line)
+	 * @param start - start index of date
+	 * @param end - end index of date (exclusive)
+	 * @return - date without time or timezone (for conformance to sample output), or null if invalid
+	 */
+	public static XMLGregorianCalendar parse(CharSequence s, int start, int end)
+	{
+		LocalDate date = parseLocalDate(s, start, end);
+		if (date == null)
+			return null;
+		return toCalendar(date);
+	}
+
+	/**
+	 * @param date - date
+	 * @return - new calendar for date without time or timezone, as parse() returns
+	 */
+	public static XMLGregorianCalendar toCalendar(LocalDate date)
+	{
+		return DATATYPE_FACTORY.newXMLGregorianCalendarDate(date.getYear(), date.getMonthValue(), date.getDayOfMonth(),
+				DatatypeConstants.FIELD_UNDEFINED);
+	}
+
+	/**
+	 * Parses trimmed [start, end) as a date
+	 *
+	 * @param s - text (eg. whole first line)
+	 * @param start - start index of date
+	 * @param end - end index of date (exclusive)
+	 * @return - date, or null if invalid
+	 */
+	public static LocalDate parseLocalDate(CharSequence s, int start, int end)
+	{
+		//Trim
+		while (start < end && s.charAt(start) <= ' ')
+			start++;
+		while (end > start && s.charAt(end - 1) <= ' ')
+			end--;
+
+		//Fast path, no lookup needed
+		LocalDate iso = parseIso(s, start, end);
+		if (iso != null)
+			return iso;
+
+		int hash = hash(s, start, end);
+		int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+
+		CacheEntry entry = CACHE[slot];
+		if (entry != null && entry.hash == hash && regionEquals(entry.key, s, start, end))
+			return entry.date;
+
+		String key = s.subSequence(start, end).toString();
+		LocalDate date = parseFormats(key);
+		CACHE[slot] = new CacheEntry(key, hash, date);
+		return date;
+	}
+
+	/**
+	 * yyyy-MM-dd straight off the chars, null if not in that form or not a real date (eg. 2018-02-30, 0000-01-01)
+	 */
+	private static LocalDate parseIso(CharSequence s, int start, int end)
+	{
+		if (end - start != 10 || s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-')
+			return null;
+
+		int year = digits(s, start, start + 4);
+		int month = digits(s, start + 5, start + 7);
+		int day = digits(s, start + 8, start + 10);
+		if (year < 1 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year)))
+			return null;
+		return LocalDate.of(year, month, day);
+	}
+
+	/**
+	 * Remaining formats in order - exceptions only on a cache miss
+	 */
+	private static LocalDate parseFormats(String dateString)
+	{
+		for (DateTimeFormatter format : FORMATS)
+		{
+			try
+			{
+				//No year 0 in xs:date
+				LocalDate date = LocalDate.parse(dateString, format);
+				return date.getYear() < 1 ? null : date;
+			}
+			catch (DateTimeParseException e)
+			{
+				//try next format
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * ASCII digits as int, -1 if any non-digit
+	 */
+	private static int digits(CharSequence s, int start, int end)
+	{
+		int result = 0;
+		for (int i=start; i<end; i++)
+		{
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+
+	/**
+	 * Same as String.hashCode over the slice
+	 */
+	private static int hash(CharSequence s, int start, int end)
+	{
+		int hash = 0;
+		for (int i=start; i<end; i++)
+			hash = 31 * hash + s.charAt(i);
+		return hash;
+	}
+
+	private static boolean regionEquals(String key, CharSequence s, int start, int end)
+	{
+		if (key.length() != end - start)
+			return false;
+		for (int i=0; i<key.length(); i++)
+		{
+			if (key.charAt(i) != s.charAt(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	private static DateTimeFormatter formatter(String pattern)
+	{
+		return new DateTimeFormatterBuilder()
+				.parseCaseInsensitive()
+				.appendPattern(pattern)
+				.toFormatter(Locale.ENGLISH)
+				.withResolverStyle(ResolverStyle.STRICT);
+	}
+
+	private static DatatypeFactory createDatatypeFactory()
+	{
+		try
+		{
+			return DatatypeFactory.newInstance();
+		}
+		catch (DatatypeConfigurationException e)
+		{
+			throw new IllegalStateException("No DatatypeFactory available", e);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package recipeparser.input;
+
+import recipeparser.recipe.ObjectFactory;
+import recipeparser.recipe.Recipe.Content.Ingredients.Ingredient;
+
+/**
+ * Single pass tokenizer for ingredient lines in the form "{Amount}{Unit} {Item}" or "{Amount} {Unit} {Item}".
+ *
+ * Amount, unit and item are located by index on the line, the only String created is the item
+ * (and only the substring of the line where words are already single-space separated).
+ *
+ * @author NicholasChristou
+ *
+ */
+public class IngredientTokenizer {
+
+	private static final ObjectFactory FACTORY = new ObjectFactory();
+
+	private IngredientTokenizer()
+	{
+	}
+
+	/**
+	 * Reads individual ingredient element from input line
+	 *
+	 * @param s - input string
+	 * @return - Ingredient
+	 */
+	public static Ingredient tokenize(String s)
+	{
+		Ingredient ing = FACTORY.createRecipeContentIngredientsIngredient();
+		UnitOfMeasureLexicon lexicon = UnitOfMeasureLexicon.getDefault();
+
+		//Trimmed bounds
+		int start = 0;
+		int end = s.length();
+		while (start < end && s.charAt(start) <= ' ')
+			start++;
+		while (end > start && s.charAt(end - 1) <= ' ')
+			end--;
+
+		//First word is expected to be amount+uom or amount only with 2nd being uom only
+		int firstEnd = endOfWord(s, start, end);
+
+		//if only one word, this is likely to be only an item (eg. food colouring)
+		if (firstEnd == end)
+		{
+			ing.setItem(StringInterner.ITEMS.intern(s, start, end));
+			return ing;
+		}
+
+		int secondStart = startOfWord(s, firstEnd, end);
+		int itemStart;
+
+		//First word is the amount, second may be uom or start of item
+		double amount = NumberScanner.parseAmount(s, start, firstEnd);
+		if (!Double.isNaN(amount))
+		{
+			ing.setAmount(amount);
+
+			//Longest unit starting at second word, may be more than one word (eg. 2 fl oz milk)
+			int uomEnd = lexicon.longestMatch(s, secondStart, end, true);
+			if (uomEnd != -1)
+				ing.setUnit(lexicon.lookup(s, secondStart, uomEnd));
+
+			//Item follows uom (eg. 2 tbsp flour) or amount (eg. 4 large eggs)
+			itemStart = uomEnd != -1 ? startOfWord(s, uomEnd, end) : secondStart;
+		}
+		//Amount with uom attached (eg. 225g), or no amount at all (item only)
+		else
+		{
+			int amountEnd = start;
+			while (amountEnd < firstEnd && NumberScanner.isAmountChar(s.charAt(amountEnd)))
+				amountEnd++;
+
+			amount = amountEnd > start ? NumberScanner.parseAmount(s, start, amountEnd) : Double.NaN;
+			if (!Double.isNaN(amount))
+			{
+				ing.setAmount(amount);
+
+				//uom directly after the amount, ignoring trailing punctuation (eg. 225g, or 100g/4oz)
+				int uomEnd = lexicon.longestMatch(s, amountEnd, end, false);
+				if (uomEnd != -1)
+					ing.setUnit(lexicon.lookup(s, amountEnd, uomEnd));
+
+				//Item is second word onwards, unless uom ran on past it (eg. 2fl oz milk)
+				itemStart = uomEnd > firstEnd ? startOfWord(s, uomEnd, end) : secondStart;
+			}
+			//Line must have ingredient item only
+			else
+			{
+				itemStart = start;
+			}
+		}
+
+		ing.setItem(joinWords(s, itemStart, end));
+		return ing;
+	}
+
+	/**
+	 * @return - true for the whitespace words are split on (\s)
+	 */
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static int endOfWord(String s, int from, int end)
+	{
+		while (from < end && !isWhitespace(s.charAt(from)))
+			from++;
+		return from;
+	}
+
+	private static int startOfWord(String s, int from, int end)
+	{
+		while (from < end && isWhitespace(s.charAt(from)))
+			from++;
+		return from;
+	}
+
+	/**
+	 * Item text from start to end with words single-space separated (interned). Slice of the line
+	 * unless it contains runs of whitespace or tabs that need collapsing.
+	 */
+	private static String joinWords(String s, int start, int end)
+	{
+		boolean collapse = false;
+		for (int i=start; i<end; i++)
+		{
+			char c = s.charAt(i);
+			if (isWhitespace(c) && (c != ' ' || isWhitespace(s.charAt(i + 1))))
+			{
+				collapse = true;
+				break;
+			}
+		}
+
+		if (!collapse)
+			return StringInterner.ITEMS.intern(s, start, end);
+
+		StringBuilder item = new StringBuilder(end - start);
+		for (int i=start; i<end; i++)
+		{
+			char c = s.charAt(i);
+			if (!isWhitespace(c))
+				item.append(c);
+			else if (!isWhitespace(s.charAt(i - 1)))
+				item.append(' ');
+		}
+		return StringInterner.ITEMS.intern(item, 0, item.length());
+	}
+}
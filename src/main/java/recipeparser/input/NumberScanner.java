@@ -0,0 +1,219 @@
+package recipeparser.input;
+
+/**
+ * Exception free number parsing over CharSequence slices.
+ *
+ * Failure is reported through a return value (NO_INT / NaN) rather than NumberFormatException, as most
+ * words checked while reading ingredients are not numbers at all. Nothing is allocated on the usual path.
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class NumberScanner {
+
+	//Returned by parseInt when not a valid int
+	public static final long NO_INT = Long.MIN_VALUE;
+
+	//Digits beyond this are left to Double.parseDouble (mantissa must stay exact as a double)
+	private static final int MAX_FAST_DIGITS = 15;
+
+	//Fraction slash (1⁄2) and division slash (1∕2) read the same as '/'
+	private static final char FRACTION_SLASH = '⁄';
+	private static final char DIVISION_SLASH = '∕';
+
+	//Range separators, en dash seen in pasted recipes (1–2)
+	private static final char EN_DASH = '–';
+
+	private NumberScanner()
+	{
+	}
+
+	/**
+	 * Parses [start, end) as a signed decimal int, same rules as Integer.parseInt
+	 *
+	 * @param s - text
+	 * @param start - start index
+	 * @param end - end index (exclusive)
+	 * @return - value, or NO_INT if not a valid int
+	 */
+	public static long parseInt(CharSequence s, int start, int end)
+	{
+		if (start >= end)
+			return NO_INT;
+
+		//Optional sign
+		boolean negative = false;
+		char first = s.charAt(start);
+		if (first == '-' || first == '+')
+		{
+			negative = first == '-';
+			if (++start == end)
+				return NO_INT;
+		}
+
+		//Accumulate as negative so Integer.MIN_VALUE fits
+		long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+		long result = 0;
+		for (int i=start; i<end; i++)
+		{
+			int digit = Character.digit(s.charAt(i), 10);
+			if (digit < 0)
+				return NO_INT;
+			result = result * 10 - digit;
+			if (result < limit)
+				return NO_INT;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parses ingredient amount in [start, end): decimal (1.5), fraction (1/4, 1⁄4), unicode vulgar
+	 * fraction (¾) or mixed number (1½). Ranges (1-2, 1½–2) take the first value.
+	 *
+	 * @param s - text
+	 * @param start - start index
+	 * @param end - end index (exclusive)
+	 * @return - amount, or NaN if not a valid amount
+	 */
+	public static double parseAmount(CharSequence s, int start, int end)
+	{
+		//Strip out range (do not allow ranges, take first instead)
+		for (int i=start; i<end; i++)
+		{
+			if (isRangeSeparator(s.charAt(i)))
+			{
+				end = i;
+				break;
+			}
+		}
+
+		//Fraction format
+		for (int i=start; i<end; i++)
+		{
+			if (isFractionSlash(s.charAt(i)))
+			{
+				double numerator = parseDecimal(s, start, i);
+				double denominator = parseDecimal(s, i + 1, end);
+				if (Double.isNaN(numerator) || Double.isNaN(denominator) || denominator == 0d)
+					return Double.NaN;
+				return numerator / denominator;
+			}
+		}
+
+		//Mixed number (whole part may be empty, eg. ½)
+		if (start < end)
+		{
+			double fraction = vulgarFraction(s.charAt(end - 1));
+			if (!Double.isNaN(fraction))
+			{
+				if (end - 1 == start)
+					return fraction;
+				double whole = parseWhole(s, start, end - 1);
+				return Double.isNaN(whole) ? Double.NaN : whole + fraction;
+			}
+		}
+
+		return parseDecimal(s, start, end);
+	}
+
+	/**
+	 * @param c - char to check
+	 * @return - value of unicode vulgar fraction char (eg. ¾ = 0.75), NaN if not one
+	 */
+	public static double vulgarFraction(char c)
+	{
+		switch (c)
+		{
+		case '¼': return 1d / 4;
+		case '½': return 1d / 2;
+		case '¾': return 3d / 4;
+		case '⅐': return 1d / 7;
+		case '⅑': return 1d / 9;
+		case '⅒': return 1d / 10;
+		case '⅓': return 1d / 3;
+		case '⅔': return 2d / 3;
+		case '⅕': return 1d / 5;
+		case '⅖': return 2d / 5;
+		case '⅗': return 3d / 5;
+		case '⅘': return 4d / 5;
+		case '⅙': return 1d / 6;
+		case '⅚': return 5d / 6;
+		case '⅛': return 1d / 8;
+		case '⅜': return 3d / 8;
+		case '⅝': return 5d / 8;
+		case '⅞': return 7d / 8;
+		case '↉': return 0d;
+		default: return Double.NaN;
+		}
+	}
+
+	/**
+	 * @param c - char to check
+	 * @return - true if char can form part of an amount (eg. amount attached to uom as in 225g or ½tsp)
+	 */
+	public static boolean isAmountChar(char c)
+	{
+		return (c >= '0' && c <= '9') || c == '.' || isFractionSlash(c) || isRangeSeparator(c)
+				|| !Double.isNaN(vulgarFraction(c));
+	}
+
+	private static boolean isFractionSlash(char c)
+	{
+		return c == '/' || c == FRACTION_SLASH || c == DIVISION_SLASH;
+	}
+
+	private static boolean isRangeSeparator(char c)
+	{
+		return c == '-' || c == EN_DASH;
+	}
+
+	/**
+	 * Digits only (whole part of a mixed number), NaN if invalid
+	 */
+	private static double parseWhole(CharSequence s, int start, int end)
+	{
+		for (int i=start; i<end; i++)
+		{
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				return Double.NaN;
+		}
+		return parseDecimal(s, start, end);
+	}
+
+	/**
+	 * Digits with optional decimal point, NaN if invalid
+	 */
+	private static double parseDecimal(CharSequence s, int start, int end)
+	{
+		//Digits accumulated as whole number then scaled once (exact while mantissa fits in a double)
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+
+		for (int i=start; i<end; i++)
+		{
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9')
+			{
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (fractionDigits >= 0)
+					fractionDigits++;
+			}
+			else if (c == '.' && fractionDigits < 0)
+				fractionDigits = 0;
+			else
+				return Double.NaN;
+		}
+
+		if (digits == 0)
+			return Double.NaN;
+
+		//Too many digits to scale exactly - content already validated so parseDouble cannot throw
+		if (digits > MAX_FAST_DIGITS)
+			return Double.parseDouble(s.subSequence(start, end).toString());
+
+		return fractionDigits > 0 ? mantissa / Math.pow(10, fractionDigits) : mantissa;
+	}
+}
@@ -0,0 +1,356 @@
+package recipeparser.input;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.metrics.RecipeMetrics;
+
+/**
+ * Reads recipe files straight out of .zip and .tar.gz (.tgz) archives, without extracting them to disk.
+ *
+ * Entries are decompressed one at a time into buffers from {@link RecipeBufferPool} and handed to a consumer,
+ * so the caller can parse an entry on other threads while the next one is being decompressed. Entries are
+ * filtered on their file name with the same include / exclude globs as directory input. An entry that cannot be
+ * read (corrupt, or over the size limit) is reported and skipped, the rest of the archive is still read - only a
+ * failure of the archive itself (eg. no zip central directory, a corrupt gzip stream or tar header) ends it.
+ *
+ * Tar support covers what archiving tools produce for plain files: ustar (with name prefix), GNU long
+ * names and pax path records. Links, devices etc. are skipped.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeArchiveReader {
+
+	//Guard against corrupt sizes / decompression bombs, recipe files are a few KB
+	private static final int MAX_ENTRY_SIZE = 64 * 1024 * 1024;
+
+	private static final int TAR_BLOCK = 512;
+
+	/**
+	 * Receives each recipe entry, may block (eg. on a full queue)
+	 */
+	public interface EntryConsumer {
+		/**
+		 * @param name - entry path within archive
+		 * @param content - entry content, to be released to RecipeBufferPool once parsed, null if the entry could
+		 * not be read (already reported as READ_FAILED)
+		 */
+		void accept(String name, ByteBuffer content) throws InterruptedException;
+	}
+
+	private RecipeArchiveReader()
+	{
+	}
+
+	/**
+	 * @param file - candidate input
+	 * @return - true if file name is a supported archive (.zip, .tar.gz, .tgz)
+	 */
+	public static boolean isArchive(File file)
+	{
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		return name.endsWith(".zip") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+	}
+
+	/**
+	 * Passes every matching file entry of archive to consumer, in archive order
+	 *
+	 * @param archive - .zip, .tar.gz or .tgz file
+	 * @param filter - entry file name filter
+	 * @param consumer - receives each entry
+	 * @return - number of entries read (failed entries are passed to consumer too, without content)
+	 * @throws IOException - if archive itself could not be read or is corrupt
+	 * @throws InterruptedException - if consumer was interrupted
+	 */
+	public static int forEachEntry(File archive, RecipeFileEnumerator filter, EntryConsumer consumer)
+			throws IOException, InterruptedException
+	{
+		if (archive.getName().toLowerCase(Locale.ROOT).endsWith(".zip"))
+			return forEachZipEntry(archive, filter, consumer);
+		return forEachTarEntry(archive, filter, consumer);
+	}
+
+	private static int forEachZipEntry(File archive, RecipeFileEnumerator filter, EntryConsumer consumer)
+			throws IOException, InterruptedException
+	{
+		int count = 0;
+		try (ZipFile zip = new ZipFile(archive, StandardCharsets.UTF_8))
+		{
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements())
+			{
+				ZipEntry entry = entries.nextElement();
+				if (entry.isDirectory() || !accept(filter, entry.getName()))
+					continue;
+
+				long start = RecipeMetrics.OPEN.start();
+				ByteBuffer content;
+				try (InputStream in = zip.getInputStream(entry))
+				{
+					content = RecipeBufferPool.load(in, entry.getSize(), MAX_ENTRY_SIZE);
+				}
+				//Corrupt or oversized entry - the others are still reachable through the central directory
+				catch (IOException e)
+				{
+					entryFailed(entry.getName(), e.getMessage(), consumer);
+					continue;
+				}
+				RecipeMetrics.OPEN.stop(start, content.remaining());
+				consumer.accept(entry.getName(), content);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static int forEachTarEntry(File archive, RecipeFileEnumerator filter, EntryConsumer consumer)
+			throws IOException, InterruptedException
+	{
+		int count = 0;
+		byte[] header = new byte[TAR_BLOCK];
+		try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(archive), 65536), 65536))
+		{
+			String longName = null;
+			while (readBlock(in, header))
+			{
+				//End of archive marker
+				if (isZeroBlock(header))
+					break;
+
+				//Unreadable size - next header cannot be found
+				long size = parseOctal(header, 124, 12);
+				char type = (char) header[156];
+				if (size < 0)
+					throw new IOException("Tar entry size not valid - " + size);
+
+				//GNU long name / pax header - applies to next entry
+				if (type == 'L' || type == 'x')
+				{
+					if (size > MAX_ENTRY_SIZE)
+						throw new IOException("Tar extended header size not valid - " + size);
+					byte[] data = new byte[(int) size];
+					readFully(in, data, data.length);
+					skipPadding(in, size);
+					String extended = type == 'L' ? cString(data, 0, data.length) : paxPath(data);
+					if (extended != null)
+						longName = extended;
+					continue;
+				}
+
+				String name = longName != null ? longName : entryName(header);
+				longName = null;
+
+				//Regular files only
+				if ((type != '0' && type != '\0') || !accept(filter, name))
+				{
+					skipFully(in, size);
+					skipPadding(in, size);
+					continue;
+				}
+
+				//Oversized entry skipped over, the following headers are still in step
+				if (size > MAX_ENTRY_SIZE)
+				{
+					skipFully(in, size);
+					skipPadding(in, size);
+					entryFailed(name, "Content too large - " + size + " bytes", consumer);
+					continue;
+				}
+
+				long start = RecipeMetrics.OPEN.start();
+				ByteBuffer content = RecipeBufferPool.load(in, size, MAX_ENTRY_SIZE);
+				skipPadding(in, size);
+				RecipeMetrics.OPEN.stop(start, size);
+				consumer.accept(name, content);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reports entry as READ_FAILED and passes it on without content
+	 */
+	private static void entryFailed(String name, String message, EntryConsumer consumer) throws InterruptedException
+	{
+		Diagnostics.report(ReasonCode.READ_FAILED, name, null, message);
+		consumer.accept(name, null);
+	}
+
+	/**
+	 * Entry file name (after last /) against the include / exclude globs
+	 */
+	private static boolean accept(RecipeFileEnumerator filter, String entryName)
+	{
+		String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+		if (fileName.isEmpty())
+			return false;
+		try
+		{
+			return filter.matches(FileSystems.getDefault().getPath(fileName));
+		}
+		catch (InvalidPathException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * ustar name, with prefix where the magic says there is one
+	 */
+	private static String entryName(byte[] header)
+	{
+		String name = cString(header, 0, 100);
+		boolean ustar = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a' && header[261] == 'r';
+		if (ustar && header[345] != 0)
+			return cString(header, 345, 155) + "/" + name;
+		return name;
+	}
+
+	/**
+	 * "path" record of pax extended header ("{length} path={value}\n" records)
+	 */
+	private static String paxPath(byte[] data)
+	{
+		int pos = 0;
+		while (pos < data.length)
+		{
+			int space = pos;
+			while (space < data.length && data[space] != ' ')
+				space++;
+			int length;
+			try
+			{
+				length = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII));
+			}
+			catch (NumberFormatException e)
+			{
+				return null;
+			}
+			if (length <= 0 || pos + length > data.length)
+				return null;
+
+			String record = new String(data, space + 1, pos + length - space - 2, StandardCharsets.UTF_8);
+			if (record.startsWith("path="))
+				return record.substring(5);
+			pos += length;
+		}
+		return null;
+	}
+
+	/**
+	 * Octal numeric field (NUL / space terminated), or base-256 if the top bit is set
+	 */
+	private static long parseOctal(byte[] header, int offset, int length)
+	{
+		if ((header[offset] & 0x80) != 0)
+		{
+			long result = header[offset] & 0x7F;
+			for (int i=1; i<length; i++)
+				result = (result << 8) | (header[offset + i] & 0xFF);
+			return result;
+		}
+
+		long result = 0;
+		for (int i=offset; i<offset + length; i++)
+		{
+			byte b = header[i];
+			if (b == 0 || (b == ' ' && result != 0))
+				break;
+			if (b == ' ')
+				continue;
+			if (b < '0' || b > '7')
+				return -1;
+			result = (result << 3) + (b - '0');
+		}
+		return result;
+	}
+
+	private static String cString(byte[] data, int offset, int length)
+	{
+		int end = offset;
+		while (end < offset + length && data[end] != 0)
+			end++;
+		return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static boolean isZeroBlock(byte[] block)
+	{
+		for (byte b : block)
+		{
+			if (b != 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return - false at clean end of stream (no more blocks)
+	 */
+	private static boolean readBlock(InputStream in, byte[] block) throws IOException
+	{
+		int read = 0;
+		while (read < block.length)
+		{
+			int n = in.read(block, read, block.length - read);
+			if (n == -1)
+			{
+				if (read == 0)
+					return false;
+				throw new EOFException("Tar archive truncated");
+			}
+			read += n;
+		}
+		return true;
+	}
+
+	private static void readFully(InputStream in, byte[] data, int length) throws IOException
+	{
+		int read = 0;
+		while (read < length)
+		{
+			int n = in.read(data, read, length - read);
+			if (n == -1)
+				throw new EOFException("Tar archive truncated");
+			read += n;
+		}
+	}
+
+	private static void skipPadding(InputStream in, long size) throws IOException
+	{
+		long remainder = size % TAR_BLOCK;
+		if (remainder != 0)
+			skipFully(in, TAR_BLOCK - remainder);
+	}
+
+	private static void skipFully(InputStream in, long bytes) throws IOException
+	{
+		while (bytes > 0)
+		{
+			long skipped = in.skip(bytes);
+			if (skipped <= 0)
+			{
+				if (in.read() == -1)
+					throw new EOFException("Tar archive truncated");
+				skipped = 1;
+			}
+			bytes -= skipped;
+		}
+	}
+}
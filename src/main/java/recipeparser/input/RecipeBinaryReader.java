@@ -0,0 +1,263 @@
+package recipeparser.input;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import recipeparser.output.RecipeBinaryWriter;
+import recipeparser.recipe.ObjectFactory;
+import recipeparser.recipe.Recipe;
+import recipeparser.recipe.Recipe.Content;
+import recipeparser.recipe.Recipe.Content.Ingredients.Ingredient;
+import recipeparser.recipe.Recipe.Metadata;
+
+/**
+ * Reads recipes back from the binary format written by RecipeBinaryWriter (layout described there), one
+ * at a time in file order so a corpus of any size can be streamed.
+ *
+ * Each unit string is created once per file and shared by every ingredient using it. Not thread-safe.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeBinaryReader implements Closeable {
+
+	private static final ObjectFactory FACTORY = new ObjectFactory();
+
+	private final InputStream in;
+	private final List<String> units = new ArrayList<>();
+	//Current record
+	private byte[] record = new byte[4096];
+	private int position;
+	private int limit;
+
+	/**
+	 * @param file - binary recipe file
+	 * @throws IOException - if file could not be opened or is not a supported binary recipe file
+	 */
+	public RecipeBinaryReader(File file) throws IOException
+	{
+		this(new BufferedInputStream(new FileInputStream(file), 65536));
+	}
+
+	/**
+	 * @param in - stream positioned at the header, closed with the reader
+	 * @throws IOException - if header could not be read or is not a supported version
+	 */
+	public RecipeBinaryReader(InputStream in) throws IOException
+	{
+		this.in = in;
+		byte[] magic = new byte[RecipeBinaryWriter.MAGIC.length];
+		try
+		{
+			readFully(magic, magic.length);
+			if (!Arrays.equals(magic, RecipeBinaryWriter.MAGIC))
+				throw new IOException("Not a binary recipe file");
+			int version = in.read();
+			if (version != RecipeBinaryWriter.VERSION)
+				throw new IOException("Unsupported binary recipe version - " + version);
+		}
+		catch (IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param file - input file
+	 * @return - true if file name ends .rcpb
+	 */
+	public static boolean isBinary(File file)
+	{
+		return file.getName().toLowerCase(Locale.ROOT).endsWith(RecipeBinaryWriter.EXTENSION);
+	}
+
+	/**
+	 * @return - next recipe, or null at end of file
+	 * @throws IOException - if file could not be read or is corrupt
+	 */
+	public Recipe read() throws IOException
+	{
+		//Length prefix, end of file allowed before its first byte only
+		int first = in.read();
+		if (first == -1)
+			return null;
+		long length = first & 0x7F;
+		for (int shift=7; (first & 0x80) != 0; shift+=7)
+		{
+			first = in.read();
+			if (first == -1 || shift > 28)
+				throw new IOException("Record length not valid");
+			length |= (long) (first & 0x7F) << shift;
+		}
+		if (length > Integer.MAX_VALUE - 8)
+			throw new IOException("Record length not valid - " + length);
+
+		if (record.length < length)
+			record = new byte[Math.max((int) length, record.length * 2)];
+		readFully(record, (int) length);
+		position = 0;
+		limit = (int) length;
+
+		Recipe recipe = readRecipe();
+		if (position != limit)
+			throw new IOException("Record " + recipe.getId() + " has " + (limit - position) + " bytes left over");
+		return recipe;
+	}
+
+	private Recipe readRecipe() throws IOException
+	{
+		Recipe recipe = FACTORY.createRecipe();
+		recipe.setId((int) unzigzag(readVarint()));
+		int flags = readByte();
+
+		if ((flags & RecipeBinaryWriter.HAS_METADATA) != 0)
+		{
+			Metadata metadata = FACTORY.createRecipeMetadata();
+			long created = readVarint();
+			if (created != 0)
+				metadata.setCreated(CreatedDateParser.toCalendar(LocalDate.ofEpochDay(unzigzag(created - 1))));
+			metadata.setAuthor(StringInterner.AUTHORS.intern(readString()));
+			metadata.setTitle(readString());
+			recipe.setMetadata(metadata);
+		}
+		if ((flags & RecipeBinaryWriter.HAS_CONTENT) == 0)
+			return recipe;
+
+		Content content = FACTORY.createRecipeContent();
+		recipe.setContent(content);
+		if ((flags & RecipeBinaryWriter.HAS_LEAD) != 0)
+			content.setLead(readString());
+		if ((flags & RecipeBinaryWriter.HAS_INGREDIENTS) != 0)
+		{
+			int count = readCount();
+			List<Ingredient> ingredients = content.getIngredients().getIngredient();
+			for (int i=0; i<count; i++)
+			{
+				Ingredient ingredient = FACTORY.createRecipeContentIngredientsIngredient();
+				ingredient.setAmount(readAmount());
+				ingredient.setUnit(readUnit());
+				ingredient.setItem(StringInterner.ITEMS.intern(readString()));
+				ingredients.add(ingredient);
+			}
+		}
+		if ((flags & RecipeBinaryWriter.HAS_METHOD) != 0)
+		{
+			int count = readCount();
+			List<String> steps = content.getMethod().getStep();
+			for (int i=0; i<count; i++)
+				steps.add(readString());
+		}
+		return recipe;
+	}
+
+	private Double readAmount() throws IOException
+	{
+		long tag = readVarint();
+		if (tag == RecipeBinaryWriter.AMOUNT_NONE)
+			return null;
+		if (tag >= RecipeBinaryWriter.AMOUNT_HALVES)
+			return (tag - RecipeBinaryWriter.AMOUNT_HALVES) / 2.0;
+
+		long bits = 0;
+		for (int i=0; i<8; i++)
+			bits = (bits << 8) | readByte();
+		return Double.longBitsToDouble(bits);
+	}
+
+	private String readUnit() throws IOException
+	{
+		long index = readVarint();
+		if (index == 0)
+			return null;
+		if (index <= units.size())
+			return units.get((int) index - 1);
+		if (index != units.size() + 1)
+			throw new IOException("Unit " + index + " not in dictionary of " + units.size());
+
+		String unit = readString();
+		if (unit == null)
+			throw new IOException("New unit " + index + " has no name");
+		//Same instance as units parsed from text
+		unit = UnitOfMeasureLexicon.getDefault().canonical(unit);
+		units.add(unit);
+		return unit;
+	}
+
+	private String readString() throws IOException
+	{
+		long length = readVarint();
+		if (length == 0)
+			return null;
+		length--;
+		if (length > limit - position)
+			throw new IOException("String runs past end of record");
+		String s = new String(record, position, (int) length, StandardCharsets.UTF_8);
+		position += (int) length;
+		return s;
+	}
+
+	/**
+	 * Element count, at most one per remaining byte
+	 */
+	private int readCount() throws IOException
+	{
+		long count = readVarint();
+		if (count > limit - position)
+			throw new IOException("Count " + count + " runs past end of record");
+		return (int) count;
+	}
+
+	private long readVarint() throws IOException
+	{
+		long value = 0;
+		for (int shift=0; shift<64; shift+=7)
+		{
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Varint too long");
+	}
+
+	private int readByte() throws IOException
+	{
+		if (position >= limit)
+			throw new IOException("Record truncated");
+		return record[position++] & 0xFF;
+	}
+
+	private static long unzigzag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private void readFully(byte[] buffer, int length) throws IOException
+	{
+		int read = 0;
+		while (read < length)
+		{
+			int n = in.read(buffer, read, length - read);
+			if (n == -1)
+				throw new IOException("Binary recipe file truncated");
+			read += n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+}
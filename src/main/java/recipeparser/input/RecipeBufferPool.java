@@ -0,0 +1,154 @@
+package recipeparser.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads recipe files into ByteBuffers.
+ *
+ * Small files (the usual case) are read with a single read into a pooled heap buffer, which must be
+ * handed back through {@link #release(ByteBuffer)} once parsed. Files larger than a pooled buffer
+ * are memory-mapped instead. Streams (eg. archive entries) are read into a pooled buffer when they fit,
+ * otherwise a heap buffer sized to the content.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeBufferPool {
+
+	//Recipe files are typically a few KB
+	public static final int BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_POOLED = 512;
+
+	private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger POOLED = new AtomicInteger();
+
+	private RecipeBufferPool()
+	{
+	}
+
+	/**
+	 * Loads whole file, buffer position 0 and limit at end of content
+	 *
+	 * @param file - file to load
+	 * @return - pooled buffer (small files) or read-only mapped buffer (large files)
+	 * @throws IOException - if file could not be read
+	 */
+	public static ByteBuffer load(File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			//Large file - map rather than copy
+			if (size > BUFFER_SIZE)
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			ByteBuffer buffer = acquire();
+			try
+			{
+				//Single read normally fills it, loop only if the file is short-read (eg. network storage)
+				while (buffer.hasRemaining() && channel.read(buffer) != -1)
+				{
+					//keep reading
+				}
+			}
+			catch (IOException e)
+			{
+				release(buffer);
+				throw e;
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Loads rest of stream, buffer position 0 and limit at end of content
+	 *
+	 * @param in - stream to read to end (not closed)
+	 * @param sizeHint - expected size, or -1 if unknown
+	 * @param maxSize - largest content accepted
+	 * @return - pooled buffer (small content) or heap buffer
+	 * @throws IOException - if stream could not be read or is larger than maxSize
+	 */
+	public static ByteBuffer load(InputStream in, long sizeHint, int maxSize) throws IOException
+	{
+		if (sizeHint > maxSize)
+			throw new IOException("Content too large - " + sizeHint + " bytes");
+
+		ByteBuffer buffer = sizeHint > BUFFER_SIZE ? ByteBuffer.allocate((int) sizeHint) : acquire();
+		try
+		{
+			//Exactly sizeHint bytes when known (stream may run on, eg. tar), otherwise to end of stream
+			long limit = sizeHint >= 0 ? sizeHint : maxSize;
+			while (buffer.position() < limit)
+			{
+				if (!buffer.hasRemaining())
+				{
+					//Unknown size only - grow (leaves pool)
+					ByteBuffer larger = ByteBuffer.allocate((int) Math.min(maxSize, (long) buffer.capacity() * 2));
+					buffer.flip();
+					larger.put(buffer);
+					release(buffer);
+					buffer = larger;
+				}
+				int n = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(),
+						(int) Math.min(buffer.remaining(), limit - buffer.position()));
+				if (n == -1)
+				{
+					if (sizeHint >= 0)
+						throw new IOException("Content truncated - " + buffer.position() + " of " + sizeHint + " bytes");
+					break;
+				}
+				buffer.position(buffer.position() + n);
+			}
+			if (sizeHint < 0 && buffer.position() == maxSize && in.read() != -1)
+				throw new IOException("Content too large - over " + maxSize + " bytes");
+		}
+		catch (IOException e)
+		{
+			release(buffer);
+			throw e;
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Returns pooled buffer once its content has been parsed, mapped buffers are ignored
+	 *
+	 * @param buffer - buffer from {@link #load(File)}
+	 */
+	public static void release(ByteBuffer buffer)
+	{
+		if (buffer == null || !buffer.hasArray() || buffer.capacity() != BUFFER_SIZE)
+			return;
+
+		//Bounded - surplus buffers are left to GC
+		if (POOLED.incrementAndGet() > MAX_POOLED)
+		{
+			POOLED.decrementAndGet();
+			return;
+		}
+		buffer.clear();
+		POOL.offer(buffer);
+	}
+
+	private static ByteBuffer acquire()
+	{
+		ByteBuffer buffer = POOL.poll();
+		if (buffer == null)
+			return ByteBuffer.allocate(BUFFER_SIZE);
+
+		POOLED.decrementAndGet();
+		return buffer;
+	}
+}
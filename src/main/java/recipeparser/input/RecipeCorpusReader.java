@@ -0,0 +1,283 @@
+package recipeparser.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.metrics.RecipeMetrics;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Reads a corpus - one (possibly multi-GB) text file of recipes concatenated in the usual layout - parsing
+ * recipes in parallel on a fork/join pool.
+ *
+ * The file is memory-mapped and scanned once for recipe boundaries: a recipe starts at the last
+ * "{id}. Title" line (digits, '.', then space or end of line) before each "Ingredients" header line, so
+ * numbered method steps of the previous recipe are not taken as starts. Recipes are then grouped into
+ * batches of a few MB, each batch is mapped once and its recipes parsed with the same logic as single
+ * files ({@link RecipeFileReader#parseRecipe(ByteBuffer, String)}).
+ *
+ * A numbered line in the lead (between title and Ingredients) would be taken as the start, so the title
+ * line must be the only "{n}. " line there.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeCorpusReader {
+
+	//Boundary scan window, lines are never split across windows
+	private static final long SCAN_WINDOW = 256L * 1024 * 1024;
+
+	//Bytes of recipes parsed per fork/join leaf task (one mapping each)
+	private static final long BATCH_BYTES = 4L * 1024 * 1024;
+
+	private static final byte[] INGREDIENT = "ingredient".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Receives each recipe as parsed, called from pool threads (so must be thread safe), may block
+	 */
+	public interface RecipeConsumer {
+		/**
+		 * @param sourceName - corpus file name and byte offset of recipe (for reporting)
+		 * @param recipe - parsed recipe, or null if invalid
+		 */
+		void accept(String sourceName, Recipe recipe) throws InterruptedException;
+	}
+
+	/**
+	 * Carries consumer interruption out of the pool
+	 */
+	private static final class Interrupted extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	private final File corpus;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param corpus - concatenated recipe file
+	 * @param pool - pool to parse on
+	 */
+	public RecipeCorpusReader(File corpus, ForkJoinPool pool)
+	{
+		this.corpus = corpus;
+		this.pool = pool;
+	}
+
+	/**
+	 * Parses every recipe in the corpus, passing each to consumer (in no particular order)
+	 *
+	 * @param consumer - receives each recipe
+	 * @return - number of recipes found
+	 * @throws IOException - if corpus could not be read
+	 * @throws InterruptedException - if consumer was interrupted
+	 */
+	public int forEachRecipe(RecipeConsumer consumer) throws IOException, InterruptedException
+	{
+		try (FileChannel channel = FileChannel.open(corpus.toPath(), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			long[] starts = findRecipeStarts(channel, size);
+			if (starts.length == 0)
+				return 0;
+
+			try
+			{
+				pool.invoke(new ParseTask(channel, starts, size, 0, starts.length, consumer));
+			}
+			catch (Interrupted e)
+			{
+				throw new InterruptedException("Corpus parsing interrupted");
+			}
+			return starts.length;
+		}
+	}
+
+	/**
+	 * Byte offset of each recipe's first line, in file order
+	 *
+	 * @param channel - corpus
+	 * @param size - corpus size
+	 * @return - recipe start offsets
+	 * @throws IOException - if corpus could not be mapped
+	 */
+	private static long[] findRecipeStarts(FileChannel channel, long size) throws IOException
+	{
+		long[] starts = new long[64];
+		int count = 0;
+		long lastCandidate = -1;
+		long windowStart = 0;
+
+		while (windowStart < size)
+		{
+			long windowSize = Math.min(SCAN_WINDOW, size - windowStart);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+			int limit = (int) windowSize;
+			boolean lastWindow = windowStart + windowSize == size;
+			int lineStart = 0;
+
+			while (lineStart < limit)
+			{
+				int lineEnd = lineStart;
+				while (lineEnd < limit && window.get(lineEnd) != '\n' && window.get(lineEnd) != '\r')
+					lineEnd++;
+
+				//Partial line - rescan from its start in the next window (unless a single line fills the window)
+				if (lineEnd == limit && !lastWindow && lineStart > 0)
+					break;
+
+				if (isIngredientsHeader(window, lineStart, lineEnd))
+				{
+					if (lastCandidate != -1)
+					{
+						if (count == starts.length)
+							starts = Arrays.copyOf(starts, count * 2);
+						starts[count++] = lastCandidate;
+						lastCandidate = -1;
+					}
+				}
+				else if (isIdLine(window, lineStart, lineEnd))
+					lastCandidate = windowStart + lineStart;
+
+				lineStart = lineEnd + 1;
+			}
+			windowStart += Math.min(lineStart, limit);
+		}
+		return Arrays.copyOf(starts, count);
+	}
+
+	/**
+	 * Line starting (after BOM / whitespace) with "ingredient", any case
+	 */
+	private static boolean isIngredientsHeader(ByteBuffer content, int start, int end)
+	{
+		start = skipBomAndSpace(content, start, end);
+		if (end - start < INGREDIENT.length)
+			return false;
+		for (int i=0; i<INGREDIENT.length; i++)
+		{
+			byte b = content.get(start + i);
+			if (b >= 'A' && b <= 'Z')
+				b += 'a' - 'A';
+			if (b != INGREDIENT[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * "{digits}." followed by whitespace or end of line, so amounts such as "1.5" are not taken
+	 */
+	private static boolean isIdLine(ByteBuffer content, int start, int end)
+	{
+		int i = skipBomAndSpace(content, start, end);
+		int digitsStart = i;
+		while (i < end && i - digitsStart <= 10 && content.get(i) >= '0' && content.get(i) <= '9')
+			i++;
+		if (i == digitsStart || i - digitsStart > 10 || i == end || content.get(i) != '.')
+			return false;
+		return i + 1 == end || (content.get(i + 1) & 0xFF) <= ' ';
+	}
+
+	private static int skipBomAndSpace(ByteBuffer content, int start, int end)
+	{
+		if (end - start >= 3 && content.get(start) == (byte) 0xEF && content.get(start + 1) == (byte) 0xBB
+				&& content.get(start + 2) == (byte) 0xBF)
+			start += 3;
+		while (start < end && (content.get(start) & 0xFF) <= ' ')
+			start++;
+		return start;
+	}
+
+	/**
+	 * Parses recipes [from, to), split in halves until a batch is small enough to map and parse in one go
+	 */
+	private final class ParseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long[] starts;
+		private final long size;
+		private final int from;
+		private final int to;
+		private final RecipeConsumer consumer;
+
+		private ParseTask(FileChannel channel, long[] starts, long size, int from, int to, RecipeConsumer consumer)
+		{
+			this.channel = channel;
+			this.starts = starts;
+			this.size = size;
+			this.from = from;
+			this.to = to;
+			this.consumer = consumer;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1 && end(to - 1) - starts[from] > BATCH_BYTES)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new ParseTask(channel, starts, size, from, middle, consumer),
+						new ParseTask(channel, starts, size, middle, to, consumer));
+				return;
+			}
+
+			long batchStart = starts[from];
+			long batchSize = end(to - 1) - batchStart;
+			MappedByteBuffer batch = null;
+			if (batchSize <= Integer.MAX_VALUE)
+			{
+				try
+				{
+					long start = RecipeMetrics.OPEN.start();
+					batch = channel.map(FileChannel.MapMode.READ_ONLY, batchStart, batchSize);
+					RecipeMetrics.OPEN.stop(start, batchSize);
+				}
+				catch (IOException e)
+				{
+					Diagnostics.report(ReasonCode.READ_FAILED, corpus.getName() + "@" + batchStart, null, e.getMessage());
+				}
+			}
+
+			for (int i=from; i<to; i++)
+			{
+				String sourceName = corpus.getName() + "@" + starts[i];
+				Recipe recipe = null;
+				if (batch != null)
+				{
+					ByteBuffer content = batch.duplicate();
+					content.limit((int) (end(i) - batchStart));
+					content.position((int) (starts[i] - batchStart));
+					recipe = RecipeFileReader.parseRecipe(content, sourceName);
+				}
+				try
+				{
+					consumer.accept(sourceName, recipe);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new Interrupted();
+				}
+			}
+		}
+
+		/**
+		 * End offset (exclusive) of recipe i
+		 */
+		private long end(int i)
+		{
+			return i + 1 < starts.length ? starts[i + 1] : size;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package recipeparser.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+
+/**
+ * Lists recipe files in an input directory a directory entry at a time, handing each to a consumer as it is
+ * found so processing starts before the listing completes (and large directories are never held in memory).
+ *
+ * Include / exclude globs are matched on the file name only (eg. "*.txt", "draft_*"). When recursive,
+ * subdirectories are walked depth first, excluded directory names are not entered and symbolic links to
+ * directories are not followed.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeFileEnumerator {
+
+	public static final String DEFAULT_INCLUDE = "*.txt";
+
+	/**
+	 * Receives each matching file, may block (eg. on a full queue)
+	 */
+	public interface FileConsumer {
+		void accept(File file) throws InterruptedException;
+	}
+
+	private final boolean recursive;
+	private final List<PathMatcher> includes;
+	private final List<PathMatcher> excludes;
+
+	/**
+	 * @param recursive - walk subdirectories
+	 * @param include - file name globs to read (any match), default *.txt if empty
+	 * @param exclude - file / directory name globs to skip (any match)
+	 */
+	public RecipeFileEnumerator(boolean recursive, List<String> include, List<String> exclude)
+	{
+		this.recursive = recursive;
+		this.includes = matchers(include.isEmpty() ? Collections.singletonList(DEFAULT_INCLUDE) : include);
+		this.excludes = matchers(exclude);
+	}
+
+	/**
+	 * @return - *.txt in the directory itself (original behaviour)
+	 */
+	public static RecipeFileEnumerator txtFiles()
+	{
+		return new RecipeFileEnumerator(false, Collections.emptyList(), Collections.emptyList());
+	}
+
+	/**
+	 * Passes every matching file under dir to consumer, in directory order
+	 *
+	 * @param dir - input directory
+	 * @param consumer - receives each file
+	 * @return - number of files passed to consumer
+	 * @throws IOException - if a directory could not be listed
+	 * @throws InterruptedException - if consumer was interrupted
+	 */
+	public int forEach(File dir, FileConsumer consumer) throws IOException, InterruptedException
+	{
+		int count = 0;
+		Deque<Path> directories = new ArrayDeque<>();
+		directories.push(dir.toPath());
+
+		while (!directories.isEmpty())
+		{
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directories.pop()))
+			{
+				for (Path entry : entries)
+				{
+					Path name = entry.getFileName();
+					if (matchesAny(excludes, name))
+						continue;
+
+					//Directory check (a stat) only needed when walking
+					if (recursive && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS))
+					{
+						directories.push(entry);
+						continue;
+					}
+
+					if (!matchesAny(includes, name))
+					{
+						Diagnostics.report(ReasonCode.FILE_SKIPPED, name.toString(), null, null);
+						continue;
+					}
+					consumer.accept(entry.toFile());
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param fileName - file name (no directory)
+	 * @return - true if name passes the include and exclude globs
+	 */
+	public boolean matches(Path fileName)
+	{
+		return matchesAny(includes, fileName) && !matchesAny(excludes, fileName);
+	}
+
+	/**
+	 * @param dirName - subdirectory name (no parent)
+	 * @return - true if walking subdirectories and dirName is not excluded
+	 */
+	public boolean entersDirectory(Path dirName)
+	{
+		return recursive && !matchesAny(excludes, dirName);
+	}
+
+	private static boolean matchesAny(List<PathMatcher> matchers, Path name)
+	{
+		for (PathMatcher matcher : matchers)
+		{
+			if (matcher.matches(name))
+				return true;
+		}
+		return false;
+	}
+
+	private static List<PathMatcher> matchers(List<String> globs)
+	{
+		List<PathMatcher> matchers = new ArrayList<>(globs.size());
+		for (String glob : globs)
+			matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+		return matchers;
+	}
+}
@@ -1,20 +1,15 @@
 package recipeparser.input;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.input.BOMInputStream;
-import org.apache.commons.lang3.StringUtils;
 
-import recipeparser.recipe.MetaDataAndId;
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.metrics.RecipeMetrics;
 import recipeparser.recipe.Recipe;
 
 public class RecipeFileReader {
@@ -31,31 +26,33 @@ public class RecipeFileReader {
 		List<Recipe> recipes = new ArrayList<>();
 		List<String> failedRecipes = new ArrayList<>();
 		
-		  File[] directoryListing = inputDir.listFiles();
-		  if (directoryListing != null) 
+		  //Text files only, streamed from the directory
+		  try
 		  {
-		    for (File child : directoryListing) 
-		    {
-		    	//Skip non-text files
-		    	if(!FilenameUtils.getExtension(child.getAbsolutePath()).equals("txt")) {
-		    		System.out.println("Skipping non-txt file: " + child.getName());
-		    		continue;
-		    	}
-		    	
-		    	//Read file
-		    	Recipe recipe = readSingleRecipeFile(child);
-		    	
-		    	//Add if not null
-		    	if (recipe != null)
-		    		recipes.add(recipe);
-		    	//Else add to failed list
-		    	else
-		    		failedRecipes.add(child.getName());
-		    		
-		    }
+			  RecipeFileEnumerator.txtFiles().forEach(inputDir, child ->
+			  {
+				  //Read file
+				  Recipe recipe = readSingleRecipeFile(child);
+				  
+				  //Add if not null
+				  if (recipe != null)
+					  recipes.add(recipe);
+				  //Else add to failed list
+				  else
+					  failedRecipes.add(child.getName());
+			  });
+		  }
+		  catch (IOException e)
+		  {
+			  System.out.println("Failed to list input directory - " + e.getMessage());
+		  }
+		  catch (InterruptedException e)
+		  {
+			  Thread.currentThread().interrupt();
 		  }
 		  
 		  //Report fails to console
+		  Diagnostics.flush();
 		  if (failedRecipes.size() != 0)
 		  {
 			  System.out.println("Failed to read " + failedRecipes.size() + " files");
@@ -66,123 +63,82 @@ public class RecipeFileReader {
 	/**
 	 * Attempts to read individual text file to recipe, returns null if invalid
 	 * 
-	 * This method requires that ingredients in recipe are listed before the method, and that these
-	 * sections are marked in the text file as either "Ingredients" and "Method" respectively.
-	 * 
 	 * @param recipeFile - file to read
 	 * @return recipe or null if invalid
 	 */
-	private static Recipe readSingleRecipeFile(File recipeFile) {
-		
-		//Init recipe content
-		Recipe recipe = RecipeFileReaderUtils.createNewBlankRecipe();
-		RecipeFileReaderUtils recipeReader = new RecipeFileReaderUtils();
-		boolean firstLineRead = false;
-		boolean ingredientsLineHit = false;
-		boolean methodLineHit = false;
-		boolean leadFirstLineRead = false;
+	private static Recipe readSingleRecipeFile(File recipeFile) 
+	{
+		ByteBuffer content = readRecipeFile(recipeFile);
 		
-		//Read file lines
-//		try (BufferedReader reader = new BufferedReader(new FileReader(recipeFile.getAbsoluteFile()))) 
+		if (content == null)
+			return null;
 		
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(recipeFile.getAbsoluteFile()), "UTF8"))) 
+		try 
 		{
-			String s;
-			String lead = null;
-			while((s = reader.readLine()) != null) 
-			{
-
-				//Remove BOM if present
-				s = RecipeFileReaderUtils.removeUTF8BOM(s);
-				
-				//Skip if blank
-				if (s.isEmpty())
-					continue;
-				
-				//Check for ingredients line
-				if (StringUtils.containsIgnoreCase(s, "Ingredient"))
-				{
-					recipe.getContent().setLead(lead);
-					ingredientsLineHit = true;
-					continue;
-				}
-				
-				//Check for method line
-				if (StringUtils.containsIgnoreCase(s, "Method"))
-				{
-					methodLineHit = true;
-					continue;
-				}
-				
-				//if neither ingredients or method hit yet but first line has been read, then this is recipe lead (description)
-				if (firstLineRead && !ingredientsLineHit && !methodLineHit)
-				{
-					//Initialise
-					if (lead == null)
-						lead = "";
-					
-					//Append to lead (no new line if not required to keep xml tidy)
-					if(!leadFirstLineRead)
-					{
-						lead += s.trim();
-						leadFirstLineRead = true;
-					}
-					//insert newline to preserve multi-line description
-					else 
-					{
-						lead += System.lineSeparator() + s.trim();
-					}
-					
-				}
-				
-				//First non empty line in text file
-				if (!firstLineRead) 
-				{
-					
-					MetaDataAndId m = recipeReader.firstLineScan(s);
-					
-					//If metadata is null, then id or title was not read so return null
-					if (m == null)
-						return null;
-					
-					//Set metadata values and ID
-					recipe.setId(m.getId());
-					recipe.setMetadata(m.getMetadata());
-					
-					//Flag first line read
-					firstLineRead = true;
-				}
-				
-				// if ingredients line hit but before method line hit
-				if(ingredientsLineHit && !methodLineHit) 
-				{
-					recipe.getContent().getIngredients().getIngredient().add(recipeReader.readIngredientLine(s));
-				}
-				
-				// if method line hit
-				if(ingredientsLineHit && methodLineHit) 
-				{
-					recipe.getContent().getMethod().getStep().add(recipeReader.readMethodStepLine(s));
-				}
-				
-			}//end while loop
-			
-			//If ingredients or method not found... or somehow first line not read... just return null
-			if (!firstLineRead || !ingredientsLineHit || !methodLineHit )
-			{
-				return null;
-			}
+			return parseRecipe(content, recipeFile.getName());
+		}
+		finally 
+		{
+			RecipeBufferPool.release(content);
+		}
+	}
+	
+	/**
+	 * Reads raw content of recipe file, returns null if file could not be read.
+	 * Buffer should be handed back to {@link RecipeBufferPool#release(ByteBuffer)} once parsed.
+	 * 
+	 * @param recipeFile - file to read
+	 * @return - file content or null if failed
+	 */
+	public static ByteBuffer readRecipeFile(File recipeFile) 
+	{
+		try 
+		{
+			long start = RecipeMetrics.OPEN.start();
+			ByteBuffer content = RecipeBufferPool.load(recipeFile);
+			RecipeMetrics.OPEN.stop(start, content.remaining());
+			return content;
 		}
 		catch (IOException e) 
 		{
-			System.out.println("Failed to read file: " + recipeFile.getName() + " - " + e.getMessage());
+			Diagnostics.report(ReasonCode.READ_FAILED, recipeFile.getName(), null, e.getMessage());
 			return null;
 		}
-		
-		//return recipe
-		return recipe;
 	}
 
+	/**
+	 * Attempts to parse raw recipe file content to recipe, returns null if invalid
+	 * 
+	 * @param content - raw file content (UTF-8)
+	 * @param sourceName - name of source file (for reporting)
+	 * @return recipe or null if invalid
+	 */
+	public static Recipe parseRecipe(byte[] content, String sourceName) 
+	{
+		return parseRecipe(ByteBuffer.wrap(content), sourceName);
+	}
 
+	/**
+	 * Attempts to parse raw recipe file content to recipe, returns null if invalid
+	 * 
+	 * This method requires that ingredients in recipe are listed before the method, and that these
+	 * sections are marked in the text file as either "Ingredients" and "Method" respectively.
+	 * 
+	 * @param content - raw file content (UTF-8), position to limit
+	 * @param sourceName - name of source file (for reporting)
+	 * @return recipe or null if invalid
+	 */
+	public static Recipe parseRecipe(ByteBuffer content, String sourceName) 
+	{
+		//Diagnostics from here on tagged with source (and line, set by the scanner)
+		Diagnostics.beginSource(sourceName);
+		RecipeLineParser parser = new RecipeLineParser(new RecipeFileReaderUtils());
+		
+		//Id or title could not be read from first line
+		if (!RecipeScanner.scan(content, parser))
+			return null;
+		
+		return parser.finish();
+	}
 	
 }
@@ -1,18 +1,9 @@
 package recipeparser.input;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.regex.Pattern;
-
-import javax.xml.datatype.DatatypeConfigurationException;
-import javax.xml.datatype.DatatypeConstants;
-import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
 
-import recipeparser.recipe.AmountAndUom;
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
 import recipeparser.recipe.MetaDataAndId;
 import recipeparser.recipe.ObjectFactory;
 import recipeparser.recipe.Recipe;
@@ -53,7 +44,7 @@ public class RecipeFileReaderUtils {
 		//ID - Required field
 		if (periodIndex == -1) 
 		{
-			System.out.println("Failed to read ID from first line: " + s);
+			Diagnostics.report(ReasonCode.ID_NOT_READ, "id", s);
 			return null;
 		}
 		
@@ -62,12 +53,12 @@ public class RecipeFileReaderUtils {
 		int dateCloseIndex = trimmedContent.lastIndexOf("]");
 
 		//Set ID
-		Integer id = tryParseInt(trimmedContent.substring(0, periodIndex));
-		if (id != null)
-			m.setId(id);
+		long id = NumberScanner.parseInt(trimmedContent, 0, periodIndex);
+		if (id != NumberScanner.NO_INT)
+			m.setId((int) id);
 		else 
 		{
-			System.out.println("Failed to read ID from first line: " + s);
+			Diagnostics.report(ReasonCode.ID_NOT_READ, "id", s);
 			return null;
 		}
 		
@@ -85,7 +76,10 @@ public class RecipeFileReaderUtils {
 
 		//Require at minimum id or title
 		if (meta.getTitle() == null)
+		{
+			Diagnostics.report(ReasonCode.TITLE_NOT_READ, "title", s);
 			return null;
+		}
 		
 		//Set metadata & return
 		m.setMetadata(meta);
@@ -140,31 +134,13 @@ public class RecipeFileReaderUtils {
 		if (dateOpenIndex != -1 && dateCloseIndex < dateOpenIndex)
 			return null;
 		
-		//Init
-		DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
-		String dateString = trimmedContent.substring(dateOpenIndex+1, dateCloseIndex).trim();
-		Date date;
+		//No timezone for conformence to sample output
+		XMLGregorianCalendar xmlCal = CreatedDateParser.parse(trimmedContent, dateOpenIndex + 1, dateCloseIndex);
 		
-		//Attempt parse to XMLGregorianCalander
-		try {
-			date = format.parse(dateString);
-
-			//Calander init
-			GregorianCalendar cal = new GregorianCalendar();
-			cal.setTime(date);
-			
-			//XMLCalander setup (no timezone for conformence to sample output)
-			XMLGregorianCalendar xmlCal =  DatatypeFactory.newInstance().newXMLGregorianCalendar(cal);
-			xmlCal.setTimezone(DatatypeConstants.FIELD_UNDEFINED);
-			
-			return xmlCal;
-		} 
 		//Return null if failed
-		catch (ParseException | DatatypeConfigurationException e) 
-		{
-			System.out.println("Failed to parse date" + " - " + e.getMessage());
-			return null;
-		}
+		if (xmlCal == null)
+			Diagnostics.report(ReasonCode.DATE_UNPARSEABLE, "created", "\"" + trimmedContent.substring(dateOpenIndex + 1, dateCloseIndex).trim() + "\"");
+		return xmlCal;
 	}
 
 	/**
@@ -174,7 +150,7 @@ public class RecipeFileReaderUtils {
 	 * @param byIndex - index of "by" in first line (if present)
 	 * @param dateOpenIndex - index of "[" in first line (if present)
 	 * @param dateCloseIndex - index of "]" in first line (if present)
-	 * @return - Author info, or null if not found
+	 * @return - Author info (interned), or null if not found
 	 */
 	private String retrieveAuthor(String trimmedContent, int byIndex, int dateOpenIndex, int dateCloseIndex) 
 	{
@@ -182,10 +158,10 @@ public class RecipeFileReaderUtils {
 		{
 			//date after author
 			if (dateOpenIndex != -1 && dateCloseIndex != -1 && dateOpenIndex > byIndex)
-				return trimmedContent.substring(byIndex + 4, dateOpenIndex).trim();
+				return StringInterner.AUTHORS.internTrimmed(trimmedContent, byIndex + 4, dateOpenIndex);
 			//author after date or no date
 			else
-				return trimmedContent.substring(byIndex + 4).trim();
+				return StringInterner.AUTHORS.internTrimmed(trimmedContent, byIndex + 4, trimmedContent.length());
 		}
 		//No author found
 		else
@@ -199,11 +175,8 @@ public class RecipeFileReaderUtils {
 	 * @return - parsed int or null
 	 */
 	public Integer tryParseInt(String value) {
-	    try {
-	        return Integer.parseInt(value);
-	    } catch (NumberFormatException e) {
-	        return null;
-	    }
+		long result = NumberScanner.parseInt(value, 0, value.length());
+		return result == NumberScanner.NO_INT ? null : Integer.valueOf((int) result);
 	}
 	
 	/**
@@ -222,254 +195,26 @@ public class RecipeFileReaderUtils {
 	}
 	
 	/**
-	 * Parse string as double or return null if invalid (include fraction format)
+	 * Parse string as double or return null if invalid (include fraction, unicode fraction and range formats)
 	 * 
 	 * @param value - string to convert
 	 * @return - converted double or null if invalid
 	 */
 	public Double tryParseIngAmt(String value) 
 	{
-		
-		//Strip out hyphen (do not allow ranges, take first instead)
-		if (value.contains("-"))
-			value = value.substring(0, value.indexOf("-"));
-		
-		//Fraction format
-		if (value.contains("/"))
-		{
-			//Split numerator from denominator
-			String[] fraction = value.split("/");
-			
-			//If not split into at least 2, return null
-			if (fraction.length < 2)
-				return null;
-			
-			//Try parse with fraction amount
-			try 
-			{
-				return Double.parseDouble(fraction[0]) / Double.parseDouble(fraction[1]);
-	    	} 
-			catch (NumberFormatException e) 
-			{
-	    		return null;
-	    	}
-		}
-		
-		//Standard try parse
-		else 
-		{
-			try 
-			{
-				return Double.parseDouble(value);
-	    	} 
-			catch (NumberFormatException e) 
-			{
-	    		return null;
-	    	}
-		}
+		double result = NumberScanner.parseAmount(value, 0, value.length());
+		return Double.isNaN(result) ? null : Double.valueOf(result);
 	}
 
 	/**
 	 * Reads individual ingredient element from input line
 	 * 
 	 * @param s - input string
-	 * @return - Ingredient or null if invalid
+	 * @return - Ingredient
 	 */
 	public Ingredient readIngredientLine(String s) 
 	{
-		//Init
-		ObjectFactory factory = new ObjectFactory();
-		Ingredient ing = factory.createRecipeContentIngredientsIngredient();
-		String trimmedContent = s.trim();
-		String item = null;
-
-		//Split into words, first word is expected to be amount+uom or amount only with 2nd being uom only
-		String[] words = Pattern.compile("\\s+").split(trimmedContent);
-				
-		//Return null if nothing found
-		if (words.length == 0)
-			return null;
-		
-		//if only length of 1, this is likely to be only an item (eg. food colouring)
-		if (words.length == 1)
-			ing.setItem(words[0]);
-		
-		else 
-		{
-			String firstEl = convertHalfChar(words[0]);
-			String amountAndUom = null;
-			String uomOnly = null;
-		
-			//Check if first word is numeric or null
-			Double tryParseAmount = tryParseIngAmt(firstEl);
-		
-			//If not parsable, this is potentially due to uom attached
-			if (tryParseAmount == null)
-				amountAndUom = firstEl;
-			//If this can be parsed then must be the amount
-			else
-			{
-				ing.setAmount(tryParseAmount);
-				uomOnly = words[1];//Note this may be uom or start of item
-			}
-			
-			//If amount was attached (or potentially this is just item only)
-			if (amountAndUom != null) 
-			{
-				AmountAndUom splitAmtAndUom = splitAmountFromUom(amountAndUom);
-				Double tryParseIngAmt = tryParseIngAmt(splitAmtAndUom.getAmount());
-				ing.setAmount(tryParseIngAmt);
-				ing.setUnit(findUnitOfMeasure(splitAmtAndUom.getUom()));
-				
-				
-				//Line must have ingredient item only
-				if (tryParseIngAmt == null) 
-				{
-					item = "";
-					for (String word : words) 
-					{
-						item += word + " ";
-					}
-				}
-				//Skip the uom&amt element in index 0
-				else 
-				{
-					item = "";
-					for (int i=1; i<words.length; i++)
-					{
-						item += words[i] + " ";
-					}
-				}
-				
-			}
-			
-			//If amount and unit of measurement were seperate
-			if (uomOnly != null)
-			{
-				String uom = findUnitOfMeasure(uomOnly);
-				
-				ing.setUnit(uom);
-				item = "";
-				
-				if (uom != null) {
-					//In this block, element 1 must have been amt and element 2 must have been uom
-					//Therefore skipping to element 3+ will give the item
-					for (int i=2; i<words.length; i++)
-					{
-						item += words[i] + " ";
-					}
-				}
-				else 
-				{
-					//In this block, element 1 was amount but no valid unit of measurement not found
-					//Therefore item starts @ 2 eg.(large eggs)
-					for (int i=1; i<words.length; i++)
-					{
-						item += words[i] + " ";
-					}
-				}
-			}
-			
-			//Finally set item
-			ing.setItem(item.trim());
-		}
-
-		return ing;
-	}
-
-	/**
-	 * Matches input string against predefined UOMs - null if not matching
-	 * 
-	 * This method could be expanded upon to support more uom types
-	 * 
-	 * @param uom - input string
-	 * @return - matched uom
-	 */
-	private String findUnitOfMeasure(String uom) 
-	{
-		String unitOfMeasure = uom.toLowerCase();
-		
-		switch (unitOfMeasure)
-		{
-		//grams
-		case "g":
-		case "grams":
-			return "grams";
-		//kilograms
-		case "kg":
-		case "kilograms":
-			return "kilograms";
-		//drops
-		case "dr":
-		case "drop":
-		case "drops":
-			return "drops";
-		//pinches
-		case "pn":
-		case "pinch":
-		case "pinches":
-			return "pinches";
-		//teaspoons
-		case "tsp":
-		case "teaspoon":
-		case "teaspoons":
-			return "teaspoons";
-		//tablespoons
-		case "tbsp":
-		case "tablespoon":
-		case "tablespoons":
-			return "tablespoons";
-		//millilitres
-		case "ml":
-		case "millilitre":
-		case "millilitres":
-			return "millilitres";
-		//litres
-		case "l":
-		case "litre":
-		case "litres":
-			return "litres";	
-		//pints
-		case "pt":
-		case "pint":
-		case "pints":
-			return "pints";	
-		//cups
-		case "c":
-		case "cup":
-		case "cups":
-			return "cups";	
-		//Other (eg. each - therefore uom not required in xml)
-		default:
-			return null;
-		
-		}		
-	}
-
-	/**
-	 * Splits string into amount (numeric) and uom (alphabetic chars)
-	 * 
-	 * @param amountAndUom - input string
-	 * @return - amt and uom split strings
-	 */
-	private AmountAndUom splitAmountFromUom(String amountAndUom) {
-		
-		//Init
-        StringBuffer uom = new StringBuffer(), amt = new StringBuffer();
-        
-        //Foreach char
-        for (int i=0; i<amountAndUom.length(); i++)
-        {
-        	//Numeric into amt
-            if (Character.isDigit(amountAndUom.charAt(i)))
-                amt.append(amountAndUom.charAt(i));
-            //alphabetic chars into uom
-            else if (Character.isAlphabetic(amountAndUom.charAt(i)))
-                uom.append(amountAndUom.charAt(i));
-        }	
-        
-        return new AmountAndUom(amt.toString(), uom.toString());
-        
+		return IngredientTokenizer.tokenize(s);
 	}
 
 	/**
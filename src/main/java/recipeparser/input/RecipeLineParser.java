@@ -0,0 +1,121 @@
+package recipeparser.input;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.metrics.RecipeMetrics;
+import recipeparser.recipe.MetaDataAndId;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Builds a single recipe from its non-empty lines in file order.
+ *
+ * The caller detects "Ingredients" / "Method" header lines and reports them through
+ * {@link #ingredientsHeader()} and {@link #methodHeader()}, every other non-empty line is passed to
+ * {@link #line(String)}. Ingredients must be listed before the method.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeLineParser {
+
+	private final Recipe recipe = RecipeFileReaderUtils.createNewBlankRecipe();
+	private final RecipeFileReaderUtils recipeReader;
+	private boolean firstLineRead = false;
+	private boolean ingredientsLineHit = false;
+	private boolean methodLineHit = false;
+	private StringBuilder lead;
+
+	public RecipeLineParser(RecipeFileReaderUtils recipeReader)
+	{
+		this.recipeReader = recipeReader;
+	}
+
+	/**
+	 * Ingredients header line - ends the lead, following lines are ingredients
+	 */
+	public void ingredientsHeader()
+	{
+		recipe.getContent().setLead(lead == null ? null : lead.toString());
+		ingredientsLineHit = true;
+	}
+
+	/**
+	 * Method header line - following lines are steps
+	 */
+	public void methodHeader()
+	{
+		methodLineHit = true;
+	}
+
+	/**
+	 * Reads a non-empty, non-header line
+	 *
+	 * @param s - line content
+	 * @return - false if recipe is invalid (id or title could not be read from first line)
+	 */
+	public boolean line(String s)
+	{
+		//if neither ingredients or method hit yet but first line has been read, then this is recipe lead (description)
+		if (firstLineRead && !ingredientsLineHit && !methodLineHit)
+		{
+			//Initialise, no new line before first line to keep xml tidy
+			if (lead == null)
+				lead = new StringBuilder(s.trim());
+			//insert newline to preserve multi-line description
+			else
+				lead.append(System.lineSeparator()).append(s.trim());
+		}
+
+		//First non empty line in text file
+		if (!firstLineRead)
+		{
+			long start = RecipeMetrics.FIRST_LINE.start();
+			MetaDataAndId m = recipeReader.firstLineScan(s);
+			RecipeMetrics.FIRST_LINE.stop(start);
+
+			//If metadata is null, then id or title was not read
+			if (m == null)
+				return false;
+
+			//Set metadata values and ID
+			recipe.setId(m.getId());
+			recipe.setMetadata(m.getMetadata());
+
+			//Flag first line read
+			firstLineRead = true;
+		}
+
+		// if ingredients line hit but before method line hit
+		if(ingredientsLineHit && !methodLineHit)
+		{
+			long start = RecipeMetrics.INGREDIENT.start();
+			recipe.getContent().getIngredients().getIngredient().add(recipeReader.readIngredientLine(s));
+			RecipeMetrics.INGREDIENT.stop(start);
+		}
+
+		// if method line hit
+		if(ingredientsLineHit && methodLineHit)
+		{
+			long start = RecipeMetrics.METHOD.start();
+			recipe.getContent().getMethod().getStep().add(recipeReader.readMethodStepLine(s));
+			RecipeMetrics.METHOD.stop(start);
+		}
+		return true;
+	}
+
+	/**
+	 * @return - recipe, or null if ingredients or method not found (or somehow first line not read)
+	 */
+	public Recipe finish()
+	{
+		if (!firstLineRead)
+			return null;
+		if (!ingredientsLineHit || !methodLineHit)
+		{
+			Diagnostics.report(ReasonCode.SECTION_MISSING, !ingredientsLineHit ? "ingredients" : "method",
+					(!ingredientsLineHit ? "Ingredients" : "Method") + " header not found");
+			return null;
+		}
+		return recipe;
+	}
+}
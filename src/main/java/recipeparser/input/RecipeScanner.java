@@ -0,0 +1,146 @@
+package recipeparser.input;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import recipeparser.diagnostics.Diagnostics;
+
+/**
+ * Scans UTF-8 recipe file content directly on the bytes.
+ *
+ * Lines (ended by \n, \r or \r\n), leading BOMs, blank lines and the "Ingredient" / "Method" section
+ * headers are all found without decoding. Only the lines kept as recipe content are turned into
+ * Strings, trimmed before decoding.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeScanner {
+
+	private static final byte[] INGREDIENT = "ingredient".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] METHOD = "method".getBytes(StandardCharsets.US_ASCII);
+
+	//Scratch space for decoding lines out of direct (memory-mapped) buffers
+	private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[1024]);
+
+	private RecipeScanner()
+	{
+	}
+
+	/**
+	 * Feeds each line of content (position to limit) to the line parser, buffer position is not changed
+	 *
+	 * @param content - UTF-8 file content
+	 * @param parser - receives headers and content lines
+	 * @return - false if parser rejected a line (recipe invalid)
+	 */
+	public static boolean scan(ByteBuffer content, RecipeLineParser parser)
+	{
+		int limit = content.limit();
+		int lineStart = content.position();
+		Diagnostics.Context context = Diagnostics.context();
+		int lineNumber = 0;
+
+		while (lineStart < limit)
+		{
+			context.setLine(++lineNumber);
+
+			//Find end of line
+			int lineEnd = lineStart;
+			while (lineEnd < limit && content.get(lineEnd) != '\n' && content.get(lineEnd) != '\r')
+				lineEnd++;
+
+			if (!scanLine(content, lineStart, lineEnd, parser))
+				return false;
+
+			//Step past \n, \r or \r\n
+			lineStart = lineEnd + 1;
+			if (lineEnd < limit && content.get(lineEnd) == '\r' && lineStart < limit && content.get(lineStart) == '\n')
+				lineStart++;
+		}
+		return true;
+	}
+
+	/**
+	 * Handles single line between start (inclusive) and end (exclusive)
+	 */
+	private static boolean scanLine(ByteBuffer content, int start, int end, RecipeLineParser parser)
+	{
+		//Remove BOM if present
+		if (end - start >= 3 && content.get(start) == (byte) 0xEF && content.get(start + 1) == (byte) 0xBB
+				&& content.get(start + 2) == (byte) 0xBF)
+			start += 3;
+
+		//Skip if blank
+		if (start == end)
+			return true;
+
+		//Check for ingredients line
+		if (containsIgnoreCase(content, start, end, INGREDIENT))
+		{
+			parser.ingredientsHeader();
+			return true;
+		}
+
+		//Check for method line
+		if (containsIgnoreCase(content, start, end, METHOD))
+		{
+			parser.methodHeader();
+			return true;
+		}
+
+		//Trim (all whitespace <= space is single byte in UTF-8) then decode
+		while (start < end && (content.get(start) & 0xFF) <= ' ')
+			start++;
+		while (end > start && (content.get(end - 1) & 0xFF) <= ' ')
+			end--;
+
+		return parser.line(decode(content, start, end));
+	}
+
+	/**
+	 * ASCII case-insensitive search for lower case needle within [start, end)
+	 */
+	static boolean containsIgnoreCase(ByteBuffer content, int start, int end, byte[] needle)
+	{
+		int last = end - needle.length;
+		for (int i=start; i<=last; i++)
+		{
+			int j = 0;
+			while (j < needle.length && toLowerAscii(content.get(i + j)) == needle[j])
+				j++;
+			if (j == needle.length)
+				return true;
+		}
+		return false;
+	}
+
+	private static byte toLowerAscii(byte b)
+	{
+		return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	/**
+	 * Decodes [start, end) as UTF-8, straight from the backing array where there is one
+	 */
+	private static String decode(ByteBuffer content, int start, int end)
+	{
+		int length = end - start;
+		if (length == 0)
+			return "";
+
+		if (content.hasArray())
+			return new String(content.array(), content.arrayOffset() + start, length, StandardCharsets.UTF_8);
+
+		byte[] scratch = SCRATCH.get();
+		if (scratch.length < length)
+		{
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+			SCRATCH.set(scratch);
+		}
+		ByteBuffer view = content.duplicate();
+		view.position(start);
+		view.get(scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,178 @@
+package recipeparser.input;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free intern table for low-cardinality recipe text (authors, ingredient items), so a parsed
+ * corpus holds one copy of "icing sugar" rather than one per recipe.
+ *
+ * Looked up by slice of the line being parsed, so a hit allocates nothing. The table is a fixed number of
+ * slots in pairs (2-way set associative): a miss goes in the first slot of its pair, the previous value moving
+ * to the second and the older one dropped. Memory stays the same however many distinct values go through it,
+ * values that do not recur are simply evicted again. Racing threads may each create a copy of the same value, either is correct.
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class StringInterner {
+
+	//Table per field, so a run of distinct items does not evict the authors
+	public static final StringInterner AUTHORS = new StringInterner(1 << 12, 64);
+	public static final StringInterner ITEMS = new StringInterner(1 << 14, 64);
+
+	private static volatile boolean enabled = true;
+
+	private final AtomicReferenceArray<String> table;
+	private final int mask;
+	private final int maxLength;
+
+	/**
+	 * @param capacity - slots, rounded up to a power of 2 (at least 2)
+	 * @param maxLength - longest value kept, longer text is assumed not to recur
+	 */
+	public StringInterner(int capacity, int maxLength)
+	{
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("capacity must be 1 to 2^30 - " + capacity);
+		int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+		this.table = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Turns interning on or off for all tables (eg. to measure heap without it)
+	 *
+	 * @param enabled - false to return a new String every time
+	 */
+	public static void setEnabled(boolean enabled)
+	{
+		StringInterner.enabled = enabled;
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * @param s - text, may be null
+	 * @return - shared copy of s, or s itself when first seen or not kept
+	 */
+	public String intern(String s)
+	{
+		if (s == null || !enabled || s.length() > maxLength)
+			return s;
+
+		int pair = spread(s.hashCode()) & mask & ~1;
+		String first = table.get(pair);
+		if (s.equals(first))
+			return first;
+		String second = table.get(pair + 1);
+		if (s.equals(second))
+			return second;
+
+		store(pair, first, s);
+		return s;
+	}
+
+	/**
+	 * Text of [start, end) with surrounding whitespace removed, as String.trim() would
+	 *
+	 * @param s - text
+	 * @param start - start index
+	 * @param end - end index (exclusive)
+	 * @return - shared copy, or new String when first seen or not kept
+	 */
+	public String internTrimmed(CharSequence s, int start, int end)
+	{
+		while (start < end && s.charAt(start) <= ' ')
+			start++;
+		while (end > start && s.charAt(end - 1) <= ' ')
+			end--;
+		return intern(s, start, end);
+	}
+
+	/**
+	 * @param s - text
+	 * @param start - start index
+	 * @param end - end index (exclusive)
+	 * @return - shared copy of [start, end), or new String when first seen or not kept
+	 */
+	public String intern(CharSequence s, int start, int end)
+	{
+		int length = end - start;
+		if (!enabled || length > maxLength)
+			return s.subSequence(start, end).toString();
+
+		//Same hash as String.hashCode(), so intern(String) finds the same pair
+		int hash = 0;
+		for (int i=start; i<end; i++)
+			hash = 31 * hash + s.charAt(i);
+
+		int pair = spread(hash) & mask & ~1;
+		String first = table.get(pair);
+		if (matches(first, s, start, length))
+			return first;
+		String second = table.get(pair + 1);
+		if (matches(second, s, start, length))
+			return second;
+
+		String value = s.subSequence(start, end).toString();
+		store(pair, first, value);
+		return value;
+	}
+
+	/**
+	 * @return - values held
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (int i=0; i<table.length(); i++)
+		{
+			if (table.get(i) != null)
+				size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Empties table
+	 */
+	public void clear()
+	{
+		for (int i=0; i<table.length(); i++)
+			table.set(i, null);
+	}
+
+	/**
+	 * New value into the first slot of the pair, the previous first moving to the second (oldest dropped)
+	 */
+	private void store(int pair, String first, String value)
+	{
+		if (first != null)
+			table.lazySet(pair + 1, first);
+		table.lazySet(pair, value);
+	}
+
+	private static boolean matches(String candidate, CharSequence s, int start, int length)
+	{
+		if (candidate == null || candidate.length() != length)
+			return false;
+		for (int i=0; i<length; i++)
+		{
+			if (candidate.charAt(i) != s.charAt(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Mixes high bits into the low ones used for the slot
+	 */
+	private static int spread(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+}
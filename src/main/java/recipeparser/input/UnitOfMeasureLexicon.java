@@ -0,0 +1,287 @@
+package recipeparser.input;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Unit of measure aliases compiled into a case insensitive trie.
+ *
+ * Lookups walk the trie directly over CharSequence slices so no Strings are created, and the
+ * returned unit names are shared (interned) instances. Multi-word aliases (eg. "fl oz") match any
+ * run of whitespace between words.
+ *
+ * The default lexicon is loaded from units.txt on the classpath, see that file for the format.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class UnitOfMeasureLexicon {
+
+	private static final String DEFAULT_RESOURCE = "/units.txt";
+
+	private static volatile UnitOfMeasureLexicon defaultLexicon;
+
+	private final Node root = new Node();
+	private int aliasCount;
+
+	/**
+	 * Trie node - children kept in parallel arrays, fan out is small
+	 */
+	private static final class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private String unit;
+
+		private Node child(char c)
+		{
+			char[] k = keys;
+			for (int i=0; i<k.length; i++)
+			{
+				if (k[i] == c)
+					return children[i];
+			}
+			return null;
+		}
+
+		private Node addChild(char c)
+		{
+			Node existing = child(c);
+			if (existing != null)
+				return existing;
+
+			keys = Arrays.copyOf(keys, keys.length + 1);
+			children = Arrays.copyOf(children, children.length + 1);
+			keys[keys.length - 1] = c;
+			return children[children.length - 1] = new Node();
+		}
+	}
+
+	/**
+	 * @return - lexicon loaded from units.txt on the classpath (unless replaced via setDefault)
+	 */
+	public static UnitOfMeasureLexicon getDefault()
+	{
+		UnitOfMeasureLexicon result = defaultLexicon;
+		if (result == null)
+		{
+			synchronized (UnitOfMeasureLexicon.class)
+			{
+				result = defaultLexicon;
+				if (result == null)
+				{
+					try (InputStream in = UnitOfMeasureLexicon.class.getResourceAsStream(DEFAULT_RESOURCE))
+					{
+						if (in == null)
+							throw new IllegalStateException("Unit lexicon not found on classpath: " + DEFAULT_RESOURCE);
+						defaultLexicon = result = load(in);
+					}
+					catch (IOException e)
+					{
+						throw new UncheckedIOException("Failed to load unit lexicon: " + DEFAULT_RESOURCE, e);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the lexicon used when reading ingredient lines
+	 *
+	 * @param lexicon - new default lexicon
+	 */
+	public static void setDefault(UnitOfMeasureLexicon lexicon)
+	{
+		defaultLexicon = lexicon;
+	}
+
+	/**
+	 * @param file - lexicon file
+	 * @return - compiled lexicon
+	 * @throws IOException - if file could not be read or is malformed
+	 */
+	public static UnitOfMeasureLexicon load(File file) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			return load(in);
+		}
+	}
+
+	/**
+	 * Reads lexicon lines "{unit}: {alias}, {alias}, ..." ('#' comments and blank lines skipped)
+	 *
+	 * @param in - UTF-8 lexicon content
+	 * @return - compiled lexicon
+	 * @throws IOException - if content could not be read or is malformed
+	 */
+	public static UnitOfMeasureLexicon load(InputStream in) throws IOException
+	{
+		UnitOfMeasureLexicon lexicon = new UnitOfMeasureLexicon();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null)
+		{
+			lineNumber++;
+			line = RecipeFileReaderUtils.removeUTF8BOM(line).trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			int colonIndex = line.indexOf(':');
+			if (colonIndex <= 0)
+				throw new IOException("Unit lexicon line " + lineNumber + " missing \"unit:\" - " + line);
+
+			//Unit written to xml is itself an alias
+			String unit = line.substring(0, colonIndex).trim().intern();
+			lexicon.add(unit, unit);
+			for (String alias : line.substring(colonIndex + 1).split(","))
+			{
+				if (!alias.trim().isEmpty())
+					lexicon.add(alias, unit);
+			}
+		}
+		return lexicon;
+	}
+
+	/**
+	 * Adds alias, lower cased with whitespace runs collapsed to a single space
+	 *
+	 * @param alias - alias text
+	 * @param unit - unit name returned on match
+	 */
+	public void add(String alias, String unit)
+	{
+		Node node = root;
+		boolean pendingSpace = false;
+		for (String word : alias.trim().split("\\s+"))
+		{
+			if (pendingSpace)
+				node = node.addChild(' ');
+			for (int i=0; i<word.length(); i++)
+				node = node.addChild(Character.toLowerCase(word.charAt(i)));
+			pendingSpace = true;
+		}
+
+		if (node.unit != null && !node.unit.equals(unit))
+			throw new IllegalArgumentException("Alias \"" + alias + "\" already maps to " + node.unit);
+		if (node.unit == null)
+			aliasCount++;
+		node.unit = unit;
+	}
+
+	/**
+	 * Matches whole of [start, end) against the aliases
+	 *
+	 * @param s - text
+	 * @param start - start index
+	 * @param end - end index (exclusive)
+	 * @return - unit name, or null if not a known unit
+	 */
+	public String lookup(CharSequence s, int start, int end)
+	{
+		Node node = root;
+		int i = start;
+		while (i < end && node != null)
+		{
+			char c = s.charAt(i);
+			if (isWhitespace(c))
+			{
+				node = node.child(' ');
+				i = skipWhitespace(s, i, end);
+			}
+			else
+			{
+				node = node.child(Character.toLowerCase(c));
+				i++;
+			}
+		}
+		return (node == null || start == end) ? null : node.unit;
+	}
+
+	/**
+	 * @param unit - unit name (eg. read back from a file)
+	 * @return - the lexicon's shared instance if unit is one of its unit names, else unit itself
+	 */
+	public String canonical(String unit)
+	{
+		if (unit == null)
+			return null;
+		String match = lookup(unit, 0, unit.length());
+		return unit.equals(match) ? match : unit;
+	}
+
+	/**
+	 * Finds longest alias starting at start, which must be followed by whitespace or the end of range
+	 * (or any non-letter if wordEndOnly is false, eg. "225g," or "100g/4oz")
+	 *
+	 * @param s - text
+	 * @param start - start index
+	 * @param end - end of range to search (exclusive)
+	 * @param wordEndOnly - match must end at whitespace or end of range
+	 * @return - end index (exclusive) of longest match, or -1 if none
+	 */
+	public int longestMatch(CharSequence s, int start, int end, boolean wordEndOnly)
+	{
+		int matchEnd = -1;
+		Node node = root;
+		int i = start;
+		while (i < end)
+		{
+			char c = s.charAt(i);
+			if (isWhitespace(c))
+			{
+				node = node.child(' ');
+				i = skipWhitespace(s, i, end);
+			}
+			else
+			{
+				node = node.child(Character.toLowerCase(c));
+				i++;
+			}
+			if (node == null)
+				break;
+
+			//Candidate if alias ends here at a boundary
+			if (node.unit != null && !isWhitespace(s.charAt(i - 1)) && isBoundary(s, i, end, wordEndOnly))
+				matchEnd = i;
+		}
+		return matchEnd;
+	}
+
+	/**
+	 * @return - number of distinct aliases
+	 */
+	public int size()
+	{
+		return aliasCount;
+	}
+
+	private static boolean isBoundary(CharSequence s, int i, int end, boolean wordEndOnly)
+	{
+		if (i >= end)
+			return true;
+		char c = s.charAt(i);
+		return wordEndOnly ? isWhitespace(c) : !Character.isLetter(c);
+	}
+
+	private static int skipWhitespace(CharSequence s, int i, int end)
+	{
+		while (i < end && isWhitespace(s.charAt(i)))
+			i++;
+		return i;
+	}
+
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+}
@@ -0,0 +1,115 @@
+package recipeparser.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, safe to record into from any number of threads.
+ *
+ * Buckets are log-linear: each power of 2 is split into 8 equal sub-buckets, so percentiles are within
+ * about 12% of the true value over the whole range, from a fixed 512 counters.
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos - duration, negative treated as 0
+	 */
+	public void record(long nanos)
+	{
+		if (nanos < 0)
+			nanos = 0;
+		buckets.incrementAndGet(bucket(nanos));
+		count.increment();
+		sum.add(nanos);
+
+		long currentMax = max.get();
+		while (nanos > currentMax && !max.compareAndSet(currentMax, nanos))
+			currentMax = max.get();
+	}
+
+	/**
+	 * @param p - percentile as fraction, eg. 0.99
+	 * @return - upper bound of the bucket holding that percentile (capped at max), 0 if empty
+	 */
+	public long percentile(double p)
+	{
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i=0; i<BUCKETS; i++)
+		{
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(p * total));
+		long seen = 0;
+		for (int i=0; i<BUCKETS; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(upperBound(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears all recorded values (not atomic with concurrent records)
+	 */
+	public void reset()
+	{
+		for (int i=0; i<BUCKETS; i++)
+			buckets.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+	public long getSum() {
+		return sum.sum();
+	}
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Values below 8 get a bucket each, above that 8 buckets per power of 2
+	 */
+	static int bucket(long value)
+	{
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Largest value falling into bucket
+	 */
+	static long upperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,288 @@
+package recipeparser.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for each step of turning a recipe file into xml, shared by every
+ * thread of the job.
+ *
+ * Off by default - when disabled the timing calls in the hot paths only read a flag. Once enabled the
+ * values can be watched over JMX while the job runs, and written at exit as a JSON or Prometheus text
+ * report with files/s, bytes/s and p50 / p99 per stage.
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class RecipeMetrics implements RecipeMetricsMXBean {
+
+	public static final String OBJECT_NAME = "recipeparser:type=RecipeMetrics";
+
+	//File open and read (archive entry decompress, corpus batch map), bytes read
+	public static final StageMetrics OPEN = new StageMetrics("open");
+	public static final StageMetrics FIRST_LINE = new StageMetrics("firstLineScan");
+	//Per line
+	public static final StageMetrics INGREDIENT = new StageMetrics("ingredient");
+	public static final StageMetrics METHOD = new StageMetrics("method");
+	public static final StageMetrics MARSHAL = new StageMetrics("marshal");
+	//Successful writes only, bytes written
+	public static final StageMetrics WRITE = new StageMetrics("write");
+	//Write calls to {id}.xml files, ie. write syscalls
+	private static final LongAdder WRITE_CALLS = new LongAdder();
+
+	private static final List<StageMetrics> STAGES = Collections.unmodifiableList(
+			Arrays.asList(OPEN, FIRST_LINE, INGREDIENT, METHOD, MARSHAL, WRITE));
+
+	private static final RecipeMetrics INSTANCE = new RecipeMetrics();
+
+	private static volatile boolean enabled;
+	private static volatile long startNanos = System.nanoTime();
+	private static volatile long stopNanos;
+
+	private RecipeMetrics()
+	{
+	}
+
+	/**
+	 * @return - true if hot paths are being timed
+	 */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Clears all values and starts timing
+	 */
+	public static void enable()
+	{
+		for (StageMetrics stage : STAGES)
+			stage.reset();
+		WRITE_CALLS.reset();
+		startNanos = System.nanoTime();
+		enabled = true;
+	}
+
+	/**
+	 * Stops timing (and the elapsed clock), values are kept
+	 */
+	public static void disable()
+	{
+		stopNanos = System.nanoTime();
+		enabled = false;
+	}
+
+	/**
+	 * @param calls - write calls made for one {id}.xml file
+	 */
+	public static void countWriteCalls(long calls)
+	{
+		if (enabled)
+			WRITE_CALLS.add(calls);
+	}
+
+	/**
+	 * @return - all stages in processing order
+	 */
+	public static List<StageMetrics> getStages()
+	{
+		return STAGES;
+	}
+
+	/**
+	 * Registers the MXBean with the platform MBean server (once)
+	 *
+	 * @throws JMException - if registration failed
+	 */
+	public static void registerMBean() throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (!server.isRegistered(name))
+			server.registerMBean(INSTANCE, name);
+	}
+
+	/**
+	 * Writes run report, Prometheus text format for .prom / .txt files, otherwise JSON
+	 *
+	 * @param file - report file
+	 * @throws IOException - if report could not be written
+	 */
+	public static void writeReport(File file) throws IOException
+	{
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		String report = name.endsWith(".prom") || name.endsWith(".txt") ? toPrometheus() : toJson();
+		Files.write(file.toPath(), report.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return - run report as JSON, latencies in microseconds
+	 */
+	public static String toJson()
+	{
+		StringBuilder json = new StringBuilder(1024);
+		json.append("{\n");
+		json.append("  \"elapsedSeconds\": ").append(format(INSTANCE.getElapsedSeconds())).append(",\n");
+		json.append("  \"files\": ").append(INSTANCE.getFilesProcessed()).append(",\n");
+		json.append("  \"bytesRead\": ").append(INSTANCE.getBytesRead()).append(",\n");
+		json.append("  \"filesPerSecond\": ").append(format(INSTANCE.getFilesPerSecond())).append(",\n");
+		json.append("  \"bytesPerSecond\": ").append(format(INSTANCE.getBytesPerSecond())).append(",\n");
+		json.append("  \"bytesWritten\": ").append(INSTANCE.getBytesWritten()).append(",\n");
+		json.append("  \"bytesWrittenPerSecond\": ").append(format(INSTANCE.getBytesWrittenPerSecond())).append(",\n");
+		json.append("  \"writeCalls\": ").append(INSTANCE.getWriteCalls()).append(",\n");
+		json.append("  \"writeCallsPerFile\": ").append(format(INSTANCE.getWriteCallsPerFile())).append(",\n");
+		json.append("  \"stages\": {\n");
+		for (int i=0; i<STAGES.size(); i++)
+		{
+			StageMetrics stage = STAGES.get(i);
+			LatencyHistogram latency = stage.getLatency();
+			json.append("    \"").append(stage.getName()).append("\": {")
+					.append("\"count\": ").append(stage.getCount())
+					.append(", \"bytes\": ").append(stage.getBytes())
+					.append(", \"meanMicros\": ").append(format(mean(latency) / 1000.0))
+					.append(", \"p50Micros\": ").append(format(latency.percentile(0.5) / 1000.0))
+					.append(", \"p99Micros\": ").append(format(latency.percentile(0.99) / 1000.0))
+					.append(", \"maxMicros\": ").append(format(latency.getMax() / 1000.0))
+					.append(i < STAGES.size() - 1 ? "},\n" : "}\n");
+		}
+		json.append("  }\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * @return - run report in Prometheus text exposition format, latencies as summaries in seconds
+	 */
+	public static String toPrometheus()
+	{
+		StringBuilder text = new StringBuilder(2048);
+		gauge(text, "recipeparser_files_total", "counter", "Recipes written", INSTANCE.getFilesProcessed());
+		gauge(text, "recipeparser_bytes_read_total", "counter", "Input bytes read", INSTANCE.getBytesRead());
+		gauge(text, "recipeparser_files_per_second", "gauge", "Recipes written per second", INSTANCE.getFilesPerSecond());
+		gauge(text, "recipeparser_bytes_per_second", "gauge", "Input bytes read per second", INSTANCE.getBytesPerSecond());
+		gauge(text, "recipeparser_bytes_written_total", "counter", "Output bytes written", INSTANCE.getBytesWritten());
+		gauge(text, "recipeparser_bytes_written_per_second", "gauge", "Output bytes written per second", INSTANCE.getBytesWrittenPerSecond());
+		gauge(text, "recipeparser_write_calls_total", "counter", "Write calls to xml files", INSTANCE.getWriteCalls());
+		gauge(text, "recipeparser_write_calls_per_file", "gauge", "Write calls per xml file", INSTANCE.getWriteCallsPerFile());
+
+		text.append("# HELP recipeparser_stage_seconds Latency per stage\n");
+		text.append("# TYPE recipeparser_stage_seconds summary\n");
+		for (StageMetrics stage : STAGES)
+		{
+			LatencyHistogram latency = stage.getLatency();
+			String label = "stage=\"" + stage.getName() + "\"";
+			text.append("recipeparser_stage_seconds{").append(label).append(",quantile=\"0.5\"} ")
+					.append(format(latency.percentile(0.5) / 1e9)).append('\n');
+			text.append("recipeparser_stage_seconds{").append(label).append(",quantile=\"0.99\"} ")
+					.append(format(latency.percentile(0.99) / 1e9)).append('\n');
+			text.append("recipeparser_stage_seconds_sum{").append(label).append("} ").append(format(latency.getSum() / 1e9)).append('\n');
+			text.append("recipeparser_stage_seconds_count{").append(label).append("} ").append(latency.getCount()).append('\n');
+		}
+
+		text.append("# HELP recipeparser_stage_bytes_total Bytes read or written per stage\n");
+		text.append("# TYPE recipeparser_stage_bytes_total counter\n");
+		for (StageMetrics stage : STAGES)
+			text.append("recipeparser_stage_bytes_total{stage=\"").append(stage.getName()).append("\"} ").append(stage.getBytes()).append('\n');
+		return text.toString();
+	}
+
+	private static void gauge(StringBuilder text, String name, String type, String help, double value)
+	{
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		text.append(name).append(' ').append(format(value)).append('\n');
+	}
+
+	private static double mean(LatencyHistogram latency)
+	{
+		long count = latency.getCount();
+		return count == 0 ? 0 : (double) latency.getSum() / count;
+	}
+
+	private static String format(double value)
+	{
+		return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : String.format(Locale.ROOT, "%.6g", value);
+	}
+
+	private static Map<String, Double> perStage(ToDoubleFunction<LatencyHistogram> value)
+	{
+		Map<String, Double> result = new LinkedHashMap<>();
+		for (StageMetrics stage : STAGES)
+			result.put(stage.getName(), value.applyAsDouble(stage.getLatency()));
+		return result;
+	}
+
+	@Override
+	public long getFilesProcessed() {
+		return WRITE.getCount();
+	}
+	@Override
+	public long getBytesRead() {
+		return OPEN.getBytes();
+	}
+	@Override
+	public double getElapsedSeconds() {
+		return ((enabled ? System.nanoTime() : stopNanos) - startNanos) / 1e9;
+	}
+	@Override
+	public double getFilesPerSecond() {
+		double elapsed = getElapsedSeconds();
+		return elapsed == 0 ? 0 : getFilesProcessed() / elapsed;
+	}
+	@Override
+	public double getBytesPerSecond() {
+		double elapsed = getElapsedSeconds();
+		return elapsed == 0 ? 0 : getBytesRead() / elapsed;
+	}
+	@Override
+	public long getBytesWritten() {
+		return WRITE.getBytes();
+	}
+	@Override
+	public double getBytesWrittenPerSecond() {
+		double elapsed = getElapsedSeconds();
+		return elapsed == 0 ? 0 : getBytesWritten() / elapsed;
+	}
+	@Override
+	public long getWriteCalls() {
+		return WRITE_CALLS.sum();
+	}
+	@Override
+	public double getWriteCallsPerFile() {
+		long files = getFilesProcessed();
+		return files == 0 ? 0 : (double) getWriteCalls() / files;
+	}
+	@Override
+	public Map<String, Long> getStageCounts() {
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (StageMetrics stage : STAGES)
+			result.put(stage.getName(), stage.getCount());
+		return result;
+	}
+	@Override
+	public Map<String, Double> getStageP50Micros() {
+		return perStage(latency -> latency.percentile(0.5) / 1000.0);
+	}
+	@Override
+	public Map<String, Double> getStageP99Micros() {
+		return perStage(latency -> latency.percentile(0.99) / 1000.0);
+	}
+	@Override
+	public Map<String, Double> getStageMaxMicros() {
+		return perStage(latency -> latency.getMax() / 1000.0);
+	}
+}
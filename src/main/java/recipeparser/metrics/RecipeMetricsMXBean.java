@@ -0,0 +1,53 @@
+package recipeparser.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the running job's metrics (recipeparser:type=RecipeMetrics), per-stage values keyed by stage name
+ *
+ * @author NicholasChristou
+ *
+ */
+public interface RecipeMetricsMXBean {
+
+	/**
+	 * @return - recipes written
+	 */
+	long getFilesProcessed();
+
+	/**
+	 * @return - input bytes read
+	 */
+	long getBytesRead();
+
+	/**
+	 * @return - seconds since metrics were enabled
+	 */
+	double getElapsedSeconds();
+
+	double getFilesPerSecond();
+
+	double getBytesPerSecond();
+
+	/**
+	 * @return - output bytes written
+	 */
+	long getBytesWritten();
+
+	double getBytesWrittenPerSecond();
+
+	/**
+	 * @return - write calls (syscalls) to {id}.xml files
+	 */
+	long getWriteCalls();
+
+	double getWriteCallsPerFile();
+
+	Map<String, Long> getStageCounts();
+
+	Map<String, Double> getStageP50Micros();
+
+	Map<String, Double> getStageP99Micros();
+
+	Map<String, Double> getStageMaxMicros();
+}
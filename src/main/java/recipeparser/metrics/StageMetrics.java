@@ -0,0 +1,76 @@
+package recipeparser.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, bytes and latency of one processing step (eg. file open, marshal).
+ *
+ * Timing is taken around the step as {@code long start = stage.start(); ... stage.stop(start);}, when
+ * metrics are disabled start() does not read the clock and stop() does nothing.
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class StageMetrics {
+
+	//start() result when metrics are disabled
+	private static final long NOT_TIMED = Long.MIN_VALUE;
+
+	private final String name;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder bytes = new LongAdder();
+
+	StageMetrics(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * @return - start time to pass to stop()
+	 */
+	public long start()
+	{
+		return RecipeMetrics.isEnabled() ? System.nanoTime() : NOT_TIMED;
+	}
+
+	/**
+	 * @param start - value from start()
+	 */
+	public void stop(long start)
+	{
+		if (start != NOT_TIMED)
+			latency.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * @param start - value from start()
+	 * @param byteCount - bytes read or written by the step
+	 */
+	public void stop(long start, long byteCount)
+	{
+		if (start != NOT_TIMED)
+		{
+			latency.record(System.nanoTime() - start);
+			bytes.add(byteCount);
+		}
+	}
+
+	void reset()
+	{
+		latency.reset();
+		bytes.reset();
+	}
+
+	public String getName() {
+		return name;
+	}
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+	public long getCount() {
+		return latency.getCount();
+	}
+	public long getBytes() {
+		return bytes.sum();
+	}
+}
@@ -0,0 +1,198 @@
+package recipeparser.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writer that encodes a serialized recipe straight into buffers from a {@link DirectBufferPool}, in the
+ * same charset as {id}.xml files written through FileWriter.
+ *
+ * The first buffer waits for the pool, so serializers are held back while writes catch up. A document
+ * larger than one buffer takes further pooled buffers when free, otherwise heap buffers, so it never waits
+ * on buffers another half-finished document holds. {@link #finish()} ends the document, the buffers are
+ * then written with one gathering write and handed back with {@link #release()}.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class BufferedDocument extends Writer {
+
+	private static final int CHAR_BLOCK = 1024;
+
+	private final DirectBufferPool pool;
+	private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final List<ByteBuffer> buffers = new ArrayList<>(2);
+	private ByteBuffer current;
+	//Serializers write a few chars at a time, encoded in blocks
+	private final CharBuffer chars = CharBuffer.allocate(CHAR_BLOCK);
+	private boolean finished;
+
+	BufferedDocument(DirectBufferPool pool)
+	{
+		this.pool = pool;
+	}
+
+	@Override
+	public void write(int c) throws IOException
+	{
+		checkOpen();
+		if (!chars.hasRemaining())
+			encodeChars(false);
+		chars.put((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException
+	{
+		checkOpen();
+		while (len > 0)
+		{
+			int n = Math.min(len, chars.remaining());
+			chars.put(cbuf, off, n);
+			off += n;
+			len -= n;
+			if (!chars.hasRemaining())
+				encodeChars(false);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException
+	{
+		checkOpen();
+		while (len > 0)
+		{
+			int n = Math.min(len, chars.remaining());
+			chars.put(str, off, off + n);
+			off += n;
+			len -= n;
+			if (!chars.hasRemaining())
+				encodeChars(false);
+		}
+	}
+
+	private void checkOpen() throws IOException
+	{
+		if (finished)
+			throw new IOException("Document already finished");
+	}
+
+	/**
+	 * Encodes staged chars, an unpaired high surrogate at the end is kept for the next write
+	 */
+	private void encodeChars(boolean endOfInput) throws IOException
+	{
+		chars.flip();
+		while (encoder.encode(chars, buffer(), endOfInput).isOverflow())
+			nextBuffer();
+		chars.compact();
+	}
+
+	private ByteBuffer buffer() throws IOException
+	{
+		if (current == null)
+			nextBuffer();
+		return current;
+	}
+
+	private void nextBuffer() throws IOException
+	{
+		ByteBuffer buffer;
+		if (buffers.isEmpty())
+		{
+			try
+			{
+				buffer = pool.acquire();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for output buffer");
+			}
+		}
+		else
+		{
+			buffer = pool.tryAcquire();
+			if (buffer == null)
+				buffer = ByteBuffer.allocate(pool.getBufferSize());
+		}
+		buffers.add(buffer);
+		current = buffer;
+	}
+
+	/**
+	 * Ends document (flushing any held char) and readies buffers for writing
+	 *
+	 * @throws IOException - if interrupted waiting for a buffer
+	 */
+	public void finish() throws IOException
+	{
+		if (finished)
+			return;
+
+		encodeChars(true);
+		CoderResult result;
+		while ((result = encoder.flush(buffer())).isOverflow())
+			nextBuffer();
+		if (result.isError())
+			result.throwException();
+
+		for (ByteBuffer buffer : buffers)
+			buffer.flip();
+		finished = true;
+	}
+
+	/**
+	 * @return - encoded content, position to limit in each (call after finish)
+	 */
+	public ByteBuffer[] getBuffers()
+	{
+		return buffers.toArray(new ByteBuffer[buffers.size()]);
+	}
+
+	/**
+	 * @return - bytes of encoded content remaining to write (call after finish)
+	 */
+	public long size()
+	{
+		long size = 0;
+		for (ByteBuffer buffer : buffers)
+			size += buffer.remaining();
+		return size;
+	}
+
+	/**
+	 * Hands pooled buffers back, document is empty and finished after this
+	 */
+	public void release()
+	{
+		for (ByteBuffer buffer : buffers)
+			pool.release(buffer);
+		buffers.clear();
+		current = null;
+		finished = true;
+	}
+
+	@Override
+	public void flush()
+	{
+		//Nothing to flush until written
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		finish();
+	}
+}
@@ -0,0 +1,107 @@
+package recipeparser.output;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed number of direct buffers that serializers fill and the write stage hands to the file channel,
+ * so xml goes to disk without a copy into a temporary direct buffer on every write.
+ *
+ * Buffers are allocated on first use up to the pool size. Once all are in use {@link #acquire()} waits
+ * for one to be released, which holds serializers back while writes catch up.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class DirectBufferPool {
+
+	private final int bufferSize;
+	private final int poolSize;
+	private final BlockingQueue<ByteBuffer> free;
+	private final AtomicInteger allocated = new AtomicInteger();
+
+	/**
+	 * @param poolSize - most direct buffers allocated
+	 * @param bufferSize - bytes per buffer
+	 */
+	public DirectBufferPool(int poolSize, int bufferSize)
+	{
+		if (poolSize < 1 || bufferSize < 1)
+			throw new IllegalArgumentException("Pool and buffer size must be at least 1 - " + poolSize + ", " + bufferSize);
+		this.poolSize = poolSize;
+		this.bufferSize = bufferSize;
+		this.free = new ArrayBlockingQueue<>(poolSize);
+	}
+
+	/**
+	 * @return - cleared buffer, waiting for one to be released if all are in use
+	 * @throws InterruptedException - if interrupted while waiting
+	 */
+	public ByteBuffer acquire() throws InterruptedException
+	{
+		ByteBuffer buffer = tryAcquire();
+		return buffer != null ? buffer : free.take();
+	}
+
+	/**
+	 * @return - cleared buffer, or null if all are in use
+	 */
+	public ByteBuffer tryAcquire()
+	{
+		ByteBuffer buffer = free.poll();
+		if (buffer != null)
+			return buffer;
+
+		//Allocate up to pool size
+		while (true)
+		{
+			int count = allocated.get();
+			if (count >= poolSize)
+				return free.poll();
+			if (allocated.compareAndSet(count, count + 1))
+				return ByteBuffer.allocateDirect(bufferSize);
+		}
+	}
+
+	/**
+	 * Returns buffer to the pool, buffers not from this pool are ignored
+	 *
+	 * @param buffer - buffer from acquire()
+	 */
+	public void release(ByteBuffer buffer)
+	{
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize)
+			return;
+		buffer.clear();
+		free.offer(buffer);
+	}
+
+	/**
+	 * @return - new empty document filled from this pool
+	 */
+	public BufferedDocument newDocument()
+	{
+		return new BufferedDocument(this);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	public int getPoolSize() {
+		return poolSize;
+	}
+	/**
+	 * @return - buffers allocated so far
+	 */
+	public int getAllocated() {
+		return allocated.get();
+	}
+	/**
+	 * @return - buffers allocated and not in use
+	 */
+	public int getFree() {
+		return free.size();
+	}
+}
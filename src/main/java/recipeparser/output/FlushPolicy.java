@@ -0,0 +1,32 @@
+package recipeparser.output;
+
+/**
+ * When write-behind output forces each {id}.xml to disk, selected with --flush
+ *
+ * @author NicholasChristou
+ *
+ */
+public enum FlushPolicy {
+
+	//Closed only, written back by the OS (same as the default output)
+	NONE,
+	//Content forced to disk before the file is counted as written
+	DATA,
+	//Content and metadata (size, modified time) forced to disk
+	ALL;
+
+	/**
+	 * @param name - policy name (case insensitive)
+	 * @return - matching policy
+	 * @throws IllegalArgumentException - if name does not match a policy
+	 */
+	public static FlushPolicy fromName(String name)
+	{
+		for (FlushPolicy policy : values())
+		{
+			if (policy.name().equalsIgnoreCase(name))
+				return policy;
+		}
+		throw new IllegalArgumentException("Unknown flush policy: " + name + " (expected none, data or all)");
+	}
+}
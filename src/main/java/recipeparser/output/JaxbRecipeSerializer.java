@@ -0,0 +1,30 @@
+package recipeparser.output;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.xml.bind.JAXBException;
+
+import recipeparser.recipe.Recipe;
+
+/**
+ * Serializes Recipe through JAXB using the shared context and per-thread marshallers
+ * 
+ * @author NicholasChristou
+ *
+ */
+public class JaxbRecipeSerializer implements RecipeSerializer {
+
+	@Override
+	public void serialize(Recipe recipe, Writer writer) throws IOException 
+	{
+		try 
+		{
+			RecipeMarshallerPool.getMarshaller().marshal(recipe, writer);
+		}
+		catch (JAXBException e) 
+		{
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package recipeparser.output;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import recipeparser.recipe.Recipe;
+import recipeparser.recipe.Recipe.Content;
+import recipeparser.recipe.Recipe.Content.Ingredients.Ingredient;
+import recipeparser.recipe.Recipe.Metadata;
+
+/**
+ * Hand-written JSON generator, walks the recipe and writes it straight to the writer with no intermediate tree.
+ *
+ * Mirrors Recipe.xsd: {"id":1,"Metadata":{"Created","Author","Title"},"Content":{"Lead","Ingredients":[{"Amount",
+ * "Unit","Item"}],"Method":[steps]}}. As in the xml, null values are omitted and empty parents written empty.
+ * Created is the xs:date text (eg. "2014-04-24") and Amount a number. Output is one line with every
+ * non-ASCII char escaped, so the bytes are the same in any default charset and a recipe fits one NDJSON line.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class JsonRecipeSerializer implements RecipeSerializer {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	@Override
+	public void serialize(Recipe recipe, Writer writer) throws IOException
+	{
+		writer.write("{\"id\":");
+		writer.write(Integer.toString(recipe.getId()));
+		if (recipe.isSetMetadata())
+			writeMetadata(recipe.getMetadata(), writer);
+		if (recipe.isSetContent())
+			writeContent(recipe.getContent(), writer);
+		writer.write('}');
+	}
+
+	/**
+	 * Metadata - Created, Author, Title
+	 */
+	private void writeMetadata(Metadata metadata, Writer writer) throws IOException
+	{
+		writer.write(",\"Metadata\":{");
+		boolean first = true;
+		if (metadata.getCreated() != null)
+		{
+			writer.write("\"Created\":\"");
+			//Same xs:date text as the xml
+			StreamingRecipeSerializer.writeDate(metadata.getCreated(), writer);
+			writer.write('"');
+			first = false;
+		}
+		first = writeStringField("Author", metadata.getAuthor(), first, writer);
+		writeStringField("Title", metadata.getTitle(), first, writer);
+		writer.write('}');
+	}
+
+	/**
+	 * Content - Lead, Ingredients, Method
+	 */
+	private void writeContent(Content content, Writer writer) throws IOException
+	{
+		writer.write(",\"Content\":{");
+		boolean first = writeStringField("Lead", content.getLead(), true, writer);
+		if (content.isSetIngredients())
+		{
+			writer.write(first ? "\"Ingredients\":[" : ",\"Ingredients\":[");
+			writeIngredients(content.getIngredients().getIngredient(), writer);
+			writer.write(']');
+			first = false;
+		}
+		if (content.isSetMethod())
+		{
+			writer.write(first ? "\"Method\":[" : ",\"Method\":[");
+			List<String> steps = content.getMethod().getStep();
+			for (int i=0; i<steps.size(); i++)
+			{
+				if (i > 0)
+					writer.write(',');
+				writeString(steps.get(i), writer);
+			}
+			writer.write(']');
+		}
+		writer.write('}');
+	}
+
+	/**
+	 * Ingredients - Amount, Unit, Item per ingredient
+	 */
+	private void writeIngredients(List<Ingredient> ingredients, Writer writer) throws IOException
+	{
+		for (int i=0; i<ingredients.size(); i++)
+		{
+			Ingredient ingredient = ingredients.get(i);
+			writer.write(i > 0 ? ",{" : "{");
+			boolean first = true;
+			if (ingredient.getAmount() != null)
+			{
+				double amount = ingredient.getAmount();
+				if (Double.isNaN(amount) || Double.isInfinite(amount))
+					throw new IOException("Amount has no JSON form - " + amount);
+				writer.write("\"Amount\":");
+				writer.write(Double.toString(amount));
+				first = false;
+			}
+			first = writeStringField("Unit", ingredient.getUnit(), first, writer);
+			writeStringField("Item", ingredient.getItem(), first, writer);
+			writer.write('}');
+		}
+	}
+
+	/**
+	 * Writes "name":"value", skipped if value is null (empty string still written)
+	 *
+	 * @return - true if still no field written in the object
+	 */
+	private boolean writeStringField(String name, String value, boolean first, Writer writer) throws IOException
+	{
+		if (value == null)
+			return first;
+
+		if (!first)
+			writer.write(',');
+		writer.write('"');
+		writer.write(name);
+		writer.write("\":");
+		writeString(value, writer);
+		return false;
+	}
+
+	/**
+	 * Writes quoted JSON string, escaping quote, backslash, control chars and anything outside ASCII,
+	 * unescaped runs are written as a single block
+	 *
+	 * @param value - text to write
+	 * @param writer - target
+	 * @throws IOException - if write failed
+	 */
+	static void writeString(String value, Writer writer) throws IOException
+	{
+		writer.write('"');
+		int runStart = 0;
+		int length = value.length();
+
+		for (int i=0; i<length; i++)
+		{
+			char c = value.charAt(i);
+			if (c >= 0x20 && c < 0x7f && c != '"' && c != '\\')
+				continue;
+
+			if (i > runStart)
+				writer.write(value, runStart, i - runStart);
+			switch (c)
+			{
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				//Other control chars and non-ASCII as 4 hex digit escapes (surrogate pairs escaped half by half)
+				writer.write("\\u");
+				writer.write(HEX[(c >> 12) & 0xf]);
+				writer.write(HEX[(c >> 8) & 0xf]);
+				writer.write(HEX[(c >> 4) & 0xf]);
+				writer.write(HEX[c & 0xf]);
+			}
+			runStart = i + 1;
+		}
+
+		if (runStart < length)
+			writer.write(value, runStart, length - runStart);
+		writer.write('"');
+	}
+}
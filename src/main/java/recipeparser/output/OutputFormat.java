@@ -0,0 +1,55 @@
+package recipeparser.output;
+
+/**
+ * Per-recipe output file formats, selected with --format
+ *
+ * @author NicholasChristou
+ *
+ */
+public enum OutputFormat {
+
+	//{id}.xml from the configured xml backend
+	XML(".xml"),
+	//{id}.json from the streaming JSON generator
+	JSON(".json");
+
+	private static final RecipeSerializer JSON_SERIALIZER = new JsonRecipeSerializer();
+
+	private final String extension;
+
+	OutputFormat(String extension)
+	{
+		this.extension = extension;
+	}
+
+	/**
+	 * @return - output file extension, including the dot
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * @param xmlBackend - backend used for xml
+	 * @return - serializer writing this format
+	 */
+	public RecipeSerializer getSerializer(XmlBackend xmlBackend)
+	{
+		return this == JSON ? JSON_SERIALIZER : xmlBackend.getSerializer();
+	}
+
+	/**
+	 * @param name - format name (case insensitive)
+	 * @return - matching format
+	 * @throws IllegalArgumentException - if name does not match a format
+	 */
+	public static OutputFormat fromName(String name)
+	{
+		for (OutputFormat format : values())
+		{
+			if (format.name().equalsIgnoreCase(name))
+				return format;
+		}
+		throw new IllegalArgumentException("Unknown output format: " + name + " (expected xml or json)");
+	}
+}
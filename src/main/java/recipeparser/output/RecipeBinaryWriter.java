@@ -0,0 +1,335 @@
+package recipeparser.output;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import recipeparser.recipe.Recipe;
+import recipeparser.recipe.Recipe.Content;
+import recipeparser.recipe.Recipe.Content.Ingredients.Ingredient;
+import recipeparser.recipe.Recipe.Metadata;
+
+/**
+ * Writes recipes in a compact binary format, for reloading a parsed corpus much faster than unmarshalling
+ * its xml (see RecipeBinaryReader).
+ *
+ * Layout: magic "RCPB", version byte, then one record per recipe to end of file. Each record is its length
+ * (varint) followed by:
+ * <pre>
+ * id            zigzag varint
+ * flags         byte - 1 metadata, 2 content, 4 lead, 8 ingredients, 16 method
+ * metadata      created (varint, 0 none, else zigzag epoch day + 1), author, title
+ * content       lead, ingredient count, ingredients, step count, steps
+ * ingredient    amount, unit, item
+ * amount        varint tag - 0 none, 1 followed by 8 byte double, 2 + n for n halves (eg. 1.5 is 5)
+ * unit          varint - 0 none, 1..size a unit already seen in the file, size + 1 a new unit (string follows)
+ * string        varint UTF-8 byte length + 1 (0 for null), then bytes
+ * </pre>
+ * Units are added to the dictionary as they first appear, so the file is written in one pass and read the
+ * same way. Created dates are kept as the date only (no time or timezone), as parsed from recipe files.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeBinaryWriter implements Closeable {
+
+	public static final byte[] MAGIC = { 'R', 'C', 'P', 'B' };
+	public static final int VERSION = 1;
+	public static final String EXTENSION = ".rcpb";
+
+	//Record flags
+	public static final int HAS_METADATA = 1;
+	public static final int HAS_CONTENT = 2;
+	public static final int HAS_LEAD = 4;
+	public static final int HAS_INGREDIENTS = 8;
+	public static final int HAS_METHOD = 16;
+
+	//Amount tags
+	public static final int AMOUNT_NONE = 0;
+	public static final int AMOUNT_DOUBLE = 1;
+	public static final int AMOUNT_HALVES = 2;
+
+	private final OutputStream out;
+	private final File file;
+	private final Path temp;
+	private final Map<String, Integer> units = new HashMap<>();
+	//Record being encoded, grown as needed
+	private byte[] record = new byte[4096];
+	private int length;
+	private int recipes;
+	private boolean failed;
+
+	/**
+	 * Writes to stream, closed with the writer
+	 *
+	 * @param out - target stream
+	 * @throws IOException - if header could not be written
+	 */
+	public RecipeBinaryWriter(OutputStream out) throws IOException
+	{
+		this(out, null, null);
+	}
+
+	/**
+	 * Writes to a temp file moved into place on close, so a consumer never sees a half-written file
+	 *
+	 * @param file - file to create (replaced if it exists)
+	 * @throws IOException - if file could not be created
+	 */
+	public RecipeBinaryWriter(File file) throws IOException
+	{
+		this(file.toPath().resolveSibling(file.getName() + ".tmp"), file);
+	}
+
+	private RecipeBinaryWriter(Path temp, File file) throws IOException
+	{
+		this(new BufferedOutputStream(new FileOutputStream(temp.toFile()), 65536), file, temp);
+	}
+
+	private RecipeBinaryWriter(OutputStream out, File file, Path temp) throws IOException
+	{
+		this.out = out;
+		this.file = file;
+		this.temp = temp;
+		out.write(MAGIC);
+		out.write(VERSION);
+	}
+
+	/**
+	 * Appends recipe, safe to call from any number of threads (records are written one at a time)
+	 *
+	 * @param recipe - recipe to write
+	 * @throws IOException - if recipe could not be written or has a partial created date
+	 */
+	public synchronized void write(Recipe recipe) throws IOException
+	{
+		if (failed)
+			throw new IOException("Binary output failed earlier");
+
+		length = 0;
+		writeRecipe(recipe);
+
+		//Length prefix then record, a half-written record leaves the file unusable
+		int bodyLength = length;
+		writeVarint(bodyLength);
+		try
+		{
+			out.write(record, bodyLength, length - bodyLength);
+			out.write(record, 0, bodyLength);
+		}
+		catch (IOException e)
+		{
+			failed = true;
+			throw e;
+		}
+		recipes++;
+	}
+
+	private void writeRecipe(Recipe recipe) throws IOException
+	{
+		//Getters create missing parts, so checked first
+		Metadata metadata = recipe.isSetMetadata() ? recipe.getMetadata() : null;
+		Content content = recipe.isSetContent() ? recipe.getContent() : null;
+		//Only failure, checked before the units dictionary can change
+		long created = metadata != null && metadata.getCreated() != null ? zigzag(toEpochDay(metadata.getCreated())) + 1 : 0;
+
+		writeVarint(zigzag(recipe.getId()));
+		int flags = (metadata != null ? HAS_METADATA : 0) | (content != null ? HAS_CONTENT : 0);
+		if (content != null)
+		{
+			flags |= (content.getLead() != null ? HAS_LEAD : 0) | (content.isSetIngredients() ? HAS_INGREDIENTS : 0)
+					| (content.isSetMethod() ? HAS_METHOD : 0);
+		}
+		writeByte(flags);
+
+		if (metadata != null)
+		{
+			writeVarint(created);
+			writeString(metadata.getAuthor());
+			writeString(metadata.getTitle());
+		}
+		if (content == null)
+			return;
+
+		if (content.getLead() != null)
+			writeString(content.getLead());
+		if (content.isSetIngredients())
+		{
+			List<Ingredient> ingredients = content.getIngredients().getIngredient();
+			writeVarint(ingredients.size());
+			for (Ingredient ingredient : ingredients)
+			{
+				writeAmount(ingredient.getAmount());
+				writeUnit(ingredient.getUnit());
+				writeString(ingredient.getItem());
+			}
+		}
+		if (content.isSetMethod())
+		{
+			List<String> steps = content.getMethod().getStep();
+			writeVarint(steps.size());
+			for (String step : steps)
+				writeString(step);
+		}
+	}
+
+	private void writeAmount(Double amount)
+	{
+		if (amount == null)
+		{
+			writeVarint(AMOUNT_NONE);
+			return;
+		}
+
+		//Whole and half amounts (the usual case) as a small varint
+		double halves = amount * 2;
+		if (halves >= 0 && halves < (1L << 52) && halves == Math.rint(halves)
+				&& Double.doubleToRawLongBits((long) halves / 2.0) == Double.doubleToRawLongBits(amount))
+		{
+			writeVarint(AMOUNT_HALVES + (long) halves);
+			return;
+		}
+		writeVarint(AMOUNT_DOUBLE);
+		long bits = Double.doubleToRawLongBits(amount);
+		for (int shift=56; shift>=0; shift-=8)
+			writeByte((int) (bits >>> shift));
+	}
+
+	private void writeUnit(String unit)
+	{
+		if (unit == null)
+		{
+			writeVarint(0);
+			return;
+		}
+		Integer index = units.get(unit);
+		if (index != null)
+		{
+			writeVarint(index);
+			return;
+		}
+		index = units.size() + 1;
+		units.put(unit, index);
+		writeVarint(index);
+		writeString(unit);
+	}
+
+	/**
+	 * Length + 1 (0 for null), then UTF-8 bytes
+	 */
+	private void writeString(String s)
+	{
+		if (s == null)
+		{
+			writeVarint(0);
+			return;
+		}
+
+		//Length known up front for ASCII (the usual case), otherwise encoded then length inserted
+		int chars = s.length();
+		int ascii = 0;
+		while (ascii < chars && s.charAt(ascii) < 0x80)
+			ascii++;
+		if (ascii == chars)
+		{
+			writeVarint(chars + 1L);
+			ensure(chars);
+			for (int i=0; i<chars; i++)
+				record[length++] = (byte) s.charAt(i);
+			return;
+		}
+
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarint(bytes.length + 1L);
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, record, length, bytes.length);
+		length += bytes.length;
+	}
+
+	private void writeVarint(long value)
+	{
+		ensure(10);
+		while ((value & ~0x7FL) != 0)
+		{
+			record[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		record[length++] = (byte) value;
+	}
+
+	private void writeByte(int value)
+	{
+		ensure(1);
+		record[length++] = (byte) value;
+	}
+
+	private void ensure(int extra)
+	{
+		if (length + extra > record.length)
+		{
+			byte[] larger = new byte[Math.max(record.length * 2, length + extra)];
+			System.arraycopy(record, 0, larger, 0, length);
+			record = larger;
+		}
+	}
+
+	private static long zigzag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long toEpochDay(XMLGregorianCalendar created) throws IOException
+	{
+		if (created.getYear() == DatatypeConstants.FIELD_UNDEFINED || created.getMonth() == DatatypeConstants.FIELD_UNDEFINED
+				|| created.getDay() == DatatypeConstants.FIELD_UNDEFINED)
+			throw new IOException("Created date incomplete - " + created.toXMLFormat());
+		return LocalDate.of(created.getYear(), created.getMonth(), created.getDay()).toEpochDay();
+	}
+
+	/**
+	 * Flushes and closes stream, for a file moves it into place unless a write failed
+	 *
+	 * @throws IOException - if file could not be completed
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		out.close();
+		if (temp == null)
+			return;
+		if (failed)
+		{
+			Files.deleteIfExists(temp);
+			throw new IOException("Binary output incomplete, not written - " + file.getName());
+		}
+		Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return - recipes written
+	 */
+	public synchronized int getRecipes() {
+		return recipes;
+	}
+
+	/**
+	 * @return - distinct units in dictionary
+	 */
+	public synchronized int getUnits() {
+		return units.size();
+	}
+}
@@ -0,0 +1,263 @@
+package recipeparser.output;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sidecar of content hashes for the {id}.xml files in an output directory, so xml identical to what is already
+ * on disk is not written again (and its modified time is left alone for rsync / object store sync).
+ *
+ * One tab separated line per file: id, size and last modified of the file when written, and SHA-256 of its
+ * content. A file only counts as unchanged when its hash matches and its size and last modified still match
+ * the recorded ones, so a file edited or replaced since is written again without ever being read.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeHashCache {
+
+	public static final String FILE_NAME = "recipe-hashes.tsv";
+	private static final String HEADER = "#id\tsize\tlastModified\tsha256";
+
+	private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() ->
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			//Every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	});
+
+	/**
+	 * Single {id}.xml as last written
+	 */
+	private static final class Entry {
+		private final int id;
+		private final long size;
+		private final long lastModified;
+		private final byte[] hash;
+
+		private Entry(int id, long size, long lastModified, byte[] hash)
+		{
+			this.id = id;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+
+	private final File file;
+	private final Map<Integer, Entry> entries;
+
+	//Stats
+	private final AtomicInteger skipped = new AtomicInteger();
+	private final AtomicInteger written = new AtomicInteger();
+
+	private RecipeHashCache(File file, Map<Integer, Entry> entries)
+	{
+		this.file = file;
+		this.entries = entries;
+	}
+
+	/**
+	 * Loads hashes from output directory, empty if there are none yet
+	 *
+	 * @param outputDir - output directory
+	 * @return - hashes of previous runs
+	 * @throws IOException - if sidecar exists but could not be read or is malformed
+	 */
+	public static RecipeHashCache load(File outputDir) throws IOException
+	{
+		File file = new File(outputDir, FILE_NAME);
+		Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+		if (!file.isFile())
+			return new RecipeHashCache(file, entries);
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				String[] fields = line.split("\t", -1);
+				if (fields.length != 4 || fields[3].length() != 64)
+					throw new IOException("Hash cache line " + lineNumber + " not valid, expected id, size, lastModified and sha256");
+				try
+				{
+					int id = Integer.parseInt(fields[0]);
+					entries.put(id, new Entry(id, Long.parseLong(fields[1]), Long.parseLong(fields[2]), fromHex(fields[3])));
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IOException("Hash cache line " + lineNumber + " not valid - " + e.getMessage());
+				}
+			}
+		}
+		return new RecipeHashCache(file, entries);
+	}
+
+	/**
+	 * Empty cache (every file written) that replaces any existing one on save
+	 *
+	 * @param outputDir - output directory
+	 * @return - empty cache
+	 */
+	public static RecipeHashCache empty(File outputDir)
+	{
+		return new RecipeHashCache(new File(outputDir, FILE_NAME), new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * @param content - encoded xml
+	 * @return - SHA-256 of content
+	 */
+	public static byte[] hash(byte[] content)
+	{
+		MessageDigest digest = DIGESTS.get();
+		digest.update(content);
+		return digest.digest();
+	}
+
+	/**
+	 * @param content - encoded xml, position to limit in each (positions unchanged)
+	 * @return - SHA-256 of content
+	 */
+	public static byte[] hash(ByteBuffer[] content)
+	{
+		MessageDigest digest = DIGESTS.get();
+		for (ByteBuffer buffer : content)
+			digest.update(buffer.duplicate());
+		return digest.digest();
+	}
+
+	/**
+	 * Checks for {id}.xml already holding content with this hash, untouched since it was written
+	 *
+	 * @param id - recipe id
+	 * @param hash - hash of new content
+	 * @param outputDir - output directory
+	 * @return - true if write can be skipped
+	 */
+	public boolean isUnchanged(int id, byte[] hash, File outputDir)
+	{
+		Entry entry = entries.get(id);
+		if (entry == null || !Arrays.equals(entry.hash, hash))
+			return false;
+
+		File outputFile = outputFile(id, outputDir);
+		if (outputFile.length() != entry.size || outputFile.lastModified() != entry.lastModified)
+			return false;
+
+		skipped.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Records {id}.xml written with content of this hash
+	 *
+	 * @param id - recipe id
+	 * @param hash - hash of content written
+	 * @param outputDir - output directory
+	 */
+	public void recordWritten(int id, byte[] hash, File outputDir)
+	{
+		File outputFile = outputFile(id, outputDir);
+		entries.put(id, new Entry(id, outputFile.length(), outputFile.lastModified(), hash));
+		written.incrementAndGet();
+	}
+
+	/**
+	 * Writes to a temp file then replaces sidecar, dropping files no longer in output dir
+	 *
+	 * @param outputDir - output directory
+	 * @throws IOException - if sidecar could not be saved
+	 */
+	public void save(File outputDir) throws IOException
+	{
+		Path target = file.toPath();
+		Path temp = target.resolveSibling(FILE_NAME + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+		{
+			writer.write(HEADER);
+			writer.newLine();
+			for (Entry entry : entries.values())
+			{
+				if (!outputFile(entry.id, outputDir).isFile())
+					continue;
+				writer.write(Integer.toString(entry.id) + '\t' + entry.size + '\t' + entry.lastModified + '\t' + toHex(entry.hash));
+				writer.newLine();
+			}
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static File outputFile(int id, File outputDir)
+	{
+		return new File(outputDir, id + ".xml");
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+
+	private static byte[] fromHex(String hex)
+	{
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i=0; i<bytes.length; i++)
+		{
+			int high = Character.digit(hex.charAt(i * 2), 16);
+			int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+			if (high == -1 || low == -1)
+				throw new NumberFormatException("Not a hex hash - " + hex);
+			bytes[i] = (byte) (high << 4 | low);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return - writes skipped as content unchanged
+	 */
+	public int getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * @return - files written (new or changed content)
+	 */
+	public int getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * @return - run summary for console
+	 */
+	public String report()
+	{
+		return String.format("Unchanged xml - skipped writes: %d, written: %d", getSkipped(), getWritten());
+	}
+}
@@ -0,0 +1,82 @@
+package recipeparser.output;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import recipeparser.recipe.Recipe;
+
+/**
+ * Hands out Recipe marshallers built from a single JAXBContext per JVM.
+ *
+ * JAXBContext is thread-safe but expensive to build (annotation introspection), Marshallers
+ * are cheap but not thread-safe, so each thread keeps its own pre-configured Marshaller. Callers should marshal
+ * from long lived (pooled) threads, a thread per task builds a Marshaller per task.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeMarshallerPool {
+
+	private static volatile JAXBContext context;
+
+	private static final ThreadLocal<Marshaller> MARSHALLERS = new ThreadLocal<>();
+	private static final AtomicInteger CREATED = new AtomicInteger();
+
+	private RecipeMarshallerPool()
+	{
+	}
+
+	/**
+	 * Returns the marshaller confined to the calling thread, creating it on first use
+	 *
+	 * @return - marshaller configured for formatted output without xml declaration
+	 * @throws JAXBException - if context or marshaller could not be created
+	 */
+	public static Marshaller getMarshaller() throws JAXBException
+	{
+		Marshaller marshaller = MARSHALLERS.get();
+
+		if (marshaller == null)
+		{
+			marshaller = getContext().createMarshaller();
+
+			//Format consistent with expected output
+			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+			marshaller.setProperty("com.sun.xml.bind.xmlDeclaration", false);
+
+			MARSHALLERS.set(marshaller);
+			CREATED.incrementAndGet();
+		}
+		return marshaller;
+	}
+
+	/**
+	 * @return - marshallers created so far (one per thread that has marshalled)
+	 */
+	public static int getCreated()
+	{
+		return CREATED.get();
+	}
+
+	/**
+	 * @return - shared Recipe context, built on first use
+	 * @throws JAXBException - if context could not be created
+	 */
+	public static JAXBContext getContext() throws JAXBException
+	{
+		JAXBContext result = context;
+		if (result == null)
+		{
+			synchronized (RecipeMarshallerPool.class)
+			{
+				result = context;
+				if (result == null)
+					context = result = JAXBContext.newInstance(Recipe.class);
+			}
+		}
+		return result;
+	}
+}
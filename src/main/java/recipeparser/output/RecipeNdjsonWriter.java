@@ -0,0 +1,139 @@
+package recipeparser.output;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.metrics.RecipeMetrics;
+
+/**
+ * Writes every recipe as one line of JSON (see JsonRecipeSerializer) to a single stream, newline delimited,
+ * rather than one file per recipe.
+ *
+ * Safe to share between write threads, lines are appended one at a time in the order they arrive. For a file
+ * the lines go to a temp file moved into place on close, so a consumer never sees a half-written file.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeNdjsonWriter implements Closeable {
+
+	public static final String EXTENSION = ".ndjson";
+
+	private final Writer out;
+	private final File file;
+	private final Path temp;
+	private int recipes;
+	private boolean failed;
+
+	/**
+	 * Writes to stream, closed with the writer
+	 *
+	 * @param out - target stream
+	 */
+	public RecipeNdjsonWriter(OutputStream out)
+	{
+		this(out, null, null);
+	}
+
+	/**
+	 * Writes to a temp file moved into place on close
+	 *
+	 * @param file - file to create (replaced if it exists)
+	 * @throws IOException - if file could not be created
+	 */
+	public RecipeNdjsonWriter(File file) throws IOException
+	{
+		this(file.toPath().resolveSibling(file.getName() + ".tmp"), file);
+	}
+
+	private RecipeNdjsonWriter(Path temp, File file) throws IOException
+	{
+		this(new FileOutputStream(temp.toFile()), file, temp);
+	}
+
+	private RecipeNdjsonWriter(OutputStream out, File file, Path temp)
+	{
+		//Serializer output is ASCII, UTF-8 as JSON requires either way
+		this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+		this.file = file;
+		this.temp = temp;
+	}
+
+	/**
+	 * Appends recipe's JSON as one line
+	 *
+	 * @param id - recipe id (for diagnostics)
+	 * @param json - serialized recipe, no line breaks
+	 * @return - true if success
+	 */
+	public synchronized boolean write(int id, String json)
+	{
+		if (failed)
+			return false;
+
+		long start = RecipeMetrics.WRITE.start();
+		try
+		{
+			out.write(json);
+			out.write('\n');
+			recipes++;
+			RecipeMetrics.WRITE.stop(start, json.length() + 1);
+			return true;
+		}
+		catch (IOException e)
+		{
+			//Part of a line may be out, nothing after it can be trusted
+			failed = true;
+			Diagnostics.report(ReasonCode.WRITE_FAILED, file != null ? file.getName() : "ndjson", null,
+					"Recipe " + id + " - " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Flushes and closes stream, for a file moves it into place unless a write failed
+	 *
+	 * @throws IOException - if file could not be completed
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		try
+		{
+			out.close();
+		}
+		catch (IOException e)
+		{
+			failed = true;
+			if (temp == null)
+				throw e;
+		}
+		if (temp == null)
+			return;
+		if (failed)
+		{
+			Files.deleteIfExists(temp);
+			throw new IOException("NDJSON output incomplete, not written - " + file.getName());
+		}
+		Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return - recipes written
+	 */
+	public synchronized int getRecipes() {
+		return recipes;
+	}
+}
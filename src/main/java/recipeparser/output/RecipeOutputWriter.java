@@ -1,26 +1,54 @@
 package recipeparser.output;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.datatype.DatatypeConfigurationException;
-import javax.xml.datatype.DatatypeFactory;
-
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.metrics.RecipeMetrics;
 import recipeparser.recipe.Recipe;
 
 public class RecipeOutputWriter {
 	
+	/**
+	 * Counts write calls and bytes passed to the file, ie. write syscalls
+	 */
+	private static final class WriteCountingStream extends FilterOutputStream {
+		private long calls;
+		private long bytes;
+
+		private WriteCountingStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			calls++;
+			bytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			calls++;
+			bytes += len;
+		}
+	}
+	
 	/**
 	 * Polls through list of recipes and writes each to individual xml file
 	 * 
@@ -32,14 +60,11 @@ public class RecipeOutputWriter {
 	{
 		int filesPrinted = 0;
 		for (Recipe recipe : recipes) {
+			//Failures reported by recipeToXml
 			if (recipeToXml(recipe, outputDir)) 
 			{
 				filesPrinted++;
 			}
-			else
-			{
-				System.out.println("Failed to write to XML - Recipe ID: " + recipe.getId());
-			}
 		}
 		
 		return filesPrinted;		
@@ -52,33 +77,224 @@ public class RecipeOutputWriter {
 	 * @param outputDir - target output dir
 	 * @return - true if success
 	 */
-	private static boolean recipeToXml(Recipe recipe, File outputDir) {
+	public static boolean recipeToXml(Recipe recipe, File outputDir) {
+		
+		String xml = marshalRecipe(recipe);
+		
+		if (xml == null)
+			return false;
+		
+		return writeXml(recipe.getId(), xml, outputDir);
+	}
+
+	/**
+	 * Writes Recipe to JSON File
+	 * 
+	 * @param recipe - recipe object
+	 * @param outputDir - target output dir
+	 * @return - true if success
+	 */
+	public static boolean recipeToJson(Recipe recipe, File outputDir) {
+		
+		String json = marshalRecipe(recipe, OutputFormat.JSON.getSerializer(XmlBackend.JAXB));
+		
+		if (json == null)
+			return false;
+		
+		return writeFile(recipe.getId(), json, outputDir, OutputFormat.JSON);
+	}
+
+	/**
+	 * Marshals Recipe to XML string (JAXB backend)
+	 * 
+	 * @param recipe - recipe object
+	 * @return - xml content or null if failed
+	 */
+	public static String marshalRecipe(Recipe recipe) {
+		return marshalRecipe(recipe, XmlBackend.JAXB.getSerializer());
+	}
+
+	/**
+	 * Marshals Recipe to XML string with given serializer backend
+	 * 
+	 * @param recipe - recipe object
+	 * @param serializer - xml backend
+	 * @return - xml content or null if failed
+	 */
+	public static String marshalRecipe(Recipe recipe, RecipeSerializer serializer) {
+		
+		long start = RecipeMetrics.MARSHAL.start();
+		StringWriter writer = new StringWriter(2048);
+		try 
+		{
+			//Write XML Recipe to string (formatted consistent with expected output)
+			serializer.serialize(recipe, writer);
+			String xml = writer.toString();
+			RecipeMetrics.MARSHAL.stop(start);
+			return xml;
+		} 
+		catch (IOException e) 
+		{
+			Diagnostics.report(ReasonCode.MARSHAL_FAILED, recipe.getId() + ".xml", null, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Marshals Recipe straight into pooled buffers with given serializer backend (write-behind output)
+	 * 
+	 * @param recipe - recipe object
+	 * @param serializer - xml backend
+	 * @param pool - buffers to fill, waits for one if all are in use
+	 * @return - finished document (release once written) or null if failed
+	 */
+	public static BufferedDocument marshalRecipe(Recipe recipe, RecipeSerializer serializer, DirectBufferPool pool) {
+		
+		long start = RecipeMetrics.MARSHAL.start();
+		BufferedDocument document = pool.newDocument();
+		boolean finished = false;
+		try 
+		{
+			serializer.serialize(recipe, document);
+			document.finish();
+			finished = true;
+			RecipeMetrics.MARSHAL.stop(start);
+			return document;
+		} 
+		catch (IOException e) 
+		{
+			Diagnostics.report(ReasonCode.MARSHAL_FAILED, recipe.getId() + ".xml", null, e.getMessage());
+			return null;
+		}
+		finally
+		{
+			//Buffers back to the pool unless handed to the caller, runtime failures included
+			if (!finished)
+				document.release();
+		}
+	}
+
+	/**
+	 * Writes marshalled XML to {id}.xml in output directory
+	 * 
+	 * @param id - recipe id
+	 * @param xml - marshalled xml content
+	 * @param outputDir - target output dir
+	 * @return - true if success
+	 */
+	public static boolean writeXml(int id, String xml, File outputDir) {
+		return writeFile(id, xml, outputDir, OutputFormat.XML);
+	}
+
+	/**
+	 * Writes marshalled recipe to {id}.xml or {id}.json in output directory
+	 * 
+	 * @param id - recipe id
+	 * @param content - marshalled content
+	 * @param outputDir - target output dir
+	 * @param format - format of content, gives the file extension
+	 * @return - true if success
+	 */
+	public static boolean writeFile(int id, String content, File outputDir, OutputFormat format) {
 		
 		//Filename created from id (consistent with expected output)
-        File outputFile = new File(outputDir.getAbsolutePath() + 
-        		File.separator + recipe.getId() + ".xml");
+		File outputFile = new File(outputDir.getAbsolutePath() + 
+				File.separator + id + format.getExtension());
+		return writeFile(outputFile, content);
+	}
+
+	/**
+	 * Writes marshalled recipe to given file (eg. a duplicate id diverted elsewhere)
+	 * 
+	 * @param outputFile - target file
+	 * @param content - marshalled content
+	 * @return - true if success
+	 */
+	public static boolean writeFile(File outputFile, String content) {
 		
-        //XML Writer
-	       try (FileWriter writer = new XmlWriter(outputFile))
-	        {
-	    	   //Setup
-	            JAXBContext jaxbContext = JAXBContext.newInstance(Recipe.class);
-	            Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-	 
-	            //Format consistent with expected output
-	            jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-	            jaxbMarshaller.setProperty("com.sun.xml.bind.xmlDeclaration", false);
-	 	            
-	            //Write XML Recipe to output file
-	            jaxbMarshaller.marshal(recipe, writer);
-	            return true;
-	            
-	        } 
-	       catch (JAXBException | IOException e) 
-	       {
-	    	   System.out.println("Failed to write to XML: " + outputFile.getName() + " - " + e.getMessage());
-	    	   return false;
-	        }
+		//XML Writer (as FileWriter, write calls counted for metrics)
+		long start = RecipeMetrics.WRITE.start();
+		WriteCountingStream counter;
+		try (FileOutputStream out = new FileOutputStream(outputFile);
+				Writer writer = new OutputStreamWriter(counter = new WriteCountingStream(out)))
+		{
+			writer.write(content);
+		}
+		catch (IOException e) 
+		{
+			Diagnostics.report(ReasonCode.WRITE_FAILED, outputFile.getName(), null, e.getMessage());
+			return false;
+		}
+		RecipeMetrics.countWriteCalls(counter.calls);
+		RecipeMetrics.WRITE.stop(start, counter.bytes);
+		return true;
+	}
+
+	/**
+	 * Writes document to {id}.xml in output directory with one gathering write, buffers are not released
+	 * 
+	 * @param id - recipe id
+	 * @param document - finished document from marshalRecipe
+	 * @param outputDir - target output dir
+	 * @param flushPolicy - whether to force content to disk before returning
+	 * @return - true if success
+	 */
+	public static boolean writeXml(int id, BufferedDocument document, File outputDir, FlushPolicy flushPolicy) {
+		return writeFile(id, document, outputDir, OutputFormat.XML, flushPolicy);
+	}
+
+	/**
+	 * Writes document to {id}.xml or {id}.json in output directory with one gathering write, buffers are not released
+	 * 
+	 * @param id - recipe id
+	 * @param document - finished document from marshalRecipe
+	 * @param outputDir - target output dir
+	 * @param format - format of document, gives the file extension
+	 * @param flushPolicy - whether to force content to disk before returning
+	 * @return - true if success
+	 */
+	public static boolean writeFile(int id, BufferedDocument document, File outputDir, OutputFormat format, FlushPolicy flushPolicy) {
+		
+		File outputFile = new File(outputDir.getAbsolutePath() + 
+				File.separator + id + format.getExtension());
+		return writeFile(outputFile, document, flushPolicy);
+	}
+
+	/**
+	 * Writes document to given file with one gathering write, buffers are not released
+	 * 
+	 * @param outputFile - target file
+	 * @param document - finished document from marshalRecipe
+	 * @param flushPolicy - whether to force content to disk before returning
+	 * @return - true if success
+	 */
+	public static boolean writeFile(File outputFile, BufferedDocument document, FlushPolicy flushPolicy) {
+		
+		long start = RecipeMetrics.WRITE.start();
+		ByteBuffer[] buffers = document.getBuffers();
+		long size = document.size();
+		long calls = 0;
+		try (FileChannel channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+		{
+			//Whole document in one call, loops only on a short write
+			long written = 0;
+			while (written < size)
+			{
+				written += channel.write(buffers);
+				calls++;
+			}
+			if (flushPolicy != FlushPolicy.NONE)
+				channel.force(flushPolicy == FlushPolicy.ALL);
+		}
+		catch (IOException e) 
+		{
+			Diagnostics.report(ReasonCode.WRITE_FAILED, outputFile.getName(), null, e.getMessage());
+			return false;
+		}
+		RecipeMetrics.countWriteCalls(calls);
+		RecipeMetrics.WRITE.stop(start, size);
+		return true;
 	}
 	
 }
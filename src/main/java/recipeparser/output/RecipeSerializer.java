@@ -0,0 +1,24 @@
+package recipeparser.output;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import recipeparser.recipe.Recipe;
+
+/**
+ * Writes a single Recipe document (formatted, no xml declaration)
+ * 
+ * Implementations must be safe to share between threads.
+ * 
+ * @author NicholasChristou
+ *
+ */
+public interface RecipeSerializer {
+
+	/**
+	 * @param recipe - recipe to write
+	 * @param writer - target writer (not closed)
+	 * @throws IOException - if serializing or writing failed
+	 */
+	void serialize(Recipe recipe, Writer writer) throws IOException;
+}
@@ -0,0 +1,226 @@
+package recipeparser.output;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.metrics.RecipeMetrics;
+
+/**
+ * Writes every recipe into a single zip archive as {id}.xml entries, rather than one file per recipe.
+ *
+ * Safe to share between write threads, entries are appended one at a time. The archive is written to a
+ * temp file and moved into place on close, so a consumer never sees a half-written zip. Optionally also
+ * writes an index next to it ({name}.idx, tab separated: id, offset of the entry's local header, compressed
+ * size, size) so a single recipe can be read without scanning the archive.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeZipWriter implements Closeable {
+
+	public static final String INDEX_SUFFIX = ".idx";
+	private static final String INDEX_HEADER = "#id\toffset\tcompressedSize\tsize";
+
+	/**
+	 * Counts bytes passed through, ie. offset into the zip file
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		private CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private final File file;
+	private final Path temp;
+	private final CountingOutputStream counter;
+	private final ZipOutputStream zip;
+	private final Path indexTemp;
+	private final BufferedWriter index;
+	private int entries;
+	private boolean failed;
+
+	/**
+	 * @param file - zip archive to create (replaced if it exists)
+	 * @param level - compression level 0 (store) to 9, or -1 for default
+	 * @param writeIndex - also write {name}.idx
+	 * @throws IOException - if archive could not be created
+	 */
+	public RecipeZipWriter(File file, int level, boolean writeIndex) throws IOException
+	{
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("zipLevel must be -1 to 9 - " + level);
+
+		this.file = file;
+		this.temp = file.toPath().resolveSibling(file.getName() + ".tmp");
+		this.counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile()), 65536));
+		this.zip = new ZipOutputStream(counter, StandardCharsets.UTF_8);
+		zip.setLevel(level);
+
+		if (writeIndex)
+		{
+			indexTemp = file.toPath().resolveSibling(file.getName() + INDEX_SUFFIX + ".tmp");
+			index = Files.newBufferedWriter(indexTemp, StandardCharsets.UTF_8);
+			index.write(INDEX_HEADER);
+			index.newLine();
+		}
+		else
+		{
+			indexTemp = null;
+			index = null;
+		}
+	}
+
+	/**
+	 * Appends marshalled XML as {id}.xml
+	 *
+	 * @param id - recipe id
+	 * @param xml - marshalled xml content
+	 * @return - true if success
+	 */
+	public boolean write(int id, String xml)
+	{
+		//Encoded outside the lock, same charset as {id}.xml files
+		long start = RecipeMetrics.WRITE.start();
+		byte[] content = xml.getBytes(Charset.defaultCharset());
+		String name = id + ".xml";
+
+		synchronized (this)
+		{
+			try
+			{
+				long offset = counter.count;
+				ZipEntry entry = new ZipEntry(name);
+				zip.putNextEntry(entry);
+				zip.write(content);
+				zip.closeEntry();
+				entries++;
+
+				if (index != null)
+				{
+					index.write(Integer.toString(id) + '\t' + offset + '\t' + entry.getCompressedSize() + '\t' + entry.getSize());
+					index.newLine();
+				}
+				RecipeMetrics.WRITE.stop(start, content.length);
+				return true;
+			}
+			catch (ZipException e)
+			{
+				//Duplicate id, archive still usable
+				Diagnostics.report(ReasonCode.WRITE_FAILED, name, null, e.getMessage());
+				return false;
+			}
+			catch (IOException e)
+			{
+				failed = true;
+				Diagnostics.report(ReasonCode.WRITE_FAILED, name, null, e.getMessage());
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Writes central directory and moves archive (and index) into place, unless a write failed
+	 *
+	 * @throws IOException - if archive could not be completed
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		//Index closed even if the zip fails, first failure thrown with any second one suppressed
+		IOException error = null;
+		try
+		{
+			zip.close();
+		}
+		catch (IOException e)
+		{
+			error = e;
+		}
+		if (index != null)
+		{
+			try
+			{
+				index.close();
+			}
+			catch (IOException e)
+			{
+				if (error == null)
+					error = e;
+				else
+					error.addSuppressed(e);
+			}
+		}
+		if (error != null || failed)
+		{
+			failed = true;
+			if (error == null)
+				error = new IOException("Zip output incomplete, not written - " + file.getName());
+			//Temp files removed, a failure to do so is added to the one thrown
+			try
+			{
+				Files.deleteIfExists(temp);
+				if (indexTemp != null)
+					Files.deleteIfExists(indexTemp);
+			}
+			catch (IOException e)
+			{
+				error.addSuppressed(e);
+			}
+			throw error;
+		}
+
+		Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		if (index != null)
+			Files.move(indexTemp, indexFile(file).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param zipFile - zip archive
+	 * @return - index file written alongside it
+	 */
+	public static File indexFile(File zipFile)
+	{
+		return new File(zipFile.getPath() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * @return - entries written
+	 */
+	public synchronized int getEntries() {
+		return entries;
+	}
+}
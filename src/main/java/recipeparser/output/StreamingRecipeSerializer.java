@@ -0,0 +1,300 @@
+package recipeparser.output;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import recipeparser.recipe.Recipe;
+import recipeparser.recipe.Recipe.Content;
+import recipeparser.recipe.Recipe.Content.Ingredients;
+import recipeparser.recipe.Recipe.Content.Ingredients.Ingredient;
+import recipeparser.recipe.Recipe.Content.Method;
+import recipeparser.recipe.Recipe.Metadata;
+
+/**
+ * Hand-written Recipe serializer, walks the recipe and writes elements directly without JAXB reflection.
+ *
+ * Output matches the JAXB marshaller configuration used by this app (Recipe.xsd element order, 4 space
+ * indent, null elements omitted, empty parents as self-closing tags, no xml declaration) so either
+ * backend can be used interchangeably.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class StreamingRecipeSerializer implements RecipeSerializer {
+
+	private static final String NEW_LINE = "\n";
+	private static final String[] INDENTS = { "", "    ", "        ", "            ", "                " };
+
+	@Override
+	public void serialize(Recipe recipe, Writer writer) throws IOException
+	{
+		//Root element, self-closing if no children
+		writer.write("<Recipe id=\"");
+		writer.write(Integer.toString(recipe.getId()));
+		if (!recipe.isSetMetadata() && !recipe.isSetContent())
+		{
+			writer.write("\"/>");
+			return;
+		}
+		writer.write("\">");
+		writer.write(NEW_LINE);
+
+		if (recipe.isSetMetadata())
+			writeMetadata(recipe.getMetadata(), writer);
+		if (recipe.isSetContent())
+			writeContent(recipe.getContent(), writer);
+
+		writer.write("</Recipe>");
+	}
+
+	/**
+	 * Metadata - Created, Author, Title
+	 */
+	private void writeMetadata(Metadata metadata, Writer writer) throws IOException
+	{
+		if (metadata.getCreated() == null && metadata.getAuthor() == null && metadata.getTitle() == null)
+		{
+			writeEmptyElement(1, "Metadata", writer);
+			return;
+		}
+
+		writeStartElement(1, "Metadata", writer);
+		if (metadata.getCreated() != null)
+		{
+			writer.write(INDENTS[2]);
+			writer.write("<Created>");
+			writeDate(metadata.getCreated(), writer);
+			writer.write("</Created>");
+			writer.write(NEW_LINE);
+		}
+		writeTextElement(2, "Author", metadata.getAuthor(), writer);
+		writeTextElement(2, "Title", metadata.getTitle(), writer);
+		writeEndElement(1, "Metadata", writer);
+	}
+
+	/**
+	 * Content - Lead, Ingredients, Method
+	 */
+	private void writeContent(Content content, Writer writer) throws IOException
+	{
+		if (content.getLead() == null && !content.isSetIngredients() && !content.isSetMethod())
+		{
+			writeEmptyElement(1, "Content", writer);
+			return;
+		}
+
+		writeStartElement(1, "Content", writer);
+		writeTextElement(2, "Lead", content.getLead(), writer);
+		if (content.isSetIngredients())
+			writeIngredients(content.getIngredients(), writer);
+		if (content.isSetMethod())
+			writeMethod(content.getMethod(), writer);
+		writeEndElement(1, "Content", writer);
+	}
+
+	/**
+	 * Ingredients - Amount, Unit, Item per ingredient
+	 */
+	private void writeIngredients(Ingredients ingredients, Writer writer) throws IOException
+	{
+		List<Ingredient> list = ingredients.getIngredient();
+		if (list.isEmpty())
+		{
+			writeEmptyElement(2, "Ingredients", writer);
+			return;
+		}
+
+		writeStartElement(2, "Ingredients", writer);
+		for (Ingredient ingredient : list)
+		{
+			if (ingredient.getAmount() == null && ingredient.getUnit() == null && ingredient.getItem() == null)
+			{
+				writeEmptyElement(3, "Ingredient", writer);
+				continue;
+			}
+
+			writeStartElement(3, "Ingredient", writer);
+			if (ingredient.getAmount() != null)
+			{
+				writer.write(INDENTS[4]);
+				writer.write("<Amount>");
+				writer.write(printDouble(ingredient.getAmount()));
+				writer.write("</Amount>");
+				writer.write(NEW_LINE);
+			}
+			writeTextElement(4, "Unit", ingredient.getUnit(), writer);
+			writeTextElement(4, "Item", ingredient.getItem(), writer);
+			writeEndElement(3, "Ingredient", writer);
+		}
+		writeEndElement(2, "Ingredients", writer);
+	}
+
+	/**
+	 * Method - Step per line
+	 */
+	private void writeMethod(Method method, Writer writer) throws IOException
+	{
+		List<String> steps = method.getStep();
+		if (steps.isEmpty())
+		{
+			writeEmptyElement(2, "Method", writer);
+			return;
+		}
+
+		writeStartElement(2, "Method", writer);
+		for (String step : steps)
+			writeTextElement(3, "Step", step, writer);
+		writeEndElement(2, "Method", writer);
+	}
+
+	private void writeStartElement(int depth, String name, Writer writer) throws IOException
+	{
+		writer.write(INDENTS[depth]);
+		writer.write('<');
+		writer.write(name);
+		writer.write('>');
+		writer.write(NEW_LINE);
+	}
+
+	private void writeEndElement(int depth, String name, Writer writer) throws IOException
+	{
+		writer.write(INDENTS[depth]);
+		writer.write("</");
+		writer.write(name);
+		writer.write('>');
+		writer.write(NEW_LINE);
+	}
+
+	private void writeEmptyElement(int depth, String name, Writer writer) throws IOException
+	{
+		writer.write(INDENTS[depth]);
+		writer.write('<');
+		writer.write(name);
+		writer.write("/>");
+		writer.write(NEW_LINE);
+	}
+
+	/**
+	 * Writes simple text element on its own line, skipped if value is null (empty string still written)
+	 */
+	private void writeTextElement(int depth, String name, String value, Writer writer) throws IOException
+	{
+		if (value == null)
+			return;
+
+		writer.write(INDENTS[depth]);
+		writer.write('<');
+		writer.write(name);
+		writer.write('>');
+		writeEscaped(value, writer);
+		writer.write("</");
+		writer.write(name);
+		writer.write('>');
+		writer.write(NEW_LINE);
+	}
+
+	/**
+	 * Writes text content escaping &amp;, &lt;, &gt; and carriage return (as JAXB does),
+	 * unescaped runs are written as a single block
+	 *
+	 * @param value - text to write
+	 * @param writer - target
+	 * @throws IOException - if write failed
+	 */
+	static void writeEscaped(String value, Writer writer) throws IOException
+	{
+		int runStart = 0;
+		int length = value.length();
+
+		for (int i=0; i<length; i++)
+		{
+			String replacement;
+			switch (value.charAt(i))
+			{
+			case '&':
+				replacement = "&amp;";
+				break;
+			case '<':
+				replacement = "&lt;";
+				break;
+			case '>':
+				replacement = "&gt;";
+				break;
+			case '\r':
+				replacement = "&#13;";
+				break;
+			default:
+				continue;
+			}
+
+			if (i > runStart)
+				writer.write(value, runStart, i - runStart);
+			writer.write(replacement);
+			runStart = i + 1;
+		}
+
+		if (runStart < length)
+			writer.write(value, runStart, length - runStart);
+	}
+
+	/**
+	 * Writes xs:date form of calendar (date part plus timezone if defined)
+	 *
+	 * @param date - calendar value
+	 * @param writer - target
+	 * @throws IOException - if write failed
+	 */
+	static void writeDate(XMLGregorianCalendar date, Writer writer) throws IOException
+	{
+		int year = date.getYear();
+		if (year < 0)
+		{
+			writer.write('-');
+			year = -year;
+		}
+		writePadded(year, 4, writer);
+		writer.write('-');
+		writePadded(date.getMonth(), 2, writer);
+		writer.write('-');
+		writePadded(date.getDay(), 2, writer);
+
+		int offset = date.getTimezone();
+		if (offset == DatatypeConstants.FIELD_UNDEFINED)
+			return;
+		if (offset == 0)
+		{
+			writer.write('Z');
+			return;
+		}
+		writer.write(offset < 0 ? '-' : '+');
+		offset = Math.abs(offset);
+		writePadded(offset / 60, 2, writer);
+		writer.write(':');
+		writePadded(offset % 60, 2, writer);
+	}
+
+	private static void writePadded(int value, int width, Writer writer) throws IOException
+	{
+		String digits = Integer.toString(value);
+		for (int i=digits.length(); i<width; i++)
+			writer.write('0');
+		writer.write(digits);
+	}
+
+	/**
+	 * @param value - amount
+	 * @return - xs:double lexical form as printed by JAXB
+	 */
+	static String printDouble(double value)
+	{
+		if (value == Double.POSITIVE_INFINITY)
+			return "INF";
+		if (value == Double.NEGATIVE_INFINITY)
+			return "-INF";
+		return Double.toString(value);
+	}
+}
@@ -0,0 +1,41 @@
+package recipeparser.output;
+
+/**
+ * Available XML serializer backends, selected with --xmlBackend
+ *
+ * @author NicholasChristou
+ *
+ */
+public enum XmlBackend {
+
+	//JAXB marshaller (shared context, per-thread marshallers)
+	JAXB(new JaxbRecipeSerializer()),
+	//Hand-written writer, same output without reflection
+	STREAMING(new StreamingRecipeSerializer());
+
+	private final RecipeSerializer serializer;
+
+	XmlBackend(RecipeSerializer serializer)
+	{
+		this.serializer = serializer;
+	}
+
+	public RecipeSerializer getSerializer() {
+		return serializer;
+	}
+
+	/**
+	 * @param name - backend name (case insensitive)
+	 * @return - matching backend
+	 * @throws IllegalArgumentException - if name does not match a backend
+	 */
+	public static XmlBackend fromName(String name)
+	{
+		for (XmlBackend backend : values())
+		{
+			if (backend.name().equalsIgnoreCase(name))
+				return backend;
+		}
+		throw new IllegalArgumentException("Unknown XML backend: " + name + " (expected jaxb or streaming)");
+	}
+}
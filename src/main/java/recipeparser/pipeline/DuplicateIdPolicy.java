@@ -0,0 +1,46 @@
+package recipeparser.pipeline;
+
+/**
+ * What to do with a recipe whose id was already claimed in the run, selected with --duplicateIds
+ *
+ * @author NicholasChristou
+ *
+ */
+public enum DuplicateIdPolicy {
+
+	//First input to claim the id is written, later ones dropped
+	FIRST("kept first"),
+	//Input most recently modified is written (first of equals), older ones dropped
+	NEWEST("kept newest"),
+	//First input is written as usual, later ones to the collisions directory
+	DIVERT("diverted to " + RecipeIdRegistry.COLLISIONS_DIR);
+
+	private final String outcome;
+
+	DuplicateIdPolicy(String outcome)
+	{
+		this.outcome = outcome;
+	}
+
+	/**
+	 * @return - what happened to the duplicates, for reporting
+	 */
+	public String getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * @param name - policy name (case insensitive)
+	 * @return - matching policy
+	 * @throws IllegalArgumentException - if name does not match a policy
+	 */
+	public static DuplicateIdPolicy fromName(String name)
+	{
+		for (DuplicateIdPolicy policy : values())
+		{
+			if (policy.name().equalsIgnoreCase(name))
+				return policy;
+		}
+		throw new IllegalArgumentException("Unknown duplicate id policy: " + name + " (expected first, newest or divert)");
+	}
+}
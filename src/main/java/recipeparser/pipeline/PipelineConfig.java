@@ -0,0 +1,256 @@
+package recipeparser.pipeline;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import recipeparser.input.RecipeFileEnumerator;
+import recipeparser.output.FlushPolicy;
+import recipeparser.output.OutputFormat;
+import recipeparser.output.RecipeSerializer;
+import recipeparser.output.XmlBackend;
+
+/**
+ * Thread counts, queue sizing and output options for the staged read/parse/marshal/write pipeline
+ *
+ * @author NicholasChristou
+ *
+ */
+public class PipelineConfig {
+
+	private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+	private int readThreads = 2;
+	private int parseThreads = CORES;
+	private int marshalThreads = CORES;
+	private int writeThreads = 2;
+	private int queueCapacity = 256;
+	private XmlBackend xmlBackend = XmlBackend.JAXB;
+	private boolean incremental = false;
+	private boolean virtualThreads = false;
+	private int maxOpenFiles = 256;
+	private boolean recursive = false;
+	private List<String> include = Collections.emptyList();
+	private List<String> exclude = Collections.emptyList();
+	private String outputZip = null;
+	private int zipLevel = Deflater.DEFAULT_COMPRESSION;
+	private boolean zipIndex = false;
+	private boolean corpus = false;
+	private boolean writeBehind = false;
+	private int writeBuffers = 64;
+	private int writeBufferSize = 16 * 1024;
+	private FlushPolicy flushPolicy = FlushPolicy.NONE;
+	private boolean skipUnchanged = false;
+	private String outputBinary = null;
+	private OutputFormat outputFormat = OutputFormat.XML;
+	private String outputNdjson = null;
+	private boolean index = false;
+	private DuplicateIdPolicy duplicateIds = null;
+
+	public int getReadThreads() {
+		return readThreads;
+	}
+	public void setReadThreads(int readThreads) {
+		this.readThreads = requirePositive("readThreads", readThreads);
+	}
+	public int getParseThreads() {
+		return parseThreads;
+	}
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = requirePositive("parseThreads", parseThreads);
+	}
+	public int getMarshalThreads() {
+		return marshalThreads;
+	}
+	public void setMarshalThreads(int marshalThreads) {
+		this.marshalThreads = requirePositive("marshalThreads", marshalThreads);
+	}
+	public int getWriteThreads() {
+		return writeThreads;
+	}
+	public void setWriteThreads(int writeThreads) {
+		this.writeThreads = requirePositive("writeThreads", writeThreads);
+	}
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = requirePositive("queueCapacity", queueCapacity);
+	}
+	public XmlBackend getXmlBackend() {
+		return xmlBackend;
+	}
+	public void setXmlBackend(XmlBackend xmlBackend) {
+		this.xmlBackend = xmlBackend;
+	}
+	public boolean isIncremental() {
+		return incremental;
+	}
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	public int getMaxOpenFiles() {
+		return maxOpenFiles;
+	}
+	public void setMaxOpenFiles(int maxOpenFiles) {
+		this.maxOpenFiles = requirePositive("maxOpenFiles", maxOpenFiles);
+	}
+	public boolean isRecursive() {
+		return recursive;
+	}
+	public void setRecursive(boolean recursive) {
+		this.recursive = recursive;
+	}
+	public List<String> getInclude() {
+		return include;
+	}
+	public void setInclude(List<String> include) {
+		this.include = include;
+	}
+	public List<String> getExclude() {
+		return exclude;
+	}
+	public void setExclude(List<String> exclude) {
+		this.exclude = exclude;
+	}
+	public String getOutputZip() {
+		return outputZip;
+	}
+	public void setOutputZip(String outputZip) {
+		this.outputZip = outputZip;
+	}
+	public int getZipLevel() {
+		return zipLevel;
+	}
+	public void setZipLevel(int zipLevel) {
+		if (zipLevel < Deflater.DEFAULT_COMPRESSION || zipLevel > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("zipLevel must be -1 to 9 - " + zipLevel);
+		this.zipLevel = zipLevel;
+	}
+	public boolean isZipIndex() {
+		return zipIndex;
+	}
+	public void setZipIndex(boolean zipIndex) {
+		this.zipIndex = zipIndex;
+	}
+	public boolean isCorpus() {
+		return corpus;
+	}
+	public void setCorpus(boolean corpus) {
+		this.corpus = corpus;
+	}
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+	public void setWriteBehind(boolean writeBehind) {
+		this.writeBehind = writeBehind;
+	}
+	public int getWriteBuffers() {
+		return writeBuffers;
+	}
+	public void setWriteBuffers(int writeBuffers) {
+		this.writeBuffers = requirePositive("writeBuffers", writeBuffers);
+	}
+	public int getWriteBufferSize() {
+		return writeBufferSize;
+	}
+	public void setWriteBufferSize(int writeBufferSize) {
+		this.writeBufferSize = requirePositive("writeBufferSize", writeBufferSize);
+	}
+	public FlushPolicy getFlushPolicy() {
+		return flushPolicy;
+	}
+	public void setFlushPolicy(FlushPolicy flushPolicy) {
+		this.flushPolicy = flushPolicy;
+	}
+	public boolean isSkipUnchanged() {
+		return skipUnchanged;
+	}
+	public void setSkipUnchanged(boolean skipUnchanged) {
+		this.skipUnchanged = skipUnchanged;
+	}
+	public String getOutputBinary() {
+		return outputBinary;
+	}
+	public void setOutputBinary(String outputBinary) {
+		this.outputBinary = outputBinary;
+	}
+
+	public OutputFormat getOutputFormat() {
+		return outputFormat;
+	}
+	public void setOutputFormat(OutputFormat outputFormat) {
+		this.outputFormat = outputFormat;
+	}
+	public String getOutputNdjson() {
+		return outputNdjson;
+	}
+	public void setOutputNdjson(String outputNdjson) {
+		this.outputNdjson = outputNdjson;
+	}
+	public boolean isIndex() {
+		return index;
+	}
+	public void setIndex(boolean index) {
+		this.index = index;
+	}
+	public DuplicateIdPolicy getDuplicateIds() {
+		return duplicateIds;
+	}
+	public void setDuplicateIds(DuplicateIdPolicy duplicateIds) {
+		this.duplicateIds = duplicateIds;
+	}
+
+	/**
+	 * @return - true if all recipes go into one output file (zip, binary or ndjson) rather than {id} files
+	 */
+	public boolean isSingleFileOutput()
+	{
+		return outputZip != null || outputBinary != null || outputNdjson != null;
+	}
+
+	/**
+	 * @return - true if recipes are written as {id}.xml files (the only output incremental runs and the
+	 * unchanged check track)
+	 */
+	public boolean isXmlFileOutput()
+	{
+		return !isSingleFileOutput() && outputFormat == OutputFormat.XML;
+	}
+
+	/**
+	 * @return - serializer for the marshal stage, JSON for ndjson output else the output format's
+	 */
+	public RecipeSerializer getSerializer()
+	{
+		return (outputNdjson != null ? OutputFormat.JSON : outputFormat).getSerializer(xmlBackend);
+	}
+
+	/**
+	 * @return - input file enumeration from recursive / include / exclude settings
+	 */
+	public RecipeFileEnumerator createEnumerator()
+	{
+		return new RecipeFileEnumerator(recursive, include, exclude);
+	}
+
+	/**
+	 * Rejects zero or negative sizing values
+	 *
+	 * @param name - setting name (for error message)
+	 * @param value - value to check
+	 * @return - value if valid
+	 */
+	private static int requirePositive(String name, int value)
+	{
+		if (value < 1)
+			throw new IllegalArgumentException(name + " must be at least 1 - " + value);
+		return value;
+	}
+}
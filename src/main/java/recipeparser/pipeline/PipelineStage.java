@@ -0,0 +1,218 @@
+package recipeparser.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+
+/**
+ * Group of worker threads taking items from a bounded input queue, applying the stage
+ * function and handing the result on to the next stage
+ *
+ * @author NicholasChristou
+ *
+ */
+public class PipelineStage {
+
+	/**
+	 * Work done by a stage on a single item
+	 */
+	public interface StageFunction {
+		/**
+		 * @param item - item taken from input queue
+		 * @return - true to pass item on to next stage, false to drop it
+		 */
+		boolean process(RecipeWorkItem item);
+	}
+
+	//Marks end of input, one is queued per worker
+	private static final RecipeWorkItem END_OF_INPUT = new RecipeWorkItem(null);
+
+	private final String name;
+	private final int threadCount;
+	private final StageFunction function;
+	private final BlockingQueue<RecipeWorkItem> queue;
+	private final List<Thread> workers = new ArrayList<>();
+	private final AtomicInteger liveWorkers;
+	private PipelineStage next;
+
+	//Stats
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong depthTotal = new AtomicLong();
+	private final AtomicLong depthSamples = new AtomicLong();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+
+	public PipelineStage(String name, int threadCount, int queueCapacity, StageFunction function)
+	{
+		this.name = name;
+		this.threadCount = threadCount;
+		this.function = function;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.liveWorkers = new AtomicInteger(threadCount);
+	}
+
+	/**
+	 * @param next - stage receiving items this stage passes on (null if final stage)
+	 */
+	public void setNext(PipelineStage next) {
+		this.next = next;
+	}
+
+	/**
+	 * Starts worker threads
+	 */
+	public void start()
+	{
+		for (int i=0; i<threadCount; i++)
+		{
+			Thread worker = new Thread(this::runWorker, "recipe-" + name + "-" + i);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Queues item for this stage, blocking while the queue is full
+	 *
+	 * @param item - item to queue
+	 * @throws InterruptedException - if interrupted while waiting for space
+	 */
+	public void submit(RecipeWorkItem item) throws InterruptedException
+	{
+		queue.put(item);
+		recordDepth(queue.size());
+	}
+
+	/**
+	 * Signals no more items will be submitted, workers exit once the queue drains
+	 *
+	 * @throws InterruptedException - if interrupted while waiting for space
+	 */
+	public void finish() throws InterruptedException
+	{
+		for (int i=0; i<threadCount; i++)
+			queue.put(END_OF_INPUT);
+	}
+
+	/**
+	 * Waits for all worker threads of this stage to exit
+	 *
+	 * @throws InterruptedException - if interrupted while waiting
+	 */
+	public void await() throws InterruptedException
+	{
+		for (Thread worker : workers)
+			worker.join();
+	}
+
+	/**
+	 * Worker loop - take, process, pass on. Last worker out signals the next stage.
+	 */
+	private void runWorker()
+	{
+		try
+		{
+			while (true)
+			{
+				RecipeWorkItem item = queue.take();
+				if (item == END_OF_INPUT)
+					break;
+
+				boolean passOn;
+				try
+				{
+					passOn = function.process(item);
+				}
+				//Never let one bad file take down the worker - nor an Error (eg. a serializer failing to initialise), which
+				//would leave the stages in front blocked on a full queue forever
+				catch (Throwable e)
+				{
+					Diagnostics.report(ReasonCode.PROCESS_FAILED, item.getSourceName(), null, "stage " + name + " - " + e);
+					passOn = false;
+				}
+
+				processed.incrementAndGet();
+				if (passOn && next != null)
+					next.submit(item);
+				else if (!passOn)
+					dropped.incrementAndGet();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			if (liveWorkers.decrementAndGet() == 0 && next != null)
+				signalNext();
+		}
+	}
+
+	/**
+	 * Passes end of input on to the next stage once every worker here has exited
+	 */
+	private void signalNext()
+	{
+		try
+		{
+			next.finish();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Tracks queue depth seen on each submit
+	 *
+	 * @param depth - queue size after submit
+	 */
+	private void recordDepth(int depth)
+	{
+		depthTotal.addAndGet(depth);
+		depthSamples.incrementAndGet();
+
+		int max;
+		while (depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth)) {
+			//retry until max updated or beaten by another thread
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+	public int getThreadCount() {
+		return threadCount;
+	}
+	public long getProcessed() {
+		return processed.get();
+	}
+	public long getDropped() {
+		return dropped.get();
+	}
+	public int getMaxQueueDepth() {
+		return maxDepth.get();
+	}
+	public double getAverageQueueDepth() {
+		long samples = depthSamples.get();
+		return samples == 0 ? 0d : (double) depthTotal.get() / samples;
+	}
+
+	/**
+	 * @return - one line summary of stage throughput and queue depth
+	 */
+	public String report()
+	{
+		return String.format("Stage %-8s threads: %2d, processed: %d, dropped: %d, queue depth max: %d, avg: %.1f",
+				name, threadCount, getProcessed(), getDropped(), getMaxQueueDepth(), getAverageQueueDepth());
+	}
+}
@@ -0,0 +1,363 @@
+package recipeparser.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.input.RecipeFileEnumerator;
+
+/**
+ * Long running mode - watches the input directory and turns each new or modified recipe file into {id}.xml
+ * as soon as it has stopped changing. Files are picked with the same include / exclude globs as a run, and
+ * when recursive every subdirectory the run would walk is watched too (including ones created later).
+ *
+ * A file is considered complete once its size and last modified have held for the debounce period, so
+ * partially copied files are not parsed. Files are then processed on a fixed pool of threads through a
+ * single pipeline instance, so parser and marshaller state stays warm between files. Existing files are
+ * picked up by a directory scan at start, and again whenever the watch service reports OVERFLOW (events
+ * lost). Files already processed with the same size and last modified are not processed again, and are
+ * forgotten once deleted (or no longer found by a scan) so a long running watch holds only the files present.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeDirectoryWatcher implements Closeable {
+
+	/**
+	 * Size and last modified of a file when last looked at
+	 */
+	private static final class FileStamp {
+		private final long size;
+		private final long lastModified;
+		private final long seenNanos;
+
+		private FileStamp(File file, long seenNanos)
+		{
+			this.size = file.length();
+			this.lastModified = file.lastModified();
+			this.seenNanos = seenNanos;
+		}
+
+		private boolean sameAs(FileStamp other)
+		{
+			return other != null && size == other.size && lastModified == other.lastModified;
+		}
+	}
+
+	private final File inputDir;
+	private final File outputDir;
+	private final long debounceNanos;
+	private final long pollMillis;
+	private final RecipeFileEnumerator enumerator;
+	private final RecipePipeline pipeline;
+	private final ExecutorService workers;
+
+	//Owned by the watch loop thread
+	private final Map<Path, FileStamp> pending = new HashMap<>();
+	private final Map<WatchKey, Path> watched = new HashMap<>();
+
+	//Shared with workers
+	private final Map<Path, FileStamp> processed = new ConcurrentHashMap<>();
+	private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger scans = new AtomicInteger();
+	private volatile boolean running = true;
+
+	/**
+	 * @param inputDir - directory to watch
+	 * @param outputDir - output directory
+	 * @param config - worker threads (parse thread count), xml backend and input filters, no duplicate id policy
+	 * @param debounceMillis - time a file must be unchanged before it is processed
+	 */
+	public RecipeDirectoryWatcher(File inputDir, File outputDir, PipelineConfig config, long debounceMillis)
+	{
+		if (debounceMillis < 0)
+			throw new IllegalArgumentException("watchDebounce must not be negative - " + debounceMillis);
+		//Ids are claimed per run, a file changed again would collide with itself
+		if (config.getDuplicateIds() != null)
+			throw new IllegalArgumentException("Option --duplicateIds cannot be used with --watch");
+
+		this.inputDir = inputDir;
+		this.outputDir = outputDir;
+		this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+		this.pollMillis = Math.max(5, Math.min(50, debounceMillis / 4));
+		this.enumerator = config.createEnumerator();
+		this.pipeline = new RecipePipeline(config);
+		AtomicInteger workerCount = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(config.getParseThreads(), runnable ->
+		{
+			Thread worker = new Thread(runnable, "recipe-watch-" + workerCount.getAndIncrement());
+			worker.setDaemon(true);
+			return worker;
+		});
+	}
+
+	/**
+	 * Watches until closed (or the input directory is no longer accessible)
+	 *
+	 * @throws IOException - if the directory could not be watched
+	 * @throws InterruptedException - if interrupted while waiting for events
+	 */
+	public void run() throws IOException, InterruptedException
+	{
+		try (WatchService watchService = FileSystems.getDefault().newWatchService())
+		{
+			//Register before the first scan so nothing landing in between is missed
+			register(watchService, inputDir.toPath());
+			scan();
+
+			while (running)
+			{
+				WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+				if (key != null)
+				{
+					Path dir = watched.get(key);
+					for (WatchEvent<?> event : key.pollEvents())
+					{
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+						{
+							//Subdirectories created in the lost events too
+							registerQuietly(watchService, inputDir.toPath());
+							scan();
+							continue;
+						}
+						Path path = dir.resolve((Path) event.context());
+						if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+						{
+							//A deleted subdirectory takes its files with it
+							if (processed.remove(path) == null && enumerator.entersDirectory(path.getFileName()))
+								processed.keySet().removeIf(child -> child.startsWith(path));
+						}
+						else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+						{
+							//New subdirectory, files may have landed before it was registered
+							if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && enumerator.entersDirectory(path.getFileName())
+									&& registerQuietly(watchService, path))
+								scan(path.toFile());
+						}
+						else
+							markPending(path);
+					}
+
+					//Directory gone, watching stops only with the input directory itself
+					if (!key.reset())
+					{
+						watched.remove(key);
+						if (dir.equals(inputDir.toPath()))
+						{
+							System.out.println("Input directory no longer accessible - " + inputDir);
+							break;
+						}
+					}
+				}
+				submitStable();
+			}
+		}
+		finally
+		{
+			workers.shutdown();
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	/**
+	 * Stops watching, files already stable are finished before run() returns
+	 */
+	@Override
+	public void close()
+	{
+		running = false;
+	}
+
+	/**
+	 * Watches dir, and when recursive each subdirectory a run would walk (symbolic links not followed)
+	 */
+	private void register(WatchService watchService, Path dir) throws IOException
+	{
+		watched.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE), dir);
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir))
+		{
+			for (Path entry : entries)
+			{
+				if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS) && enumerator.entersDirectory(entry.getFileName()))
+					register(watchService, entry);
+			}
+		}
+	}
+
+	/**
+	 * register, reported to console on failure rather than ending the watch
+	 *
+	 * @return - false if the directory could not be watched
+	 */
+	private boolean registerQuietly(WatchService watchService, Path dir)
+	{
+		try
+		{
+			register(watchService, dir);
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.out.println("Failed to watch directory - " + dir + " - " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Marks every matching file in the input directory as pending (catch up at start and after lost events),
+	 * and forgets processed files no longer there (deletes may have been lost too)
+	 */
+	private void scan() throws InterruptedException
+	{
+		scans.incrementAndGet();
+		Set<Path> seen = scan(inputDir);
+		if (seen != null)
+			processed.keySet().removeIf(path -> !seen.contains(path) && !inFlight.contains(path));
+	}
+
+	/**
+	 * @param dir - input directory or a new subdirectory of it
+	 * @return - files marked pending, null if dir could not be listed (reported to console)
+	 */
+	private Set<Path> scan(File dir) throws InterruptedException
+	{
+		Set<Path> seen = new HashSet<>();
+		try
+		{
+			enumerator.forEach(dir, child ->
+			{
+				seen.add(child.toPath());
+				markPending(child.toPath());
+			});
+		}
+		catch (IOException e)
+		{
+			System.out.println("Failed to scan input directory - " + e.getMessage());
+			return null;
+		}
+		return seen;
+	}
+
+	private void markPending(Path path)
+	{
+		File file = path.toFile();
+		if (!enumerator.matches(path.getFileName()))
+			return;
+
+		//Already processed as is (eg. attribute change only, or found again by a scan)
+		FileStamp stamp = new FileStamp(file, System.nanoTime());
+		if (stamp.sameAs(processed.get(path)) && !pending.containsKey(path))
+			return;
+
+		//Restart quiet period only on a real change, so a stream of events on a finished file cannot hold it back
+		FileStamp previous = pending.get(path);
+		if (!stamp.sameAs(previous))
+			pending.put(path, stamp);
+	}
+
+	/**
+	 * Hands files unchanged for the debounce period to the workers
+	 */
+	private void submitStable()
+	{
+		long now = System.nanoTime();
+		Iterator<Map.Entry<Path, FileStamp>> it = pending.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<Path, FileStamp> entry = it.next();
+			Path path = entry.getKey();
+			File file = path.toFile();
+			if (!file.isFile())
+			{
+				it.remove();
+				continue;
+			}
+
+			//Still being written
+			FileStamp current = new FileStamp(file, now);
+			if (!current.sameAs(entry.getValue()))
+			{
+				entry.setValue(current);
+				continue;
+			}
+			if (now - entry.getValue().seenNanos < debounceNanos || !inFlight.add(path))
+				continue;
+
+			it.remove();
+			workers.execute(() -> process(path, current));
+		}
+	}
+
+	private void process(Path path, FileStamp stamp)
+	{
+		//Counted by the pipeline (see getFilesOutput), not printed per file
+		try
+		{
+			pipeline.process(path.toFile(), outputDir);
+		}
+		//Reported like any other failed file, rather than lost to the pool's default handler
+		catch (RuntimeException e)
+		{
+			pipeline.getFailedRecipes().add(path.getFileName().toString());
+			Diagnostics.report(ReasonCode.PROCESS_FAILED, path.getFileName().toString(), null, e.toString());
+		}
+		finally
+		{
+			//Failed files are only retried once they change again
+			if (path.toFile().isFile())
+				processed.put(path, stamp);
+			inFlight.remove(path);
+		}
+	}
+
+	/**
+	 * @return - xml files written so far
+	 */
+	public int getFilesOutput() {
+		return pipeline.getFilesOutput();
+	}
+
+	/**
+	 * @return - names of files that failed to read or parse so far
+	 */
+	public Queue<String> getFailedRecipes() {
+		return pipeline.getFailedRecipes();
+	}
+
+	/**
+	 * @return - processed files still tracked (present in the input directory)
+	 */
+	public int getTracked() {
+		return processed.size();
+	}
+
+	/**
+	 * @return - directory scans done (start plus one per OVERFLOW)
+	 */
+	public int getScans() {
+		return scans.get();
+	}
+}
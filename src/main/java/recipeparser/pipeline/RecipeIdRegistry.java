@@ -0,0 +1,240 @@
+package recipeparser.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ids claimed by the recipes of a run, so two inputs with the same id are caught rather than silently
+ * overwriting each other's {id}.xml (or racing on it from two write threads).
+ *
+ * Claims are lock-free. The id space is split into 65536 pages of 65536 ids, each page created on first use.
+ * For keep first / divert a page is a bitmap in an AtomicLongArray (8KB), so 100M dense ids take about 12MB and
+ * nothing is boxed.
+ *
+ * Keep newest costs more. Each page holds the claimant's last modified time per id (512KB a page, about 800MB
+ * for 100M dense ids), which a newer input replaces by compare-and-set. Its {id} file writes are not lock-free:
+ * each is checked and written holding one of 64 lock stripes (see lockFor), so an input that lost the id
+ * cannot overwrite the newer one's output. Write threads wait only on a write to an id of the same stripe.
+ *
+ * For an incremental run the registry is seeded with the ids the previous run's inputs produced, so an input
+ * skipped as unchanged still holds its id against a duplicate that is reprocessed.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeIdRegistry {
+
+	public static final String COLLISIONS_DIR = "collisions";
+
+	//claimNewest results
+	public static final int CLAIMED = 0;
+	public static final int REPLACED = 1;
+	public static final int STALE = 2;
+
+	private static final int PAGE_BITS = 16;
+	private static final int PAGES = 1 << (32 - PAGE_BITS);
+	private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+	private static final int LOCK_STRIPES = 64;
+
+	private final DuplicateIdPolicy policy;
+	private final AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(PAGES);
+	private final Object[] locks = new Object[LOCK_STRIPES];
+	private final AtomicInteger claimed = new AtomicInteger();
+	private final LongAdder collisions = new LongAdder();
+
+	/**
+	 * @param policy - what is done with duplicates (keep newest tracks modified times)
+	 */
+	public RecipeIdRegistry(DuplicateIdPolicy policy)
+	{
+		this.policy = policy;
+		for (int i=0; i<LOCK_STRIPES; i++)
+			locks[i] = new Object();
+	}
+
+	/**
+	 * Claims id for the calling input (keep first / divert)
+	 *
+	 * @param id - recipe id
+	 * @return - true if id was not claimed before, false for a duplicate
+	 */
+	public boolean claim(int id)
+	{
+		if (policy == DuplicateIdPolicy.NEWEST)
+			throw new IllegalStateException("Keep newest registry is claimed with claimNewest");
+		AtomicLongArray page = page(id, (1 << PAGE_BITS) / 64);
+		int bit = id & PAGE_MASK;
+		int word = bit >>> 6;
+		long mask = 1L << (bit & 63);
+		while (true)
+		{
+			long current = page.get(word);
+			if ((current & mask) != 0)
+			{
+				collisions.increment();
+				return false;
+			}
+			if (page.compareAndSet(word, current, current | mask))
+			{
+				claimed.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Claims id for the calling input if no newer input holds it (keep newest)
+	 *
+	 * @param id - recipe id
+	 * @param lastModified - input's last modified time (0 if not known, eg. archive entries)
+	 * @return - CLAIMED if id was free, REPLACED if an older input held it, STALE if a newer (or equal) one does
+	 */
+	public int claimNewest(int id, long lastModified)
+	{
+		if (policy != DuplicateIdPolicy.NEWEST)
+			throw new IllegalStateException("Only a keep newest registry is claimed with claimNewest");
+		AtomicLongArray page = page(id, 1 << PAGE_BITS);
+		int index = id & PAGE_MASK;
+		long stamp = stamp(lastModified);
+		while (true)
+		{
+			long current = page.get(index);
+			if (current == 0)
+			{
+				if (page.compareAndSet(index, 0, stamp))
+				{
+					claimed.incrementAndGet();
+					return CLAIMED;
+				}
+			}
+			else if (stamp <= current)
+			{
+				collisions.increment();
+				return STALE;
+			}
+			else if (page.compareAndSet(index, current, stamp))
+			{
+				collisions.increment();
+				return REPLACED;
+			}
+		}
+	}
+
+	/**
+	 * Marks id as held before the run's claims (eg. by an input of the previous run), not counted as a claim
+	 *
+	 * @param id - recipe id
+	 * @param lastModified - holder's last modified time (keep newest, the newest of several holders is kept)
+	 */
+	public void seed(int id, long lastModified)
+	{
+		if (policy != DuplicateIdPolicy.NEWEST)
+		{
+			AtomicLongArray page = page(id, (1 << PAGE_BITS) / 64);
+			int bit = id & PAGE_MASK;
+			long mask = 1L << (bit & 63);
+			long current;
+			while (((current = page.get(bit >>> 6)) & mask) == 0 && !page.compareAndSet(bit >>> 6, current, current | mask))
+			{
+				//retry until set, by this thread or another
+			}
+			return;
+		}
+
+		AtomicLongArray page = page(id, 1 << PAGE_BITS);
+		int index = id & PAGE_MASK;
+		long stamp = stamp(lastModified);
+		long current;
+		while (stamp > (current = page.get(index)) && !page.compareAndSet(index, current, stamp))
+		{
+			//retry until newest stamp set
+		}
+	}
+
+	/**
+	 * Frees id if it is still held with the seeded time, so its holder can claim it again after changing (keep newest)
+	 *
+	 * @param id - recipe id
+	 * @param lastModified - holder's last modified time, as seeded
+	 * @return - true if freed, false if a newer input holds it
+	 */
+	public boolean release(int id, long lastModified)
+	{
+		AtomicLongArray page = pages.get(id >>> PAGE_BITS);
+		return page != null && page.compareAndSet(id & PAGE_MASK, stamp(lastModified), 0);
+	}
+
+	/**
+	 * @param id - recipe id
+	 * @param lastModified - input's last modified time, as claimed
+	 * @return - true if that input still holds id (keep newest)
+	 */
+	public boolean holds(int id, long lastModified)
+	{
+		AtomicLongArray page = pages.get(id >>> PAGE_BITS);
+		return page != null && page.get(id & PAGE_MASK) == stamp(lastModified);
+	}
+
+	/**
+	 * Lock to hold while checking holds() and writing id, so an input that lost its claim never overwrites
+	 * the newer one's output
+	 *
+	 * @param id - recipe id
+	 * @return - lock shared by a stripe of ids
+	 */
+	public Object lockFor(int id)
+	{
+		return locks[id & (LOCK_STRIPES - 1)];
+	}
+
+	public DuplicateIdPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return - distinct ids claimed
+	 */
+	public int getClaimed() {
+		return claimed.get();
+	}
+
+	/**
+	 * @return - inputs whose id was already claimed (or that replaced an older claim)
+	 */
+	public long getCollisions() {
+		return collisions.sum();
+	}
+
+	/**
+	 * @return - console summary
+	 */
+	public String report()
+	{
+		return String.format("Duplicate ids - ids: %d, collisions: %d, %s", getClaimed(), getCollisions(), policy.getOutcome());
+	}
+
+	/**
+	 * Page holding id, created on first use (a losing racer's page is dropped)
+	 */
+	private AtomicLongArray page(int id, int length)
+	{
+		int index = id >>> PAGE_BITS;
+		AtomicLongArray page = pages.get(index);
+		if (page == null)
+		{
+			pages.compareAndSet(index, null, new AtomicLongArray(length));
+			page = pages.get(index);
+		}
+		return page;
+	}
+
+	/**
+	 * Non-zero form of last modified time, 0 marks a free id
+	 */
+	private static long stamp(long lastModified)
+	{
+		return Math.max(lastModified, 0) + 1;
+	}
+}
@@ -0,0 +1,353 @@
+package recipeparser.pipeline;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Record of the inputs behind the xml in an output directory, kept between runs for incremental processing.
+ *
+ * One tab separated line per input file: path (relative to input dir), size, last modified, CRC32 of content
+ * and the recipe id it produced. An input is skipped when its size and last modified match, or when they do
+ * not but its content hash does (eg. file touched or copied again), as long as its {id}.xml is still there.
+ * Outputs whose input has gone (or now produces a different id) are deleted when the run finishes.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeManifest {
+
+	public static final String FILE_NAME = "recipe-manifest.tsv";
+	private static final String HEADER = "#path\tsize\tlastModified\tcrc32\tid";
+
+	/**
+	 * Receives each input of the previous run
+	 */
+	public interface EntryConsumer {
+		/**
+		 * @param path - manifest key
+		 * @param lastModified - input's last modified when written
+		 * @param id - recipe id it produced
+		 */
+		void accept(String path, long lastModified, int id);
+	}
+
+	/**
+	 * Single input file and the recipe id it produced
+	 */
+	private static final class Entry {
+		private final String path;
+		private final long size;
+		private final long lastModified;
+		private final long hash;
+		private final int id;
+
+		private Entry(String path, long size, long lastModified, long hash, int id)
+		{
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.id = id;
+		}
+	}
+
+	private final File file;
+	private final Map<String, Entry> previous;
+	private final Map<String, Entry> current = new ConcurrentHashMap<>();
+	private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+	//Stats
+	private final AtomicInteger skipped = new AtomicInteger();
+	private final AtomicInteger processed = new AtomicInteger();
+	private int removed;
+
+	private RecipeManifest(File file, Map<String, Entry> previous)
+	{
+		this.file = file;
+		this.previous = previous;
+	}
+
+	/**
+	 * Loads manifest from output directory, empty if there is none yet
+	 *
+	 * @param outputDir - output directory
+	 * @return - manifest of previous run
+	 * @throws IOException - if manifest exists but could not be read or is malformed
+	 */
+	public static RecipeManifest load(File outputDir) throws IOException
+	{
+		File file = new File(outputDir, FILE_NAME);
+		Map<String, Entry> entries = new ConcurrentHashMap<>();
+		if (!file.isFile())
+			return new RecipeManifest(file, entries);
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				String[] fields = line.split("\t", -1);
+				if (fields.length != 5)
+					throw new IOException("Manifest line " + lineNumber + " has " + fields.length + " fields, expected 5");
+				try
+				{
+					String path = unescape(fields[0]);
+					entries.put(path, new Entry(path, Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+							Long.parseLong(fields[3], 16), Integer.parseInt(fields[4])));
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IOException("Manifest line " + lineNumber + " not valid - " + e.getMessage());
+				}
+			}
+		}
+		return new RecipeManifest(file, entries);
+	}
+
+	/**
+	 * Empty manifest (all inputs processed) that replaces any existing one on finish
+	 *
+	 * @param outputDir - output directory
+	 * @return - empty manifest
+	 */
+	public static RecipeManifest empty(File outputDir)
+	{
+		return new RecipeManifest(new File(outputDir, FILE_NAME), new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * @param inputDir - input directory
+	 * @param source - input file
+	 * @return - manifest key for file, path relative to input dir with / separators
+	 */
+	public static String key(File inputDir, File source)
+	{
+		return inputDir.toPath().relativize(source.toPath()).toString().replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Marks input as present in this run, and checks for a match on size and last modified
+	 *
+	 * @param path - manifest key
+	 * @param size - file size
+	 * @param lastModified - file last modified
+	 * @param outputDir - output directory
+	 * @return - true if input can be skipped
+	 */
+	public boolean isUnchanged(String path, long size, long lastModified, File outputDir)
+	{
+		seen.add(path);
+		Entry entry = previous.get(path);
+		if (entry == null || entry.size != size || entry.lastModified != lastModified || !outputExists(entry.id, outputDir))
+			return false;
+
+		current.put(path, entry);
+		skipped.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Checks for a match on content once read (size or last modified differed)
+	 *
+	 * @param path - manifest key
+	 * @param size - file size
+	 * @param lastModified - file last modified
+	 * @param hash - CRC32 of content
+	 * @param outputDir - output directory
+	 * @return - true if input can be skipped
+	 */
+	public boolean isUnchangedContent(String path, long size, long lastModified, long hash, File outputDir)
+	{
+		Entry entry = previous.get(path);
+		if (entry == null || entry.size != size || entry.hash != hash || !outputExists(entry.id, outputDir))
+			return false;
+
+		//Keep new last modified so the next run matches without reading
+		current.put(path, new Entry(path, size, lastModified, hash, entry.id));
+		skipped.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @param consumer - receives every input recorded by the previous run
+	 */
+	public void forEachPrevious(EntryConsumer consumer)
+	{
+		for (Entry entry : previous.values())
+			consumer.accept(entry.path, entry.lastModified, entry.id);
+	}
+
+	/**
+	 * @param path - manifest key
+	 * @param id - recipe id
+	 * @return - true if input produced id in the previous run
+	 */
+	public boolean producedLastRun(String path, int id)
+	{
+		Entry entry = previous.get(path);
+		return entry != null && entry.id == id;
+	}
+
+	/**
+	 * @param path - manifest key
+	 * @return - input's last modified as recorded by the previous run, 0 if not recorded
+	 */
+	public long getPreviousLastModified(String path)
+	{
+		Entry entry = previous.get(path);
+		return entry == null ? 0 : entry.lastModified;
+	}
+
+	/**
+	 * Records input written to {id}.xml
+	 *
+	 * @param path - manifest key
+	 * @param size - file size
+	 * @param lastModified - file last modified
+	 * @param hash - CRC32 of content
+	 * @param id - recipe id
+	 */
+	public void recordWritten(String path, long size, long lastModified, long hash, int id)
+	{
+		current.put(path, new Entry(path, size, lastModified, hash, id));
+		processed.incrementAndGet();
+	}
+
+	/**
+	 * Deletes outputs whose input has gone or now produces another id, then saves manifest. Inputs seen
+	 * but not written (eg. failed to parse) keep their previous entry.
+	 *
+	 * @param outputDir - output directory
+	 * @param inputComplete - false if the input listing was cut short, then unseen inputs are kept rather than removed
+	 * @throws IOException - if manifest could not be saved
+	 */
+	public void finish(File outputDir, boolean inputComplete) throws IOException
+	{
+		for (Entry entry : previous.values())
+		{
+			if (!inputComplete || seen.contains(entry.path))
+				current.putIfAbsent(entry.path, entry);
+		}
+
+		//Ids still produced by some input
+		Set<Integer> liveIds = new HashSet<>();
+		for (Entry entry : current.values())
+			liveIds.add(entry.id);
+
+		for (Entry entry : previous.values())
+		{
+			if (!liveIds.contains(entry.id))
+			{
+				Files.deleteIfExists(outputFile(entry.id, outputDir).toPath());
+				liveIds.add(entry.id);
+				removed++;
+			}
+		}
+
+		save();
+	}
+
+	/**
+	 * Writes to a temp file then replaces manifest, so an interrupted run leaves the previous one intact
+	 */
+	private void save() throws IOException
+	{
+		Path target = file.toPath();
+		Path temp = target.resolveSibling(FILE_NAME + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+		{
+			writer.write(HEADER);
+			writer.newLine();
+			for (Entry entry : current.values())
+			{
+				writer.write(escape(entry.path) + '\t' + entry.size + '\t' + entry.lastModified + '\t'
+						+ Long.toHexString(entry.hash) + '\t' + entry.id);
+				writer.newLine();
+			}
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static boolean outputExists(int id, File outputDir)
+	{
+		return outputFile(id, outputDir).isFile();
+	}
+
+	private static File outputFile(int id, File outputDir)
+	{
+		return new File(outputDir, id + ".xml");
+	}
+
+	/**
+	 * Backslash escapes for the chars that would break a line
+	 */
+	private static String escape(String path)
+	{
+		return path.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String path)
+	{
+		if (path.indexOf('\\') == -1)
+			return path;
+
+		StringBuilder result = new StringBuilder(path.length());
+		for (int i=0; i<path.length(); i++)
+		{
+			char c = path.charAt(i);
+			if (c != '\\' || i == path.length() - 1)
+			{
+				result.append(c);
+				continue;
+			}
+			char escaped = path.charAt(++i);
+			result.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return - inputs skipped as unchanged
+	 */
+	public int getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * @return - inputs (new or changed) written
+	 */
+	public int getProcessed() {
+		return processed.get();
+	}
+
+	/**
+	 * @return - outputs deleted as their input has gone
+	 */
+	public int getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * @return - run summary for console
+	 */
+	public String report()
+	{
+		return String.format("Incremental run - skipped: %d, reprocessed: %d, removed: %d", getSkipped(), getProcessed(), getRemoved());
+	}
+}
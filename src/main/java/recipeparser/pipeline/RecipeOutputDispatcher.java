@@ -0,0 +1,327 @@
+package recipeparser.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.output.BufferedDocument;
+import recipeparser.output.RecipeBinaryWriter;
+import recipeparser.output.RecipeHashCache;
+import recipeparser.output.RecipeNdjsonWriter;
+import recipeparser.output.RecipeOutputWriter;
+import recipeparser.output.RecipeZipWriter;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Write stage of the pipeline - sends each marshalled recipe to the configured output: an {id}.xml / {id}.json
+ * file (unless the hash cache shows it already holds the same content), the run's single zip, binary or ndjson
+ * file, or the collisions directory for a diverted duplicate id.
+ *
+ * Single file outputs are opened and closed once per run, outside a run (eg. files processed by the watcher)
+ * every recipe goes to its {id} file. Safe to share between write threads.
+ *
+ * @author NicholasChristou
+ *
+ */
+final class RecipeOutputDispatcher {
+
+	private final PipelineConfig config;
+	private final AtomicInteger filesOutput;
+
+	//Set for the run in progress only
+	private volatile RecipeZipWriter zipWriter;
+	private volatile RecipeBinaryWriter binaryWriter;
+	private volatile RecipeNdjsonWriter ndjsonWriter;
+	private volatile RecipeManifest manifest;
+	private volatile RecipeHashCache hashCache;
+	private volatile RecipeIdRegistry registry;
+
+	/**
+	 * @param config - output format and single file outputs
+	 * @param filesOutput - counter of files written, shared with the pipeline
+	 */
+	RecipeOutputDispatcher(PipelineConfig config, AtomicInteger filesOutput)
+	{
+		this.config = config;
+		this.filesOutput = filesOutput;
+	}
+
+	/**
+	 * Starts a run - creates its single file output (if any) in output dir
+	 *
+	 * @param outputDir - output directory
+	 * @param manifest - records each input written, null unless incremental
+	 * @param hashCache - content of {id} files written, null unless skipping unchanged
+	 * @param registry - id claims, null unless checking duplicate ids
+	 * @return - false if the output could not be created (reported to console)
+	 */
+	boolean open(File outputDir, RecipeManifest manifest, RecipeHashCache hashCache, RecipeIdRegistry registry)
+	{
+		this.manifest = manifest;
+		this.hashCache = hashCache;
+		this.registry = registry;
+
+		//Single archive for all xml
+		if (config.getOutputZip() != null)
+		{
+			File zipFile = new File(outputDir, config.getOutputZip());
+			try
+			{
+				zipWriter = new RecipeZipWriter(zipFile, config.getZipLevel(), config.isZipIndex());
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to create zip output - " + zipFile.getName() + " - " + e.getMessage());
+				return false;
+			}
+		}
+
+		//Single binary file of all recipes, no xml
+		if (config.getOutputBinary() != null)
+		{
+			File binaryFile = new File(outputDir, config.getOutputBinary());
+			try
+			{
+				binaryWriter = new RecipeBinaryWriter(binaryFile);
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to create binary output - " + binaryFile.getName() + " - " + e.getMessage());
+				return false;
+			}
+		}
+
+		//Single file of JSON lines, one per recipe
+		if (config.getOutputNdjson() != null)
+		{
+			File ndjsonFile = new File(outputDir, config.getOutputNdjson());
+			try
+			{
+				ndjsonWriter = new RecipeNdjsonWriter(ndjsonFile);
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to create ndjson output - " + ndjsonFile.getName() + " - " + e.getMessage());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Ends a run - closes its single file output (central directory written and file moved into place)
+	 *
+	 * @return - false if the output could not be completed (reported to console), then nothing counts as written
+	 */
+	boolean close()
+	{
+		boolean complete = true;
+		if (zipWriter != null)
+		{
+			try
+			{
+				zipWriter.close();
+				System.out.println("Zip output: " + config.getOutputZip() + " - " + zipWriter.getEntries() + " recipes");
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to write zip output - " + e.getMessage());
+				complete = false;
+			}
+			zipWriter = null;
+		}
+		if (binaryWriter != null)
+		{
+			try
+			{
+				binaryWriter.close();
+				System.out.println("Binary output: " + config.getOutputBinary() + " - " + binaryWriter.getRecipes() + " recipes, "
+						+ binaryWriter.getUnits() + " units");
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to write binary output - " + e.getMessage());
+				complete = false;
+			}
+			binaryWriter = null;
+		}
+		if (ndjsonWriter != null)
+		{
+			try
+			{
+				ndjsonWriter.close();
+				System.out.println("NDJSON output: " + config.getOutputNdjson() + " - " + ndjsonWriter.getRecipes() + " recipes");
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to write ndjson output - " + e.getMessage());
+				complete = false;
+			}
+			ndjsonWriter = null;
+		}
+		manifest = null;
+		hashCache = null;
+		registry = null;
+		return complete;
+	}
+
+	/**
+	 * @return - true if recipes go to a binary output (written from the recipe, not marshalled)
+	 */
+	boolean isBinary() {
+		return binaryWriter != null;
+	}
+
+	/**
+	 * Writes item's xml / json (or recipe, for binary output), releasing any pooled buffers it holds
+	 *
+	 * @param item - marshalled recipe
+	 * @param outputDir - output directory
+	 * @return - true if written (or already on disk as is)
+	 */
+	boolean write(RecipeWorkItem item, File outputDir)
+	{
+		//Not recorded in the manifest, {id}.xml belongs to the first input
+		if (item.isDiverted())
+			return writeDiverted(item, outputDir);
+
+		int id = item.getRecipe().getId();
+		RecipeZipWriter zip = zipWriter;
+		RecipeBinaryWriter binary = binaryWriter;
+		RecipeNdjsonWriter ndjson = ndjsonWriter;
+		RecipeIdRegistry ids = registry;
+		boolean written;
+		if (binary != null)
+			written = writeBinary(binary, item.getRecipe());
+		else if (zip != null)
+			written = zip.write(id, item.getXml());
+		else if (ndjson != null)
+			written = ndjson.write(id, item.getXml());
+		else if (ids != null && ids.getPolicy() == DuplicateIdPolicy.NEWEST)
+		{
+			//Checked and written under the id's lock, so an input that lost the id to a newer one never overwrites it
+			synchronized (ids.lockFor(id))
+			{
+				if (ids.holds(id, item.getLastModified()))
+					written = writeFile(item, id, outputDir);
+				else
+				{
+					releaseDocument(item);
+					written = false;
+				}
+			}
+		}
+		else
+			written = writeFile(item, id, outputDir);
+		if (written)
+		{
+			RecipeManifest inputs = manifest;
+			if (inputs != null)
+				inputs.recordWritten(item.getManifestPath(), item.getSize(), item.getLastModified(), item.getContentHash(), id);
+			filesOutput.incrementAndGet();
+			return true;
+		}
+		//Failure reported by the writer (or by claim if the id was lost)
+		return false;
+	}
+
+	/**
+	 * {id}-{source}.xml, source name reduced to characters safe in a file name
+	 *
+	 * @param item - recipe with a duplicate id
+	 * @return - file name in the collisions directory
+	 */
+	String divertedName(RecipeWorkItem item)
+	{
+		String source = item.getSourceName() == null ? "unknown" : item.getSourceName().replaceAll("[^A-Za-z0-9._-]", "_");
+		return item.getRecipe().getId() + "-" + source + config.getOutputFormat().getExtension();
+	}
+
+	/**
+	 * {id}.xml or {id}.json, unless the hash cache shows it already holds the same content
+	 */
+	private boolean writeFile(RecipeWorkItem item, int id, File outputDir)
+	{
+		RecipeHashCache hashes = hashCache;
+		BufferedDocument document = item.getDocument();
+		boolean written;
+		try
+		{
+			//Hash of the bytes {id}.xml would hold
+			byte[] hash = hashes == null ? null : document != null ? RecipeHashCache.hash(document.getBuffers())
+					: RecipeHashCache.hash(item.getXml().getBytes(Charset.defaultCharset()));
+			if (hash != null && hashes.isUnchanged(id, hash, outputDir))
+				written = true;
+			else
+			{
+				written = document != null
+						? RecipeOutputWriter.writeFile(id, document, outputDir, config.getOutputFormat(), config.getFlushPolicy())
+						: RecipeOutputWriter.writeFile(id, item.getXml(), outputDir, config.getOutputFormat());
+				if (written && hash != null)
+					hashes.recordWritten(id, hash, outputDir);
+			}
+		}
+		finally
+		{
+			//Buffers back to the pool whether or not the write worked
+			releaseDocument(item);
+		}
+		return written;
+	}
+
+	/**
+	 * Duplicate id to collisions/{id}-{source}.xml in output dir
+	 */
+	private boolean writeDiverted(RecipeWorkItem item, File outputDir)
+	{
+		File collisionsDir = new File(outputDir, RecipeIdRegistry.COLLISIONS_DIR);
+		try
+		{
+			Files.createDirectories(collisionsDir.toPath());
+			File outputFile = new File(collisionsDir, divertedName(item));
+			BufferedDocument document = item.getDocument();
+			boolean written = document != null ? RecipeOutputWriter.writeFile(outputFile, document, config.getFlushPolicy())
+					: RecipeOutputWriter.writeFile(outputFile, item.getXml());
+			if (written)
+				filesOutput.incrementAndGet();
+			return written;
+		}
+		catch (IOException e)
+		{
+			Diagnostics.report(ReasonCode.WRITE_FAILED, collisionsDir.getName(), null, e.getMessage());
+			return false;
+		}
+		finally
+		{
+			releaseDocument(item);
+		}
+	}
+
+	private boolean writeBinary(RecipeBinaryWriter binary, Recipe recipe)
+	{
+		try
+		{
+			binary.write(recipe);
+			return true;
+		}
+		catch (IOException e)
+		{
+			Diagnostics.report(ReasonCode.WRITE_FAILED, config.getOutputBinary(), null, "Recipe " + recipe.getId() + " - " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static void releaseDocument(RecipeWorkItem item)
+	{
+		BufferedDocument document = item.getDocument();
+		if (document != null)
+		{
+			document.release();
+			item.setDocument(null);
+		}
+	}
+}
@@ -0,0 +1,664 @@
+package recipeparser.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.index.RecipeIndex;
+import recipeparser.input.RecipeArchiveReader;
+import recipeparser.input.RecipeBinaryReader;
+import recipeparser.input.RecipeBufferPool;
+import recipeparser.input.RecipeCorpusReader;
+import recipeparser.input.RecipeFileEnumerator;
+import recipeparser.input.RecipeFileReader;
+import recipeparser.output.BufferedDocument;
+import recipeparser.output.DirectBufferPool;
+import recipeparser.output.RecipeHashCache;
+import recipeparser.output.RecipeOutputWriter;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Staged read -> parse -> marshal -> write pipeline. Each stage has its own worker threads and
+ * a bounded queue in front of it, so stages overlap and at most a few queues' worth of
+ * recipes are held in memory at any time.
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipePipeline {
+
+	private final PipelineConfig config;
+	private final Queue<String> failedRecipes = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger filesOutput = new AtomicInteger();
+	private final RecipeOutputDispatcher output;
+	private List<PipelineStage> stages = Collections.emptyList();
+	private RecipeManifest manifest;
+	private DirectBufferPool bufferPool;
+	private RecipeHashCache hashCache;
+	private volatile RecipeIndex index;
+	//Claims of the run in progress, kept as lastRegistry once it ends (single files processed after are not checked)
+	private volatile RecipeIdRegistry registry;
+	private RecipeIdRegistry lastRegistry;
+	private volatile boolean inputComplete;
+
+	/**
+	 * Receives each work item to process, may block (eg. on a full queue)
+	 */
+	private interface ItemConsumer {
+		void accept(RecipeWorkItem item) throws InterruptedException;
+	}
+
+	public RecipePipeline(PipelineConfig config)
+	{
+		this.config = config;
+		this.output = new RecipeOutputDispatcher(config, filesOutput);
+	}
+
+	/**
+	 * Reads recipes from input dir (a directory, or an archive, corpus or binary file) and writes them to output
+	 * dir through the staged pipeline, or a thread per file if configured. When incremental, inputs unchanged
+	 * since the manifest was saved are skipped.
+	 *
+	 * @param inputDir - input directory or archive
+	 * @param outputDir - output directory
+	 * @return - successfully created xmls
+	 */
+	public int run(File inputDir, File outputDir)
+	{
+		//Counts and fails are per run when the pipeline is reused
+		filesOutput.set(0);
+		failedRecipes.clear();
+
+		//Previous run's inputs, only when incremental
+		boolean archive = config.isCorpus()
+				|| (inputDir.isFile() && (RecipeArchiveReader.isArchive(inputDir) || RecipeBinaryReader.isBinary(inputDir)));
+		if (archive && config.isIncremental())
+			System.out.println("Incremental runs not supported for archive, corpus or binary input, processing all entries");
+		if (!config.isXmlFileOutput() && config.isIncremental())
+			System.out.println("Incremental runs not supported with zip, binary, ndjson or json output, processing all files");
+		manifest = config.isIncremental() && !archive && config.isXmlFileOutput() ? loadManifest(outputDir) : null;
+		if (config.isSkipUnchanged() && !config.isXmlFileOutput())
+			System.out.println("Unchanged xml check not used with zip, binary, ndjson or json output");
+		hashCache = config.isSkipUnchanged() && config.isXmlFileOutput() ? loadHashCache(outputDir) : null;
+		inputComplete = false;
+		index = config.isIndex() ? new RecipeIndex() : null;
+		registry = config.getDuplicateIds() != null ? new RecipeIdRegistry(config.getDuplicateIds()) : null;
+		lastRegistry = null;
+
+		//Ids of last run's inputs stay held, inputs skipped as unchanged never claim them
+		RecipeIdRegistry ids = registry;
+		if (ids != null && manifest != null)
+			manifest.forEachPrevious((path, lastModified, id) -> ids.seed(id, lastModified));
+
+		//Zip, binary or ndjson file for the whole run
+		if (!output.open(outputDir, manifest, hashCache, registry))
+		{
+			output.close();
+			return 0;
+		}
+
+		//Marshal into pooled buffers, {id} files only
+		bufferPool = null;
+		if (config.isWriteBehind() && config.isSingleFileOutput())
+			System.out.println("Write-behind not used with zip, binary or ndjson output");
+		else if (config.isWriteBehind())
+			bufferPool = new DirectBufferPool(config.getWriteBuffers(), config.getWriteBufferSize());
+
+		try
+		{
+			if (config.isVirtualThreads())
+				runPerFile(inputDir, outputDir);
+			else
+				runStaged(inputDir, outputDir);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			System.out.println("Recipe pipeline interrupted");
+		}
+
+		//Report fails and queue depths to console, after any diagnostics still queued
+		Diagnostics.flush();
+		if (failedRecipes.size() != 0)
+			System.out.println("Failed to read " + failedRecipes.size() + " files");
+		for (PipelineStage stage : stages)
+			System.out.println(stage.report());
+		if (index != null)
+			System.out.println(index.report());
+		if (registry != null)
+		{
+			System.out.println(registry.report());
+			lastRegistry = registry;
+			registry = null;
+		}
+		if (bufferPool != null)
+			System.out.println("Write-behind: " + bufferPool.getAllocated() + " of " + bufferPool.getPoolSize() + " buffers of "
+					+ bufferPool.getBufferSize() / 1024 + "KB used, flush " + config.getFlushPolicy().name().toLowerCase(Locale.ROOT));
+
+		//Single file output moved into place, nothing this run counts as output if that fails
+		if (!output.close())
+			filesOutput.set(0);
+
+		//Remove outputs of deleted inputs and save manifest for next run
+		if (manifest != null)
+		{
+			try
+			{
+				manifest.finish(outputDir, inputComplete);
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to save manifest - " + e.getMessage());
+			}
+			System.out.println(manifest.report());
+		}
+
+		//Hashes of files written, after manifest has removed outputs of deleted inputs
+		if (hashCache != null)
+		{
+			try
+			{
+				hashCache.save(outputDir);
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to save hash cache - " + e.getMessage());
+			}
+			System.out.println(hashCache.report());
+		}
+
+		return filesOutput.get();
+	}
+
+	/**
+	 * Read, parse, marshal and write stages, each with its own threads and queue
+	 */
+	private void runStaged(File inputDir, File outputDir) throws InterruptedException
+	{
+		PipelineStage read = new PipelineStage("read", config.getReadThreads(), config.getQueueCapacity(),
+				item -> read(item, outputDir));
+		PipelineStage parse = new PipelineStage("parse", config.getParseThreads(), config.getQueueCapacity(), this::parse);
+		PipelineStage marshal = new PipelineStage("marshal", config.getMarshalThreads(), config.getQueueCapacity(), this::marshal);
+		PipelineStage write = new PipelineStage("write", config.getWriteThreads(), config.getQueueCapacity(),
+				item -> output.write(item, outputDir));
+		read.setNext(parse);
+		parse.setNext(marshal);
+		marshal.setNext(write);
+		stages = Arrays.asList(read, parse, marshal, write);
+
+		for (PipelineStage stage : stages)
+			stage.start();
+
+		//Feed input files to read stage, archive entries already read to parse stage, corpus recipes already
+		//parsed to marshal stage (blocks while queue is full)
+		forEachInput(inputDir, outputDir, item ->
+				(item.getRecipe() != null ? marshal : item.getContent() != null ? parse : read).submit(item));
+		read.finish();
+
+		//Each stage signals the next as it drains
+		for (PipelineStage stage : stages)
+			stage.await();
+	}
+
+	/**
+	 * One (virtual where available) thread per file to open and read it, with at most maxOpenFiles in progress
+	 * so open handles stay bounded. Parse, marshal and write then run on a fixed pool of parse thread count
+	 * platform threads, so the marshallers, scratch buffers and digests they keep per thread are reused rather
+	 * than built again for every file.
+	 */
+	private void runPerFile(File inputDir, File outputDir) throws InterruptedException
+	{
+		stages = Collections.emptyList();
+		if (!VirtualThreads.isAvailable())
+			System.out.println("Virtual threads need Java 21 or later, using platform threads");
+
+		Semaphore openFiles = new Semaphore(config.getMaxOpenFiles());
+		ExecutorService readers = VirtualThreads.newThreadPerTaskExecutor("recipe-file-");
+		AtomicInteger workerCount = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(config.getParseThreads(), runnable ->
+		{
+			Thread worker = new Thread(runnable, "recipe-worker-" + workerCount.getAndIncrement());
+			worker.setDaemon(true);
+			return worker;
+		});
+		try
+		{
+			forEachInput(inputDir, outputDir, item ->
+			{
+				//Blocks listing until a file finishes, rather than parking a thread per file
+				openFiles.acquire();
+				try
+				{
+					//Archive entries and corpus recipes are already read
+					if (item.getRecipe() != null || item.getContent() != null)
+						workers.execute(() -> processPerFile(item, outputDir, openFiles));
+					else
+						readers.execute(() -> readPerFile(item, outputDir, workers, openFiles));
+				}
+				catch (RuntimeException e)
+				{
+					openFiles.release();
+					throw e;
+				}
+			});
+		}
+		finally
+		{
+			//Readers first, they hand their files on to the workers
+			readers.shutdown();
+			readers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			workers.shutdown();
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Blocking open and read on the file's own thread, then on to a worker
+	 */
+	private void readPerFile(RecipeWorkItem item, File outputDir, ExecutorService workers, Semaphore openFiles)
+	{
+		boolean handedOn = false;
+		try
+		{
+			if (read(item, outputDir))
+			{
+				workers.execute(() -> processPerFile(item, outputDir, openFiles));
+				handedOn = true;
+			}
+		}
+		catch (Throwable e)
+		{
+			failedRecipes.add(item.getSourceName());
+			Diagnostics.report(ReasonCode.PROCESS_FAILED, item.getSourceName(), null, e.toString());
+		}
+		finally
+		{
+			if (!handedOn)
+				openFiles.release();
+		}
+	}
+
+	/**
+	 * Parse (unless already parsed), marshal and write on a worker
+	 */
+	private void processPerFile(RecipeWorkItem item, File outputDir, Semaphore openFiles)
+	{
+		try
+		{
+			boolean parsed = item.getRecipe() != null || parse(item);
+			if (parsed && marshal(item))
+				output.write(item, outputDir);
+		}
+		catch (Throwable e)
+		{
+			failedRecipes.add(item.getSourceName());
+			Diagnostics.report(ReasonCode.PROCESS_FAILED, item.getSourceName(), null, e.toString());
+		}
+		finally
+		{
+			openFiles.release();
+		}
+	}
+
+	/**
+	 * Streams a work item for each recipe file under input dir to consumer as the directory is listed, or
+	 * for each archive entry as it is decompressed, or for each corpus recipe as it is parsed (from pool threads),
+	 * or for each recipe of a binary file as it is read. Archive entries are already read, corpus and binary
+	 * recipes already parsed.
+	 */
+	private void forEachInput(File inputDir, File outputDir, ItemConsumer consumer) throws InterruptedException
+	{
+		if (config.isCorpus())
+		{
+			ForkJoinPool pool = new ForkJoinPool(config.getParseThreads());
+			try
+			{
+				new RecipeCorpusReader(inputDir, pool).forEachRecipe((name, recipe) ->
+				{
+					if (recipe == null)
+					{
+						failedRecipes.add(name);
+						return;
+					}
+					RecipeWorkItem item = new RecipeWorkItem(name, null);
+					item.setRecipe(recipe);
+					consumer.accept(item);
+				});
+				inputComplete = true;
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to read corpus - " + e.getMessage());
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+			return;
+		}
+
+		if (inputDir.isFile() && RecipeBinaryReader.isBinary(inputDir))
+		{
+			try (RecipeBinaryReader reader = new RecipeBinaryReader(inputDir))
+			{
+				Recipe recipe;
+				for (int index=0; (recipe = reader.read()) != null; index++)
+				{
+					RecipeWorkItem item = new RecipeWorkItem(inputDir.getName() + "#" + index, null);
+					item.setRecipe(recipe);
+					consumer.accept(item);
+				}
+				inputComplete = true;
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to read binary input - " + e.getMessage());
+			}
+			return;
+		}
+
+		RecipeFileEnumerator enumerator = config.createEnumerator();
+		if (inputDir.isFile() && RecipeArchiveReader.isArchive(inputDir))
+		{
+			try
+			{
+				RecipeArchiveReader.forEachEntry(inputDir, enumerator, (name, content) ->
+				{
+					//Unreadable entry already reported, the rest of the archive carries on
+					if (content == null)
+					{
+						failedRecipes.add(name);
+						return;
+					}
+					consumer.accept(new RecipeWorkItem(name, content));
+				});
+				inputComplete = true;
+			}
+			catch (IOException e)
+			{
+				System.out.println("Failed to read input archive - " + e.getMessage());
+			}
+			return;
+		}
+
+		try
+		{
+			enumerator.forEach(inputDir, child ->
+			{
+				RecipeWorkItem item = createItem(inputDir, outputDir, child);
+				if (item != null)
+					consumer.accept(item);
+			});
+			inputComplete = true;
+		}
+		catch (IOException e)
+		{
+			System.out.println("Failed to list input directory - " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads, parses, marshals and writes a single file on the calling thread, with the same stage
+	 * functions (and so the same warmed-up marshallers) as a full run
+	 *
+	 * @param source - recipe file
+	 * @param outputDir - output directory
+	 * @return - recipe id written, or -1 if failed
+	 */
+	public int process(File source, File outputDir)
+	{
+		RecipeWorkItem item = new RecipeWorkItem(source);
+		if (read(item, outputDir) && parse(item) && marshal(item) && output.write(item, outputDir))
+			return item.getRecipe().getId();
+		return -1;
+	}
+
+	/**
+	 * Work item for input file, null if manifest shows it unchanged since the last run
+	 */
+	private RecipeWorkItem createItem(File inputDir, File outputDir, File source)
+	{
+		RecipeWorkItem item = new RecipeWorkItem(source);
+		if (manifest != null)
+		{
+			//Size and last modified taken before reading, so a file changed mid-run is picked up next time
+			item.setManifestPath(RecipeManifest.key(inputDir, source));
+			item.setSize(source.length());
+			item.setLastModified(source.lastModified());
+			if (manifest.isUnchanged(item.getManifestPath(), item.getSize(), item.getLastModified(), outputDir))
+				return null;
+		}
+		else if (config.getDuplicateIds() == DuplicateIdPolicy.NEWEST)
+			item.setLastModified(source.lastModified());
+		return item;
+	}
+
+	/**
+	 * Manifest from output dir, empty (everything processed) if unreadable
+	 */
+	private static RecipeManifest loadManifest(File outputDir)
+	{
+		try
+		{
+			return RecipeManifest.load(outputDir);
+		}
+		catch (IOException e)
+		{
+			System.out.println("Failed to read manifest, processing all files - " + e.getMessage());
+			return RecipeManifest.empty(outputDir);
+		}
+	}
+
+	/**
+	 * Hash cache from output dir, empty (everything written) if unreadable
+	 */
+	private static RecipeHashCache loadHashCache(File outputDir)
+	{
+		try
+		{
+			return RecipeHashCache.load(outputDir);
+		}
+		catch (IOException e)
+		{
+			System.out.println("Failed to read hash cache, writing all files - " + e.getMessage());
+			return RecipeHashCache.empty(outputDir);
+		}
+	}
+
+	/**
+	 * Read stage - raw file content (dropped if content unchanged since last incremental run)
+	 */
+	private boolean read(RecipeWorkItem item, File outputDir)
+	{
+		ByteBuffer content = RecipeFileReader.readRecipeFile(item.getSource());
+		if (content == null)
+		{
+			failedRecipes.add(item.getSourceName());
+			return false;
+		}
+
+		if (manifest != null)
+		{
+			CRC32 crc = new CRC32();
+			crc.update(content.duplicate());
+			item.setContentHash(crc.getValue());
+			if (manifest.isUnchangedContent(item.getManifestPath(), item.getSize(), item.getLastModified(),
+					item.getContentHash(), outputDir))
+			{
+				RecipeBufferPool.release(content);
+				return false;
+			}
+		}
+		item.setContent(content);
+		return true;
+	}
+
+	/**
+	 * Parse stage - content to recipe
+	 */
+	private boolean parse(RecipeWorkItem item)
+	{
+		Recipe recipe;
+		try
+		{
+			recipe = RecipeFileReader.parseRecipe(item.getContent(), item.getSourceName());
+		}
+		finally
+		{
+			RecipeBufferPool.release(item.getContent());
+			item.setContent(null);
+		}
+		if (recipe == null)
+		{
+			failedRecipes.add(item.getSourceName());
+			return false;
+		}
+		item.setRecipe(recipe);
+		return true;
+	}
+
+	/**
+	 * Marshal stage - recipe to xml or json (or to pooled buffers for write-behind)
+	 */
+	private boolean marshal(RecipeWorkItem item)
+	{
+		//Every parsed recipe passes here, whatever the input
+		if (!claim(item))
+			return false;
+		RecipeIndex recipeIndex = index;
+		if (recipeIndex != null && !item.isDiverted())
+			recipeIndex.add(item.getRecipe());
+
+		//Binary output written from the recipe itself
+		if (output.isBinary())
+			return true;
+
+		//Failure reported by marshalRecipe
+		DirectBufferPool pool = bufferPool;
+		if (pool != null)
+		{
+			BufferedDocument document = RecipeOutputWriter.marshalRecipe(item.getRecipe(), config.getSerializer(), pool);
+			if (document == null)
+				return false;
+			item.setDocument(document);
+			return true;
+		}
+		String xml = RecipeOutputWriter.marshalRecipe(item.getRecipe(), config.getSerializer());
+		if (xml == null)
+			return false;
+		item.setXml(xml);
+		return true;
+	}
+
+	/**
+	 * Claims recipe's id, false if it is a duplicate to drop (reported either way). An input that produced the
+	 * id last run (incremental) already holds it.
+	 */
+	private boolean claim(RecipeWorkItem item)
+	{
+		RecipeIdRegistry ids = registry;
+		if (ids == null)
+			return true;
+
+		int id = item.getRecipe().getId();
+		RecipeManifest inputs = manifest;
+		boolean holder = inputs != null && item.getManifestPath() != null && inputs.producedLastRun(item.getManifestPath(), id);
+		switch (ids.getPolicy())
+		{
+		case NEWEST:
+			//Changed since last run - its own seeded claim is not a duplicate, a newer input's is
+			if (holder)
+				ids.release(id, inputs.getPreviousLastModified(item.getManifestPath()));
+			int result = ids.claimNewest(id, item.getLastModified());
+			if (result == RecipeIdRegistry.STALE)
+			{
+				reportDuplicate(item, id, "not newer than the input holding it, dropped");
+				return false;
+			}
+			if (result == RecipeIdRegistry.REPLACED)
+				reportDuplicate(item, id, "newer than the input holding it, replaces it");
+			return true;
+		case DIVERT:
+			if (!holder && !ids.claim(id))
+			{
+				item.setDiverted(true);
+				reportDuplicate(item, id, "written to " + RecipeIdRegistry.COLLISIONS_DIR + "/" + output.divertedName(item));
+			}
+			return true;
+		default:
+			if (holder || ids.claim(id))
+				return true;
+			reportDuplicate(item, id, "already claimed, dropped");
+			return false;
+		}
+	}
+
+	private void reportDuplicate(RecipeWorkItem item, int id, String outcome)
+	{
+		Diagnostics.report(ReasonCode.DUPLICATE_ID, item.getSourceName(), "id", id + " " + outcome);
+	}
+
+	/**
+	 * @return - hash cache of last run, null unless skipping unchanged xml
+	 */
+	public RecipeHashCache getHashCache() {
+		return hashCache;
+	}
+
+	/**
+	 * @return - index of recipes parsed in last run, null unless indexing
+	 */
+	public RecipeIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return - id claims of last run, null unless checking duplicate ids
+	 */
+	public RecipeIdRegistry getIdRegistry() {
+		return registry != null ? registry : lastRegistry;
+	}
+
+	/**
+	 * @return - stages of last run (read, parse, marshal, write)
+	 */
+	public List<PipelineStage> getStages() {
+		return stages;
+	}
+
+	/**
+	 * @return - xml files written by last run, and single files processed by this pipeline since
+	 */
+	public int getFilesOutput() {
+		return filesOutput.get();
+	}
+
+	/**
+	 * @return - manifest of last run, null unless incremental
+	 */
+	public RecipeManifest getManifest() {
+		return manifest;
+	}
+
+	/**
+	 * @return - names of files that failed to read or parse in last run
+	 */
+	public Queue<String> getFailedRecipes() {
+		return failedRecipes;
+	}
+}
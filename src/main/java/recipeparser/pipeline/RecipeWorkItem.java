@@ -0,0 +1,110 @@
+package recipeparser.pipeline;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import recipeparser.output.BufferedDocument;
+import recipeparser.recipe.Recipe;
+
+/**
+ * Single recipe file as it moves through the pipeline, each stage fills in the next field
+ *
+ * @author NicholasChristou
+ *
+ */
+public class RecipeWorkItem {
+
+	private final File source;
+	private final String sourceName;
+	private String manifestPath;
+	private long size;
+	private long lastModified;
+	private long contentHash;
+	private ByteBuffer content;
+	private Recipe recipe;
+	//Marshalled xml (or json)
+	private String xml;
+	private BufferedDocument document;
+	//Duplicate id written to the collisions directory
+	private boolean diverted;
+
+	public RecipeWorkItem(File source)
+	{
+		this.source = source;
+		this.sourceName = source != null ? source.getName() : null;
+	}
+
+	/**
+	 * Item already holding its content (eg. archive entry), starts at the parse stage
+	 *
+	 * @param sourceName - name for reporting
+	 * @param content - recipe file content
+	 */
+	public RecipeWorkItem(String sourceName, ByteBuffer content)
+	{
+		this.source = null;
+		this.sourceName = sourceName;
+		this.content = content;
+	}
+
+	public File getSource() {
+		return source;
+	}
+	public String getSourceName() {
+		return sourceName;
+	}
+	public String getManifestPath() {
+		return manifestPath;
+	}
+	public void setManifestPath(String manifestPath) {
+		this.manifestPath = manifestPath;
+	}
+	public long getSize() {
+		return size;
+	}
+	public void setSize(long size) {
+		this.size = size;
+	}
+	public long getLastModified() {
+		return lastModified;
+	}
+	public void setLastModified(long lastModified) {
+		this.lastModified = lastModified;
+	}
+	public long getContentHash() {
+		return contentHash;
+	}
+	public void setContentHash(long contentHash) {
+		this.contentHash = contentHash;
+	}
+	public ByteBuffer getContent() {
+		return content;
+	}
+	public void setContent(ByteBuffer content) {
+		this.content = content;
+	}
+	public Recipe getRecipe() {
+		return recipe;
+	}
+	public void setRecipe(Recipe recipe) {
+		this.recipe = recipe;
+	}
+	public String getXml() {
+		return xml;
+	}
+	public void setXml(String xml) {
+		this.xml = xml;
+	}
+	public BufferedDocument getDocument() {
+		return document;
+	}
+	public void setDocument(BufferedDocument document) {
+		this.document = document;
+	}
+	public boolean isDiverted() {
+		return diverted;
+	}
+	public void setDiverted(boolean diverted) {
+		this.diverted = diverted;
+	}
+}
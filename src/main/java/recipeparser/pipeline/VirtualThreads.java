@@ -0,0 +1,80 @@
+package recipeparser.pipeline;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread per task executors, on virtual threads when running on Java 21 or later.
+ *
+ * Looked up reflectively so the app still builds and runs on Java 8. On older runtimes (or where virtual
+ * threads are a disabled preview) a cached pool of daemon platform threads is used instead - callers
+ * bound the number of tasks in flight themselves.
+ *
+ * @author NicholasChristou
+ *
+ */
+public final class VirtualThreads {
+
+	private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+	private VirtualThreads()
+	{
+	}
+
+	/**
+	 * @return - true if virtual threads can be used on this runtime
+	 */
+	public static boolean isAvailable()
+	{
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	/**
+	 * @param platformThreadPrefix - thread name prefix for the platform thread fallback
+	 * @return - executor starting a new (virtual where available) thread per task
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String platformThreadPrefix)
+	{
+		if (NEW_VIRTUAL_EXECUTOR != null)
+		{
+			try
+			{
+				return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+			}
+			catch (IllegalAccessException | InvocationTargetException e)
+			{
+				//Fall through to platform threads
+			}
+		}
+
+		AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(runnable ->
+		{
+			Thread thread = new Thread(runnable, platformThreadPrefix + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor, if present and usable
+	 */
+	private static Method findVirtualExecutorFactory()
+	{
+		try
+		{
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+			//Java 19/20 have it as a preview, which throws unless enabled
+			((ExecutorService) method.invoke(null)).shutdown();
+			return method;
+		}
+		catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e)
+		{
+			return null;
+		}
+	}
+}
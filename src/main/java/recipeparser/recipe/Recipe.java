@@ -138,6 +138,17 @@ public class Recipe {
         this.metadata = value;
     }
 
+    /**
+     * Checks the metadata property is set, without creating it.
+     * 
+     * @return
+     *     true if the metadata property is not null
+     *     
+     */
+    public boolean isSetMetadata() {
+        return (this.metadata!= null);
+    }
+
     /**
      * Gets the value of the content property.
      * 
@@ -164,6 +175,17 @@ public class Recipe {
         this.content = value;
     }
 
+    /**
+     * Checks the content property is set, without creating it.
+     * 
+     * @return
+     *     true if the content property is not null
+     *     
+     */
+    public boolean isSetContent() {
+        return (this.content!= null);
+    }
+
     /**
      * Gets the value of the id property.
      * 
@@ -307,6 +329,17 @@ public class Recipe {
             this.ingredients = value;
         }
 
+        /**
+         * Checks the ingredients property is set, without creating it.
+         * 
+         * @return
+         *     true if the ingredients property is not null
+         *     
+         */
+        public boolean isSetIngredients() {
+            return (this.ingredients!= null);
+        }
+
         /**
          * Gets the value of the method property.
          * 
@@ -333,6 +366,17 @@ public class Recipe {
             this.method = value;
         }
 
+        /**
+         * Checks the method property is set, without creating it.
+         * 
+         * @return
+         *     true if the method property is not null
+         *     
+         */
+        public boolean isSetMethod() {
+            return (this.method!= null);
+        }
+
 
         /**
          * <p>Java class for anonymous complex type.
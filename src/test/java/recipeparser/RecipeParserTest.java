@@ -1,26 +1,83 @@
 package recipeparser;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Collections;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import recipeparser.diagnostics.Diagnostics;
+import recipeparser.diagnostics.ReasonCode;
+import recipeparser.index.RecipeIndex;
+import recipeparser.input.CreatedDateParser;
+import recipeparser.input.NumberScanner;
+import recipeparser.input.RecipeArchiveReader;
+import recipeparser.input.RecipeBinaryReader;
+import recipeparser.input.RecipeBufferPool;
+import recipeparser.input.RecipeFileEnumerator;
 import recipeparser.input.RecipeFileReader;
 import recipeparser.input.RecipeFileReaderUtils;
+import recipeparser.input.StringInterner;
+import recipeparser.input.UnitOfMeasureLexicon;
+import recipeparser.metrics.LatencyHistogram;
+import recipeparser.metrics.RecipeMetrics;
+import recipeparser.output.BufferedDocument;
+import recipeparser.output.RecipeBinaryWriter;
+import recipeparser.output.DirectBufferPool;
+import recipeparser.output.OutputFormat;
+import recipeparser.output.RecipeHashCache;
+import recipeparser.output.RecipeMarshallerPool;
 import recipeparser.output.RecipeOutputWriter;
+import recipeparser.output.RecipeSerializer;
+import recipeparser.output.RecipeZipWriter;
+import recipeparser.output.XmlBackend;
+import recipeparser.pipeline.DuplicateIdPolicy;
+import recipeparser.pipeline.PipelineConfig;
+import recipeparser.pipeline.PipelineStage;
+import recipeparser.pipeline.RecipeDirectoryWatcher;
+import recipeparser.pipeline.RecipeIdRegistry;
+import recipeparser.pipeline.RecipeManifest;
+import recipeparser.pipeline.RecipePipeline;
 import recipeparser.recipe.MetaDataAndId;
 import recipeparser.recipe.ObjectFactory;
 import recipeparser.recipe.Recipe;
@@ -31,16 +88,963 @@ import recipeparser.recipe.Recipe.Metadata;
 public class RecipeParserTest {
 
 private static File testResourceDir = new File("src/test/resources");
-private static File testResourceOutputDir = new File("src/test/resources/Output");
+
+	//Scratch input and output dirs, deleted after each test
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
 
 	
 	/**
 	 * Assert correct number of files output
 	 */
 	@Test
-	public void processFilesTest() 
+	public void processFilesTest() throws IOException
+	{
+		assertEquals("Expected 5 files output", 5, RecipeParser.processFiles(testResourceDir, temp.newFolder("recipe-out")));
+	}
+	
+	/**
+	 * Assert pipeline output and stage counts with single threads and minimal queues (forces back-pressure)
+	 */
+	@Test
+	public void pipelineStagesTest() throws IOException
+	{
+		PipelineConfig config = new PipelineConfig();
+		config.setReadThreads(1);
+		config.setParseThreads(1);
+		config.setMarshalThreads(1);
+		config.setWriteThreads(1);
+		config.setQueueCapacity(1);
+		
+		RecipePipeline pipeline = new RecipePipeline(config);
+		assertEquals("Expected 5 files output", 5, pipeline.run(testResourceDir, temp.newFolder("recipe-stages-out")));
+		
+		//read, parse, marshal, write
+		assertEquals("Expect 4 stages", 4, pipeline.getStages().size());
+		for (PipelineStage stage : pipeline.getStages())
+		{
+			assertEquals("Expect every file through " + stage.getName(), 5, stage.getProcessed());
+			assertTrue("Expect queue depth within capacity", stage.getMaxQueueDepth() <= 1);
+		}
+		assertTrue("Expect no failures", pipeline.getFailedRecipes().isEmpty());
+		
+		//Reused pipeline counts and fails each run on its own
+		File inputDir = temp.newFolder("recipe-stages-in");
+		Files.copy(new File(testResourceDir, "62.txt").toPath(), new File(inputDir, "62.txt").toPath());
+		Files.write(new File(inputDir, "bad.txt").toPath(), "NONSENSE DATA".getBytes(StandardCharsets.UTF_8));
+		for (int run = 0; run < 2; run++)
+		{
+			assertEquals("Expected 1 file output", 1, pipeline.run(inputDir, temp.newFolder()));
+			assertEquals("Expect written count of this run", 1, pipeline.getFilesOutput());
+			assertEquals("Expect bad.txt failed once", Arrays.asList("bad.txt"), new ArrayList<>(pipeline.getFailedRecipes()));
+		}
+	}
+	
+	/**
+	 * Assert incremental runs skip unchanged inputs, reprocess changed ones and remove outputs of deleted ones
+	 */
+	@Test
+	public void incrementalManifestTest() throws IOException
+	{
+		File inputDir = temp.newFolder("recipe-in");
+		File outputDir = temp.newFolder("recipe-out");
+		File lemon = new File(inputDir, "1_LemonCake.txt");
+		File sponge = new File(inputDir, "21_SpongeCake.txt");
+		Files.copy(new File(testResourceDir, lemon.getName()).toPath(), lemon.toPath());
+		Files.copy(new File(testResourceDir, sponge.getName()).toPath(), sponge.toPath());
+		
+		PipelineConfig config = new PipelineConfig();
+		config.setIncremental(true);
+		
+		//First run writes everything
+		RecipePipeline first = new RecipePipeline(config);
+		assertEquals("Expect 2 files output", 2, first.run(inputDir, outputDir));
+		assertEquals("Expect 2 processed", 2, first.getManifest().getProcessed());
+		assertTrue("Expect manifest", new File(outputDir, RecipeManifest.FILE_NAME).isFile());
+		
+		//Nothing changed
+		RecipePipeline second = new RecipePipeline(config);
+		assertEquals("Expect no files output", 0, second.run(inputDir, outputDir));
+		assertEquals("Expect 2 skipped", 2, second.getManifest().getSkipped());
+		
+		//Touched only (content hash matches), and content changed
+		assertTrue(lemon.setLastModified(lemon.lastModified() - 60000));
+		Files.write(sponge.toPath(), new String(Files.readAllBytes(sponge.toPath()), StandardCharsets.UTF_8)
+				.replace("Sponge Cake", "Sponge Cakes").getBytes(StandardCharsets.UTF_8));
+		RecipePipeline third = new RecipePipeline(config);
+		assertEquals("Expect 1 file output", 1, third.run(inputDir, outputDir));
+		assertEquals("Expect 1 skipped", 1, third.getManifest().getSkipped());
+		assertEquals("Expect 1 reprocessed", 1, third.getManifest().getProcessed());
+		
+		//Input removed, its xml goes too
+		assertTrue(sponge.delete());
+		RecipePipeline fourth = new RecipePipeline(config);
+		fourth.run(inputDir, outputDir);
+		assertEquals("Expect 1 removed", 1, fourth.getManifest().getRemoved());
+		assertTrue("Expect xml kept", new File(outputDir, "1.xml").isFile());
+		assertTrue("Expect xml removed", !new File(outputDir, "21.xml").exists());
+		
+		//Output deleted by hand is written again
+		assertTrue(new File(outputDir, "1.xml").delete());
+		assertEquals("Expect 1 file output", 1, new RecipePipeline(config).run(inputDir, outputDir));
+	}
+	
+	/**
+	 * Assert watch mode picks up existing files at start and new files as they land
+	 */
+	@Test
+	public void directoryWatcherTest() throws Exception
+	{
+		File inputDir = temp.newFolder("recipe-watch-in");
+		File outputDir = temp.newFolder("recipe-watch-out");
+		Files.copy(new File(testResourceDir, "1_LemonCake.txt").toPath(), new File(inputDir, "1_LemonCake.txt").toPath());
+		
+		RecipeDirectoryWatcher watcher = new RecipeDirectoryWatcher(inputDir, outputDir, new PipelineConfig(), 20);
+		Thread watchThread = new Thread(() ->
+		{
+			try
+			{
+				watcher.run();
+			}
+			catch (IOException | InterruptedException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+		watchThread.start();
+		try
+		{
+			//Existing file from start-up scan
+			assertTrue("Expect 1.xml", waitForFile(new File(outputDir, "1.xml")));
+			
+			//New file, written in two parts
+			File sponge = new File(inputDir, "21_SpongeCake.txt");
+			byte[] content = Files.readAllBytes(new File(testResourceDir, sponge.getName()).toPath());
+			Files.write(sponge.toPath(), Arrays.copyOf(content, 20));
+			Files.write(sponge.toPath(), content);
+			assertTrue("Expect 21.xml", waitForFile(new File(outputDir, "21.xml")));
+			
+			//Non txt ignored
+			Files.write(new File(inputDir, "notes.md").toPath(), content);
+			
+			//Deleted file forgotten
+			for (int i=0; i<1000 && watcher.getTracked() != 2; i++)
+				Thread.sleep(10);
+			assertEquals("Expect both tracked", 2, watcher.getTracked());
+			assertTrue(new File(inputDir, "1_LemonCake.txt").delete());
+			for (int i=0; i<1000 && watcher.getTracked() != 1; i++)
+				Thread.sleep(10);
+			assertEquals("Expect only sponge cake tracked", 1, watcher.getTracked());
+		}
+		finally
+		{
+			watcher.close();
+			watchThread.join(10000);
+		}
+		assertEquals("Expect 2 files output", 2, watcher.getFilesOutput());
+		assertEquals("Expect 1 scan", 1, watcher.getScans());
+		assertTrue("Expect no failures", watcher.getFailedRecipes().isEmpty());
+		
+		//Same filters and subdirectories as a run, including directories created while watching
+		File treeDir = temp.newFolder("recipe-watch-tree");
+		File treeOutputDir = temp.newFolder("recipe-watch-tree-out");
+		File sub = new File(treeDir, "sub");
+		File archive = new File(treeDir, "archive");
+		assertTrue(sub.mkdir() && archive.mkdir());
+		Files.copy(new File(testResourceDir, "21_SpongeCake.txt").toPath(), new File(sub, "21_SpongeCake.txt").toPath());
+		PipelineConfig config = RecipeParserOptions.parse(new String[] { "--recursive", "--exclude=draft_*,archive" }, 0).toPipelineConfig();
+		RecipeDirectoryWatcher treeWatcher = new RecipeDirectoryWatcher(treeDir, treeOutputDir, config, 20);
+		Thread treeThread = new Thread(() ->
+		{
+			try
+			{
+				treeWatcher.run();
+			}
+			catch (IOException | InterruptedException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+		treeThread.start();
+		try
+		{
+			assertTrue("Expect 21.xml from subdirectory", waitForFile(new File(treeOutputDir, "21.xml")));
+			File later = new File(treeDir, "later");
+			assertTrue(later.mkdir());
+			Files.copy(new File(testResourceDir, "62.txt").toPath(), new File(later, "62.txt").toPath());
+			Files.copy(new File(testResourceDir, "1_LemonCake.txt").toPath(), new File(later, "draft_1.txt").toPath());
+			Files.copy(new File(testResourceDir, "1_LemonCake.txt").toPath(), new File(archive, "1_LemonCake.txt").toPath());
+			assertTrue("Expect 62.xml from new subdirectory", waitForFile(new File(treeOutputDir, "62.xml")));
+			
+			//Written after the excluded files, so they would have been processed by now
+			Files.copy(new File(testResourceDir, "951_Bakewell.txt").toPath(), new File(later, "951_Bakewell.txt").toPath());
+			assertTrue("Expect 951.xml", waitForFile(new File(treeOutputDir, "951.xml")));
+		}
+		finally
+		{
+			treeWatcher.close();
+			treeThread.join(10000);
+		}
+		assertTrue("Expect excluded file and directory skipped", !new File(treeOutputDir, "1.xml").exists());
+		assertEquals("Expect 3 files output", 3, treeWatcher.getFilesOutput());
+	}
+	
+	/**
+	 * Polls for file to appear, up to 10 seconds
+	 */
+	private static boolean waitForFile(File file) throws InterruptedException
+	{
+		for (int i=0; i<1000 && !file.isFile(); i++)
+			Thread.sleep(10);
+		return file.isFile();
+	}
+	
+	/**
+	 * Assert thread per file mode output, and failures collected
+	 */
+	@Test
+	public void virtualThreadsTest() throws IOException
 	{
-		assertEquals("Expected 5 files output", 5, RecipeParser.processFiles(testResourceDir, testResourceOutputDir));
+		PipelineConfig config = new PipelineConfig();
+		config.setVirtualThreads(true);
+		config.setMaxOpenFiles(2);
+		config.setParseThreads(1);
+		
+		RecipePipeline pipeline = new RecipePipeline(config);
+		int marshallers = RecipeMarshallerPool.getCreated();
+		assertEquals("Expected 5 files output", 5, pipeline.run(testResourceDir, temp.newFolder("recipe-vt-all")));
+		assertTrue("Expect no stages", pipeline.getStages().isEmpty());
+		assertTrue("Expect no failures", pipeline.getFailedRecipes().isEmpty());
+		assertEquals("Expect one marshaller for the one worker, not one per file", 1, RecipeMarshallerPool.getCreated() - marshallers);
+		
+		//Invalid file reported
+		File inputDir = temp.newFolder("recipe-vt-in");
+		File outputDir = temp.newFolder("recipe-vt-out");
+		Files.copy(new File(testResourceDir, "62.txt").toPath(), new File(inputDir, "62.txt").toPath());
+		Files.write(new File(inputDir, "bad.txt").toPath(), "NONSENSE DATA".getBytes(StandardCharsets.UTF_8));
+		RecipePipeline withFailure = new RecipePipeline(config);
+		assertEquals("Expected 1 file output", 1, withFailure.run(inputDir, outputDir));
+		assertTrue("Expect bad.txt failed", withFailure.getFailedRecipes().contains("bad.txt"));
+	}
+	
+	/**
+	 * Assert input enumeration filters, recursion and option list parsing
+	 */
+	@Test
+	public void recipeFileEnumeratorTest() throws Exception
+	{
+		File inputDir = temp.newFolder("recipe-enum");
+		File sub = new File(inputDir, "sub");
+		File archive = new File(inputDir, "archive");
+		assertTrue(sub.mkdir() && archive.mkdir());
+		Files.copy(new File(testResourceDir, "1_LemonCake.txt").toPath(), new File(inputDir, "1_LemonCake.txt").toPath());
+		Files.copy(new File(testResourceDir, "21_SpongeCake.txt").toPath(), new File(sub, "21_SpongeCake.txt").toPath());
+		Files.copy(new File(testResourceDir, "62.txt").toPath(), new File(sub, "draft_62.txt").toPath());
+		Files.copy(new File(testResourceDir, "cc.txt").toPath(), new File(archive, "cc.txt").toPath());
+		Files.write(new File(inputDir, "notes.md").toPath(), "notes".getBytes(StandardCharsets.UTF_8));
+		
+		//Default - txt in directory itself
+		List<String> names = new ArrayList<>();
+		assertEquals("Expect 1 file", 1, RecipeFileEnumerator.txtFiles().forEach(inputDir, f -> names.add(f.getName())));
+		assertEquals("Expect lemon cake", "1_LemonCake.txt", names.get(0));
+		
+		//Recursive, excluded file and directory names
+		RecipeParserOptions options = RecipeParserOptions.parse(new String[] { "--recursive", "--include=*.{txt,TXT}", "--exclude=draft_*,archive" }, 0);
+		assertEquals("Expect brace comma kept", Arrays.asList("*.{txt,TXT}"), options.getList("include"));
+		PipelineConfig config = options.toPipelineConfig();
+		names.clear();
+		config.createEnumerator().forEach(inputDir, f -> names.add(f.getName()));
+		Collections.sort(names);
+		assertEquals("Expect 2 files", Arrays.asList("1_LemonCake.txt", "21_SpongeCake.txt"), names);
+		
+		//Pipeline reads from subdirectories
+		File outputDir = temp.newFolder("recipe-enum-out");
+		assertEquals("Expect 2 files output", 2, new RecipePipeline(config).run(inputDir, outputDir));
+		assertTrue("Expect 21.xml", new File(outputDir, "21.xml").isFile());
+	}
+	
+	/**
+	 * Verify recipes read from zip and tar.gz archives match those read from files
+	 */
+	@Test
+	public void archiveInputTest() throws IOException, InterruptedException
+	{
+		File dir = temp.newFolder("recipe-archive");
+		byte[] lemonCake = Files.readAllBytes(new File(testResourceDir, "1_LemonCake.txt").toPath());
+		byte[] bakewell = Files.readAllBytes(new File(testResourceDir, "951_Bakewell.txt").toPath());
+		
+		//Long directory so tar name needs the ustar prefix
+		String longDir = "drop/" + String.join("/", Collections.nCopies(12, "recipes")) + "/";
+		File zip = new File(dir, "recipes.zip");
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip)))
+		{
+			out.putNextEntry(new ZipEntry("drop/"));
+			out.putNextEntry(new ZipEntry("drop/1_LemonCake.txt"));
+			out.write(lemonCake);
+			out.putNextEntry(new ZipEntry(longDir + "951_Bakewell.txt"));
+			out.write(bakewell);
+			out.putNextEntry(new ZipEntry("drop/readme.md"));
+			out.write("notes".getBytes(StandardCharsets.UTF_8));
+		}
+		File tar = new File(dir, "recipes.tar.gz");
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tar)))
+		{
+			writeTarEntry(out, "drop/1_LemonCake.txt", lemonCake);
+			writeTarEntry(out, longDir + "951_Bakewell.txt", bakewell);
+			writeTarEntry(out, "drop/readme.md", "notes".getBytes(StandardCharsets.UTF_8));
+			out.write(new byte[1024]);
+		}
+		
+		File expectedDir = temp.newFolder("recipe-archive-expected");
+		assertEquals("Expect 5 files output", 5, new RecipePipeline(new PipelineConfig()).run(testResourceDir, expectedDir));
+		
+		//Entries, filtered on file name
+		for (File archive : Arrays.asList(zip, tar))
+		{
+			assertTrue("Expect archive recognised", RecipeArchiveReader.isArchive(archive));
+			List<String> names = new ArrayList<>();
+			List<Integer> sizes = new ArrayList<>();
+			int count = RecipeArchiveReader.forEachEntry(archive, RecipeFileEnumerator.txtFiles(), (name, content) ->
+			{
+				names.add(name);
+				sizes.add(content.remaining());
+				RecipeBufferPool.release(content);
+			});
+			assertEquals("Expect 2 entries", 2, count);
+			assertEquals("Expect full entry names", Arrays.asList("drop/1_LemonCake.txt", longDir + "951_Bakewell.txt"), names);
+			assertEquals("Expect full content", Arrays.asList(lemonCake.length, bakewell.length), sizes);
+			
+			//Same xml as from the files, staged and per file
+			for (boolean perFile : new boolean[] { false, true })
+			{
+				PipelineConfig config = new PipelineConfig();
+				config.setVirtualThreads(perFile);
+				File outputDir = temp.newFolder();
+				assertEquals("Expect 2 files output", 2, new RecipePipeline(config).run(archive, outputDir));
+				assertEquals("Expect same xml", new String(Files.readAllBytes(new File(expectedDir, "951.xml").toPath()), StandardCharsets.UTF_8),
+						new String(Files.readAllBytes(new File(outputDir, "951.xml").toPath()), StandardCharsets.UTF_8));
+			}
+		}
+		
+		//Corrupt entry (reserved deflate block type) reported, the entries after it still read
+		byte[] bytes = Files.readAllBytes(zip.toPath());
+		byte[] entryName = "drop/1_LemonCake.txt".getBytes(StandardCharsets.UTF_8);
+		int header = 0;
+		while (!Arrays.equals(entryName, Arrays.copyOfRange(bytes, header + 30, header + 30 + entryName.length)))
+			header++;
+		bytes[header + 30 + entryName.length + ((bytes[header + 28] & 0xff) | (bytes[header + 29] & 0xff) << 8)] = (byte) 0xff;
+		File corrupt = new File(dir, "corrupt.zip");
+		Files.write(corrupt.toPath(), bytes);
+		RecipePipeline pipeline = new RecipePipeline(new PipelineConfig());
+		assertEquals("Expect other entry output", 1, pipeline.run(corrupt, temp.newFolder()));
+		assertEquals("Expect corrupt entry failed", Arrays.asList("drop/1_LemonCake.txt"), new ArrayList<>(pipeline.getFailedRecipes()));
+	}
+	
+	/**
+	 * Verify recipes concatenated into one corpus file are split and parsed as if they were separate files
+	 */
+	@Test
+	public void corpusInputTest() throws IOException
+	{
+		File corpus = temp.newFile("recipe-corpus.txt");
+		try (OutputStream out = new FileOutputStream(corpus))
+		{
+			//Numbered method steps before the next recipe's id line
+			for (String name : new String[] { "1_LemonCake.txt", "21_SpongeCake.txt", "62.txt", "951_Bakewell.txt", "cc.txt" })
+			{
+				out.write(Files.readAllBytes(new File(testResourceDir, name).toPath()));
+				out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+			}
+		}
+		
+		File expectedDir = temp.newFolder("recipe-corpus-expected");
+		assertEquals("Expect 5 files output", 5, new RecipePipeline(new PipelineConfig()).run(testResourceDir, expectedDir));
+		
+		PipelineConfig config = RecipeParserOptions.parse(new String[] { "--corpus", "--parseThreads=3" }, 0).toPipelineConfig();
+		File outputDir = temp.newFolder("recipe-corpus-out");
+		RecipePipeline pipeline = new RecipePipeline(config);
+		assertEquals("Expect 5 files output", 5, pipeline.run(corpus, outputDir));
+		assertTrue("Expect no failures", pipeline.getFailedRecipes().isEmpty());
+		for (String id : new String[] { "1", "21", "62", "63", "951" })
+		{
+			assertEquals("Expect same xml as single file", new String(Files.readAllBytes(new File(expectedDir, id + ".xml").toPath()), StandardCharsets.UTF_8),
+					new String(Files.readAllBytes(new File(outputDir, id + ".xml").toPath()), StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * Verify stage counts and percentiles recorded over a run, and the JMX and report views of them
+	 */
+	@Test
+	public void metricsTest() throws IOException, JMException
+	{
+		//Histogram percentiles within bucket resolution
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i=1; i<=1000; i++)
+			histogram.record(i * 1000L);
+		assertEquals("Expect count", 1000, histogram.getCount());
+		assertTrue("Expect p50 near 500us", Math.abs(histogram.percentile(0.5) - 500000) < 500000 / 8);
+		assertTrue("Expect p99 near 990us", Math.abs(histogram.percentile(0.99) - 990000) < 990000 / 8);
+		assertEquals("Expect max exact", 1000000, histogram.percentile(1.0));
+		
+		File outputDir = temp.newFolder("recipe-metrics-out");
+		RecipeMetrics.enable();
+		try
+		{
+			assertEquals("Expect 5 files output", 5, RecipeParser.processFiles(testResourceDir, outputDir));
+		}
+		finally
+		{
+			RecipeMetrics.disable();
+		}
+		assertEquals("Expect 5 files opened", 5, RecipeMetrics.OPEN.getCount());
+		assertEquals("Expect 5 first lines", 5, RecipeMetrics.FIRST_LINE.getCount());
+		assertEquals("Expect ingredient lines timed", 41, RecipeMetrics.INGREDIENT.getCount());
+		assertEquals("Expect 5 marshalled", 5, RecipeMetrics.MARSHAL.getCount());
+		assertEquals("Expect 5 written", 5, RecipeMetrics.WRITE.getCount());
+		long bytes = 0;
+		for (File file : testResourceDir.listFiles((dir, name) -> name.endsWith(".txt")))
+			bytes += file.length();
+		assertEquals("Expect all input bytes", bytes, RecipeMetrics.OPEN.getBytes());
+		
+		//Not counted once disabled
+		RecipeParser.processFiles(testResourceDir, outputDir);
+		assertEquals("Expect no more opens counted", 5, RecipeMetrics.OPEN.getCount());
+		
+		RecipeMetrics.registerMBean();
+		ObjectName name = new ObjectName(RecipeMetrics.OBJECT_NAME);
+		assertEquals("Expect files over JMX", 5L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "FilesProcessed"));
+		
+		String json = RecipeMetrics.toJson();
+		assertTrue("Expect files in json", json.contains("\"files\": 5,"));
+		assertTrue("Expect stage in json", json.contains("\"firstLineScan\": {\"count\": 5,"));
+		String prometheus = RecipeMetrics.toPrometheus();
+		assertTrue("Expect files total", prometheus.contains("recipeparser_files_total 5\n"));
+		assertTrue("Expect stage summary", prometheus.contains("recipeparser_stage_seconds_count{stage=\"write\"} 5\n"));
+	}
+	
+	/**
+	 * Verify bad input is reported with reason code, source and line, and every event reaches the failures file
+	 */
+	@Test
+	public void diagnosticsTest() throws IOException
+	{
+		File failuresFile = temp.newFile("recipe-failures.tsv");
+		Diagnostics.configure(failuresFile, 0);
+		Diagnostics.resetCounts();
+		try
+		{
+			RecipeFileReader.parseRecipe("7. Scones [not a date]\r\n\r\nIngredients\r\n1 cup flour\r\n\r\nMethod\r\n1. Mix\r\n".getBytes(StandardCharsets.UTF_8), "scones.txt");
+			assertNull("Expect no recipe without an id", RecipeFileReader.parseRecipe("NONSENSE\r\n".getBytes(StandardCharsets.UTF_8), "bad.txt"));
+			assertNull("Expect no recipe without a method", RecipeFileReader.parseRecipe("8. Bread\r\n\r\nIngredients\r\n1 cup flour\r\n".getBytes(StandardCharsets.UTF_8), "bread.txt"));
+			assertEquals("Expect bad date", 1, Diagnostics.getCount(ReasonCode.DATE_UNPARSEABLE));
+			assertEquals("Expect bad id", 1, Diagnostics.getCount(ReasonCode.ID_NOT_READ));
+			assertEquals("Expect missing method", 1, Diagnostics.getCount(ReasonCode.SECTION_MISSING));
+			Diagnostics.flush();
+			
+			List<String> lines = Files.readAllLines(failuresFile.toPath(), StandardCharsets.UTF_8);
+			assertEquals("Expect header", "#code\tsource\tline\telement\tdetail", lines.get(0));
+			assertTrue("Expect date with line", lines.contains("DATE_UNPARSEABLE\tscones.txt\t1\tcreated\t\"not a date\""));
+			assertTrue("Expect id with line", lines.contains("ID_NOT_READ\tbad.txt\t1\tid\tNONSENSE"));
+			boolean sectionFound = false;
+			for (String line : lines)
+				sectionFound |= line.startsWith("SECTION_MISSING\tbread.txt\t") && line.contains("\tmethod\t");
+			assertTrue("Expect missing method", sectionFound);
+		}
+		finally
+		{
+			Diagnostics.configure(null, Diagnostics.DEFAULT_CONSOLE_LIMIT);
+			Diagnostics.resetCounts();
+		}
+	}
+	
+	/**
+	 * Verify write-behind output matches the default writer byte for byte with one write call per file, including
+	 * documents spread over several buffers and a pool too small for every thread
+	 */
+	@Test
+	public void writeBehindTest() throws IOException
+	{
+		File expectedDir = temp.newFolder("recipe-wb-expected");
+		assertEquals("Expect 5 files output", 5, new RecipePipeline(new PipelineConfig()).run(testResourceDir, expectedDir));
+		
+		for (boolean perFile : new boolean[] { false, true })
+		{
+			RecipeParserOptions options = RecipeParserOptions.parse(new String[] { "--writeBehind", "--writeBuffers=1",
+					"--writeBufferKB=1", "--flush=data", "--marshalThreads=4" }, 0);
+			PipelineConfig config = options.toPipelineConfig();
+			config.setVirtualThreads(perFile);
+			File outputDir = temp.newFolder();
+			RecipeMetrics.enable();
+			try
+			{
+				assertEquals("Expect 5 files output", 5, new RecipePipeline(config).run(testResourceDir, outputDir));
+			}
+			finally
+			{
+				RecipeMetrics.disable();
+			}
+			assertTrue("Expect one write call per file", RecipeMetrics.toJson().contains("\"writeCalls\": 5,"));
+			for (String id : new String[] { "1", "21", "62", "63", "951" })
+				assertTrue("Expect same bytes for " + id, Arrays.equals(Files.readAllBytes(new File(expectedDir, id + ".xml").toPath()),
+						Files.readAllBytes(new File(outputDir, id + ".xml").toPath())));
+		}
+		
+		//Surrogate pair split across writes and buffers, pooled buffer returned on release
+		DirectBufferPool pool = new DirectBufferPool(1, 4);
+		BufferedDocument document = pool.newDocument();
+		String text = "abc\uD83C\uDF70 cake";
+		document.write(text.substring(0, 4));
+		document.write(text.substring(4));
+		document.finish();
+		assertEquals("Expect buffers to hold document", text.getBytes().length, document.size());
+		ByteBuffer content = ByteBuffer.allocate((int) document.size());
+		for (ByteBuffer buffer : document.getBuffers())
+			content.put(buffer);
+		assertTrue("Expect same bytes as FileWriter", Arrays.equals(text.getBytes(), content.array()));
+		document.release();
+		assertEquals("Expect pooled buffer free", 1, pool.getFree());
+		
+		//Serializer failing part way with a runtime exception still returns its buffers
+		try
+		{
+			RecipeOutputWriter.marshalRecipe(createTestRecipe(), (recipe, writer) ->
+			{
+				//Past the staged char block, so a pooled buffer is taken
+				writer.write(new char[2048]);
+				throw new IllegalStateException("broken");
+			}, pool);
+			fail("Expect serializer exception");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals("Expect pooled buffer free after failure", 1, pool.getFree());
+		}
+	}
+	
+	/**
+	 * Verify xml already holding the same content is not written again, and a file changed by hand is
+	 */
+	@Test
+	public void skipUnchangedTest() throws IOException
+	{
+		File outputDir = temp.newFolder("recipe-skip-out");
+		RecipePipeline first = new RecipePipeline(RecipeParserOptions.parse(new String[] { "--skipUnchanged" }, 0).toPipelineConfig());
+		assertEquals("Expect 5 files output", 5, first.run(testResourceDir, outputDir));
+		assertEquals("Expect all written", 5, first.getHashCache().getWritten());
+		assertTrue("Expect hash sidecar", new File(outputDir, RecipeHashCache.FILE_NAME).isFile());
+		byte[] expected = Files.readAllBytes(new File(outputDir, "62.xml").toPath());
+		
+		//Same content from the write-behind path, nothing written
+		RecipePipeline second = new RecipePipeline(RecipeParserOptions.parse(new String[] { "--skipUnchanged", "--writeBehind" }, 0).toPipelineConfig());
+		assertEquals("Expect 5 files output", 5, second.run(testResourceDir, outputDir));
+		assertEquals("Expect all skipped", 5, second.getHashCache().getSkipped());
+		assertEquals("Expect none written", 0, second.getHashCache().getWritten());
+		
+		//Edited output written again without being read
+		Files.write(new File(outputDir, "62.xml").toPath(), "edited".getBytes(StandardCharsets.UTF_8));
+		RecipePipeline third = new RecipePipeline(RecipeParserOptions.parse(new String[] { "--skipUnchanged" }, 0).toPipelineConfig());
+		assertEquals("Expect 5 files output", 5, third.run(testResourceDir, outputDir));
+		assertEquals("Expect 4 skipped", 4, third.getHashCache().getSkipped());
+		assertEquals("Expect 1 written", 1, third.getHashCache().getWritten());
+		assertTrue("Expect content restored", Arrays.equals(expected, Files.readAllBytes(new File(outputDir, "62.xml").toPath())));
+	}
+	
+	/**
+	 * Verify recipes written to the binary format read back to the same xml, through the pipeline and directly
+	 */
+	@Test
+	public void binaryFormatTest() throws IOException
+	{
+		File expectedDir = temp.newFolder("recipe-bin-expected");
+		File binaryDir = temp.newFolder("recipe-bin");
+		File outputDir = temp.newFolder("recipe-bin-out");
+		assertEquals("Expect 5 files output", 5, new RecipePipeline(new PipelineConfig()).run(testResourceDir, expectedDir));
+		RecipeParserOptions options = RecipeParserOptions.parse(new String[] { "--outputBinary=recipes.rcpb" }, 0);
+		assertEquals("Expect 5 recipes written", 5, new RecipePipeline(options.toPipelineConfig()).run(testResourceDir, binaryDir));
+		assertEquals("Expect only binary file", Arrays.asList("recipes.rcpb"), Arrays.asList(binaryDir.list()));
+		
+		//Binary file as input, straight to xml
+		assertEquals("Expect 5 files output", 5, new RecipePipeline(new PipelineConfig()).run(new File(binaryDir, "recipes.rcpb"), outputDir));
+		for (String id : new String[] { "1", "21", "62", "63", "951" })
+			assertTrue("Expect same xml for " + id, Arrays.equals(Files.readAllBytes(new File(expectedDir, id + ".xml").toPath()),
+					Files.readAllBytes(new File(outputDir, id + ".xml").toPath())));
+		
+		//Nulls, negative id, fractional and missing amounts, repeated and non-ASCII units
+		Recipe recipe = createTestRecipe();
+		recipe.setId(-7);
+		recipe.getMetadata().setAuthor(null);
+		//Date only, as parsed from recipe files
+		recipe.getMetadata().setCreated(CreatedDateParser.toCalendar(LocalDate.of(2014, 4, 24)));
+		Ingredient third = new Ingredient();
+		third.setAmount(1d / 3);
+		third.setUnit("each");
+		third.setItem("Crème fraîche");
+		Ingredient none = new Ingredient();
+		none.setUnit("cuillère");
+		none.setItem("Salt");
+		recipe.getContent().getIngredients().getIngredient().add(third);
+		recipe.getContent().getIngredients().getIngredient().add(none);
+		Recipe empty = new Recipe();
+		empty.setId(Integer.MAX_VALUE);
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (RecipeBinaryWriter writer = new RecipeBinaryWriter(bytes))
+		{
+			writer.write(recipe);
+			writer.write(empty);
+			assertEquals("Expect units stored once", 2, writer.getUnits());
+		}
+		try (RecipeBinaryReader reader = new RecipeBinaryReader(new ByteArrayInputStream(bytes.toByteArray())))
+		{
+			Recipe read = reader.read();
+			assertEquals("Expect same xml", RecipeOutputWriter.marshalRecipe(recipe), RecipeOutputWriter.marshalRecipe(read));
+			assertEquals("Expect exact amount", 1d / 3, read.getContent().getIngredients().getIngredient().get(1).getAmount(), 0);
+			assertNull("Expect no amount", read.getContent().getIngredients().getIngredient().get(2).getAmount());
+			assertSame("Expect unit shared", read.getContent().getIngredients().getIngredient().get(0).getUnit(),
+					read.getContent().getIngredients().getIngredient().get(1).getUnit());
+			Recipe readEmpty = reader.read();
+			assertEquals("Expect max id", Integer.MAX_VALUE, readEmpty.getId());
+			assertTrue("Expect no metadata or content", !readEmpty.isSetMetadata() && !readEmpty.isSetContent());
+			assertNull("Expect end of file", reader.read());
+		}
+		
+		//Not a binary file
+		try
+		{
+			new RecipeBinaryReader(new ByteArrayInputStream("<Recipe/>".getBytes(StandardCharsets.UTF_8))).close();
+			fail("Expect header rejected");
+		}
+		catch (IOException e)
+		{
+			assertEquals("Not a binary recipe file", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Verify JSON generator output and escaping, and that {id}.json files and ndjson lines hold the same recipes
+	 */
+	@Test
+	public void jsonOutputTest() throws IOException
+	{
+		Recipe recipe = new Recipe();
+		recipe.setId(7);
+		Metadata metadata = new Metadata();
+		metadata.setCreated(CreatedDateParser.toCalendar(LocalDate.of(2014, 4, 24)));
+		metadata.setTitle("Tom's \"Best\" Cake");
+		recipe.setMetadata(metadata);
+		Content content = new Content();
+		content.setLead("Line one\nCrème\t\\");
+		Ingredient ingredient = new Ingredient();
+		ingredient.setAmount(5d);
+		ingredient.setItem("eggs");
+		Ingredient empty = new Ingredient();
+		content.getIngredients().getIngredient().add(ingredient);
+		content.getIngredients().getIngredient().add(empty);
+		content.getMethod().getStep().add("Mix.");
+		content.getMethod().getStep().add("Bake\u0001.");
+		recipe.setContent(content);
+		
+		String json = RecipeOutputWriter.marshalRecipe(recipe, OutputFormat.JSON.getSerializer(XmlBackend.JAXB));
+		assertEquals("Expect xsd structure, nulls omitted, escaped strings",
+				"{\"id\":7,\"Metadata\":{\"Created\":\"2014-04-24\",\"Title\":\"Tom's \\\"Best\\\" Cake\"},"
+				+ "\"Content\":{\"Lead\":\"Line one\\nCr\\u00e8me\\t\\\\\",\"Ingredients\":[{\"Amount\":5.0,\"Item\":\"eggs\"},{}],"
+				+ "\"Method\":[\"Mix.\",\"Bake\\u0001.\"]}}", json);
+		
+		//{id}.json per recipe
+		File jsonDir = temp.newFolder("recipe-json");
+		RecipeParserOptions options = RecipeParserOptions.parse(new String[] { "--format=json" }, 0);
+		assertEquals("Expect 5 files output", 5, new RecipePipeline(options.toPipelineConfig()).run(testResourceDir, jsonDir));
+		String[] outputs = jsonDir.list();
+		Arrays.sort(outputs);
+		assertEquals("Expect json files only", Arrays.asList("1.json", "21.json", "62.json", "63.json", "951.json"), Arrays.asList(outputs));
+		
+		//One line per recipe, same as its file
+		File ndjsonDir = temp.newFolder("recipe-ndjson");
+		options = RecipeParserOptions.parse(new String[] { "--outputNdjson=recipes.ndjson", "--writeThreads=3" }, 0);
+		assertEquals("Expect 5 recipes written", 5, new RecipePipeline(options.toPipelineConfig()).run(testResourceDir, ndjsonDir));
+		assertEquals("Expect only ndjson file", Arrays.asList("recipes.ndjson"), Arrays.asList(ndjsonDir.list()));
+		List<String> lines = Files.readAllLines(new File(ndjsonDir, "recipes.ndjson").toPath(), StandardCharsets.UTF_8);
+		assertEquals("Expect 5 lines", 5, lines.size());
+		for (String line : lines)
+		{
+			String id = line.substring("{\"id\":".length(), line.indexOf(','));
+			assertEquals("Expect same json as " + id + ".json", new String(Files.readAllBytes(new File(jsonDir, id + ".json").toPath()),
+					StandardCharsets.UTF_8), line);
+		}
+		
+		//Format is for {id} files only
+		try
+		{
+			RecipeParserOptions.parse(new String[] { "--format=json", "--outputZip=recipes.zip" }, 0).toPipelineConfig();
+			fail("Expect format with zip rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+	}
+	
+	/**
+	 * Verify authors, items and units of separately parsed recipes are shared instances, and interning stays bounded
+	 */
+	@Test
+	public void internTest() throws IOException
+	{
+		String text = "1. Lemon Cake by Sam Thompson [2018-12-03]\n\nIngredients:\n225g unsalted  butter\n4 eggs\n\nMethod:\n1. Bake.";
+		Recipe first = RecipeFileReader.parseRecipe(text.getBytes(StandardCharsets.UTF_8), "first");
+		Recipe second = RecipeFileReader.parseRecipe(text.replace("1. Lemon", "2. Lemon").getBytes(StandardCharsets.UTF_8), "second");
+		List<Ingredient> firstIngredients = first.getContent().getIngredients().getIngredient();
+		List<Ingredient> secondIngredients = second.getContent().getIngredients().getIngredient();
+		assertSame("Expect shared author", first.getMetadata().getAuthor(), second.getMetadata().getAuthor());
+		assertEquals("Expect whitespace collapsed", "unsalted butter", firstIngredients.get(0).getItem());
+		assertSame("Expect shared item", firstIngredients.get(0).getItem(), secondIngredients.get(0).getItem());
+		assertSame("Expect shared unit", firstIngredients.get(0).getUnit(), secondIngredients.get(0).getUnit());
+		assertSame("Expect lexicon unit", "grams", firstIngredients.get(0).getUnit());
+		
+		//Units read back from binary are the lexicon's
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (RecipeBinaryWriter writer = new RecipeBinaryWriter(bytes))
+		{
+			writer.write(first);
+		}
+		try (RecipeBinaryReader reader = new RecipeBinaryReader(new ByteArrayInputStream(bytes.toByteArray())))
+		{
+			Recipe read = reader.read();
+			assertSame("Expect lexicon unit from binary", firstIngredients.get(0).getUnit(),
+					read.getContent().getIngredients().getIngredient().get(0).getUnit());
+			assertSame("Expect shared item from binary", firstIngredients.get(1).getItem(),
+					read.getContent().getIngredients().getIngredient().get(1).getItem());
+		}
+		
+		//Fixed size, slices found without a copy, long text not kept
+		StringInterner interner = new StringInterner(4, 8);
+		String butter = interner.intern("butter");
+		assertSame("Expect slice found", butter, interner.intern("225g butter", 5, 11));
+		for (int i=0; i<100; i++)
+			interner.intern("item" + i);
+		assertTrue("Expect at most 4 held", interner.size() <= 4);
+		String line = "175g self-raising flour";
+		assertTrue("Expect long text not kept", interner.intern(line, 5, line.length()) != interner.intern(line, 5, line.length()));
+	}
+	
+	/**
+	 * Verify two inputs with the same id are caught under each duplicate id policy
+	 */
+	@Test
+	public void duplicateIdsTest() throws IOException
+	{
+		//1_LemonCake.txt and a newer copy retitled, sharing id 1
+		File inputDir = temp.newFolder("recipe-dup-input");
+		byte[] lemon = Files.readAllBytes(new File(testResourceDir, "1_LemonCake.txt").toPath());
+		File older = new File(inputDir, "1_LemonCake.txt");
+		File newer = new File(inputDir, "1 Lime Cake (copy).txt");
+		Files.write(older.toPath(), lemon);
+		Files.write(newer.toPath(), new String(lemon, StandardCharsets.UTF_8).replace("Lemon Cake", "Lime Cake").getBytes(StandardCharsets.UTF_8));
+		Files.copy(new File(testResourceDir, "21_SpongeCake.txt").toPath(), new File(inputDir, "21_SpongeCake.txt").toPath());
+		assertTrue(older.setLastModified(1000000000000L));
+		assertTrue(newer.setLastModified(1500000000000L));
+		
+		//Either input kept, only one claim
+		File firstDir = temp.newFolder("recipe-dup-first");
+		RecipePipeline pipeline = new RecipePipeline(RecipeParserOptions.parse(new String[] { "--duplicateIds=first", "--writeThreads=2" }, 0).toPipelineConfig());
+		assertEquals("Expect duplicate not output", 2, pipeline.run(inputDir, firstDir));
+		assertEquals("Expect 2 ids", 2, pipeline.getIdRegistry().getClaimed());
+		assertEquals("Expect 1 collision", 1, pipeline.getIdRegistry().getCollisions());
+		assertEquals("Duplicate ids - ids: 2, collisions: 1, kept first", pipeline.getIdRegistry().report());
+		
+		//Newer input kept whichever is parsed first
+		File newestDir = temp.newFolder("recipe-dup-newest");
+		pipeline = new RecipePipeline(RecipeParserOptions.parse(new String[] { "--duplicateIds=newest", "--writeThreads=2" }, 0).toPipelineConfig());
+		pipeline.run(inputDir, newestDir);
+		String xml = new String(Files.readAllBytes(new File(newestDir, "1.xml").toPath()), StandardCharsets.UTF_8);
+		assertTrue("Expect newer input's title", xml.contains("Lime Cake") && !xml.contains("Lemon Cake"));
+		assertEquals("Expect 1 collision", 1, pipeline.getIdRegistry().getCollisions());
+		
+		//Later claimant written aside under its source name
+		File divertDir = temp.newFolder("recipe-dup-divert");
+		pipeline = new RecipePipeline(RecipeParserOptions.parse(new String[] { "--duplicateIds=divert" }, 0).toPipelineConfig());
+		assertEquals("Expect duplicate output too", 3, pipeline.run(inputDir, divertDir));
+		assertTrue("Expect claimed id output", new File(divertDir, "1.xml").isFile());
+		String[] diverted = new File(divertDir, RecipeIdRegistry.COLLISIONS_DIR).list();
+		assertEquals("Expect 1 diverted", 1, diverted.length);
+		assertTrue("Expect id and sanitised source name", diverted[0].equals("1-1_LemonCake.txt.xml") || diverted[0].equals("1-1_Lime_Cake__copy_.txt.xml"));
+		
+		//Incremental - the input holding the id keeps it while skipped as unchanged, the duplicate is dropped every run
+		File incrementalDir = temp.newFolder("recipe-dup-incremental");
+		PipelineConfig incremental = RecipeParserOptions.parse(new String[] { "--duplicateIds=first", "--incremental" }, 0).toPipelineConfig();
+		new RecipePipeline(incremental).run(inputDir, incrementalDir);
+		byte[] held = Files.readAllBytes(new File(incrementalDir, "1.xml").toPath());
+		for (int run=0; run<2; run++)
+		{
+			pipeline = new RecipePipeline(incremental);
+			pipeline.run(inputDir, incrementalDir);
+			assertEquals("Expect duplicate dropped again", 1, pipeline.getIdRegistry().getCollisions());
+			assertTrue("Expect holder's xml kept", Arrays.equals(held, Files.readAllBytes(new File(incrementalDir, "1.xml").toPath())));
+		}
+		File newestIncrementalDir = temp.newFolder("recipe-dup-newest-incremental");
+		incremental = RecipeParserOptions.parse(new String[] { "--duplicateIds=newest", "--incremental" }, 0).toPipelineConfig();
+		for (int run=0; run<2; run++)
+		{
+			new RecipePipeline(incremental).run(inputDir, newestIncrementalDir);
+			assertTrue("Expect newer input's title", new String(Files.readAllBytes(new File(newestIncrementalDir, "1.xml").toPath()),
+					StandardCharsets.UTF_8).contains("Lime Cake"));
+		}
+		
+		//Holder changed - reprocessed and still holds the id
+		File holder = new String(held, StandardCharsets.UTF_8).contains("Lime Cake") ? newer : older;
+		Files.write(holder.toPath(), new String(Files.readAllBytes(holder.toPath()), StandardCharsets.UTF_8).replace("wonderfully", "truly")
+				.getBytes(StandardCharsets.UTF_8));
+		incremental = RecipeParserOptions.parse(new String[] { "--duplicateIds=first", "--incremental" }, 0).toPipelineConfig();
+		pipeline = new RecipePipeline(incremental);
+		pipeline.run(inputDir, incrementalDir);
+		assertTrue("Expect holder's change written", new String(Files.readAllBytes(new File(incrementalDir, "1.xml").toPath()),
+				StandardCharsets.UTF_8).contains("truly delicious"));
+		assertEquals("Expect only the duplicate dropped", 1, pipeline.getIdRegistry().getCollisions());
+		
+		//Registry alone, ids across pages and negative
+		RecipeIdRegistry registry = new RecipeIdRegistry(DuplicateIdPolicy.NEWEST);
+		assertEquals(RecipeIdRegistry.CLAIMED, registry.claimNewest(-5, 0));
+		assertEquals(RecipeIdRegistry.CLAIMED, registry.claimNewest(Integer.MAX_VALUE, 10));
+		assertEquals(RecipeIdRegistry.STALE, registry.claimNewest(Integer.MAX_VALUE, 10));
+		assertEquals(RecipeIdRegistry.REPLACED, registry.claimNewest(Integer.MAX_VALUE, 20));
+		assertTrue("Expect newest holds", registry.holds(Integer.MAX_VALUE, 20) && !registry.holds(Integer.MAX_VALUE, 10));
+		
+		//Single file outputs keep one recipe per id already
+		try
+		{
+			RecipeParserOptions.parse(new String[] { "--duplicateIds=divert", "--outputZip=recipes.zip" }, 0).toPipelineConfig();
+			fail("Expect divert with zip rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+		
+		//Ids are claimed per run, files watched are processed one at a time
+		try
+		{
+			new RecipeDirectoryWatcher(inputDir, temp.newFolder(), RecipeParserOptions.parse(new String[] { "--duplicateIds=first" }, 0).toPipelineConfig(), 20);
+			fail("Expect duplicate ids with watch rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+	}
+	
+	/**
+	 * Verify index built during a run answers author, item, date range and id lookups
+	 */
+	@Test
+	public void recipeIndexTest() throws IOException
+	{
+		File outputDir = temp.newFolder("recipe-index");
+		RecipeParserOptions options = RecipeParserOptions.parse(new String[] { "--index", "--outputBinary=recipes.rcpb" }, 0);
+		RecipePipeline pipeline = new RecipePipeline(options.toPipelineConfig());
+		assertEquals("Expect 5 recipes written", 5, pipeline.run(testResourceDir, outputDir));
+		RecipeIndex index = pipeline.getIndex();
+		assertEquals("Expect 5 recipes indexed", 5, index.size());
+		assertTrue("Expect id found", index.contains(951) && !index.contains(2));
+		
+		//Case and spacing ignored
+		assertTrue("Expect author's recipe", Arrays.equals(new int[] { 21 }, index.byAuthor(" charlie montoya")));
+		assertTrue("Expect all self-raising flour recipes", Arrays.equals(new int[] { 1, 21, 63, 951 }, index.byItem("Self-Raising Flour")));
+		assertEquals("Expect unknown item empty", 0, index.byItem("saffron").length);
+		
+		//Inclusive range
+		assertTrue("Expect 2014 recipes", Arrays.equals(new int[] { 21, 951 },
+				index.createdBetween(LocalDate.of(2014, 10, 13), LocalDate.of(2014, 11, 9))));
+		assertEquals("Expect none before 1998", 0, index.createdBetween(LocalDate.of(1900, 1, 1), LocalDate.of(1998, 12, 24)).length);
+		assertTrue("Expect intersection", Arrays.equals(new int[] { 1, 21, 951 },
+				RecipeIndex.intersect(index.byItem("self-raising flour"), index.createdBetween(LocalDate.of(2010, 1, 1), LocalDate.of(2020, 1, 1)))));
+		
+		//Added after queries, same recipe twice
+		Recipe recipe = createTestRecipe();
+		recipe.setId(-3);
+		recipe.getMetadata().setCreated(CreatedDateParser.toCalendar(LocalDate.of(2014, 11, 9)));
+		index.add(recipe);
+		index.add(recipe);
+		assertTrue("Expect new recipe in range once", Arrays.equals(new int[] { -3, 951 },
+				index.createdBetween(LocalDate.of(2014, 11, 9), LocalDate.of(2014, 11, 9))));
+		assertEquals("Expect 6 recipes indexed", 6, index.size());
+	}
+	
+	/**
+	 * Verify zip output holds the same xml as the individual files, and the index points at each entry
+	 */
+	@Test
+	public void zipOutputTest() throws IOException
+	{
+		File expectedDir = temp.newFolder("recipe-zip-expected");
+		assertEquals("Expect 5 files output", 5, new RecipePipeline(new PipelineConfig()).run(testResourceDir, expectedDir));
+		
+		File outputDir = temp.newFolder("recipe-zip-out");
+		RecipeParserOptions options = RecipeParserOptions.parse(new String[] { "--outputZip=recipes.zip", "--zipLevel=9", "--zipIndex" }, 0);
+		assertEquals("Expect 5 recipes written", 5, new RecipePipeline(options.toPipelineConfig()).run(testResourceDir, outputDir));
+		String[] outputs = outputDir.list();
+		Arrays.sort(outputs);
+		assertEquals("Expect only zip and index", Arrays.asList("recipes.zip", "recipes.zip.idx"), Arrays.asList(outputs));
+		
+		File zipFile = new File(outputDir, "recipes.zip");
+		try (ZipFile zip = new ZipFile(zipFile))
+		{
+			assertEquals("Expect 5 entries", 5, zip.size());
+			for (String id : new String[] { "1", "21", "62", "63", "951" })
+			{
+				ZipEntry entry = zip.getEntry(id + ".xml");
+				byte[] expected = Files.readAllBytes(new File(expectedDir, id + ".xml").toPath());
+				byte[] actual = new byte[(int) entry.getSize()];
+				try (DataInputStream in = new DataInputStream(zip.getInputStream(entry)))
+				{
+					in.readFully(actual);
+				}
+				assertEquals("Expect same xml", new String(expected, StandardCharsets.UTF_8), new String(actual, StandardCharsets.UTF_8));
+			}
+		}
+		
+		//Index offset is the entry's local file header
+		List<String> index = Files.readAllLines(RecipeZipWriter.indexFile(zipFile).toPath(), StandardCharsets.UTF_8);
+		assertEquals("Expect header and 5 lines", 6, index.size());
+		try (RandomAccessFile raf = new RandomAccessFile(zipFile, "r"))
+		{
+			for (String line : index.subList(1, index.size()))
+			{
+				String[] fields = line.split("\t");
+				raf.seek(Long.parseLong(fields[1]));
+				assertEquals("Expect local header signature", 0x04034b50, Integer.reverseBytes(raf.readInt()));
+				raf.seek(Long.parseLong(fields[1]) + 26);
+				int nameLength = Short.reverseBytes(raf.readShort());
+				raf.seek(Long.parseLong(fields[1]) + 30);
+				byte[] name = new byte[nameLength];
+				raf.readFully(name);
+				assertEquals("Expect entry for id", fields[0] + ".xml", new String(name, StandardCharsets.UTF_8));
+			}
+		}
+	}
+	
+	/**
+	 * Minimal ustar entry (header, content, padding), name split into prefix / name when over 100 chars
+	 */
+	private static void writeTarEntry(OutputStream out, String name, byte[] content) throws IOException
+	{
+		byte[] header = new byte[512];
+		int split = name.length() > 100 ? name.lastIndexOf('/', name.length() - 2) : -1;
+		byte[] nameBytes = name.substring(split + 1).getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+		if (split != -1)
+		{
+			byte[] prefix = name.substring(0, split).getBytes(StandardCharsets.UTF_8);
+			System.arraycopy(prefix, 0, header, 345, prefix.length);
+		}
+		byte[] fields = String.format("%07o\0%07o\0%07o\0%011o\0%011o\0        0", 0644, 0, 0, content.length, 0).getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(fields, 0, header, 100, fields.length);
+		System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+		int checksum = 0;
+		for (byte b : header)
+			checksum += b & 0xFF;
+		byte[] checksumField = String.format("%06o\0 ", checksum).getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(checksumField, 0, header, 148, checksumField.length);
+		out.write(header);
+		out.write(content);
+		out.write(new byte[(512 - content.length % 512) % 512]);
 	}
 	
 	/**
@@ -137,6 +1141,58 @@ private static File testResourceOutputDir = new File("src/test/resources/Output"
 		
 	}
 	
+	/**
+	 * Assert accepted created date formats, cache and thread safety
+	 */
+	@Test
+	public void createdDateParserTest() throws InterruptedException
+	{
+		//ISO fast path, no time or timezone
+		XMLGregorianCalendar iso = CreatedDateParser.parse("[ 2018-12-03 ]", 1, 13);
+		assertEquals("Expect 2018-12-03", "2018-12-03", iso.toXMLFormat());
+		
+		//Other formats, in order
+		assertEquals("Expect 2018-12-03", LocalDate.of(2018, 12, 3), CreatedDateParser.parseLocalDate("2018-12-3", 0, 9));
+		assertEquals("Expect 2018-12-03", LocalDate.of(2018, 12, 3), CreatedDateParser.parseLocalDate("20181203", 0, 8));
+		assertEquals("Expect 2018-12-03", LocalDate.of(2018, 12, 3), CreatedDateParser.parseLocalDate("3 december 2018", 0, 15));
+		assertEquals("Expect 2018-12-03", LocalDate.of(2018, 12, 3), CreatedDateParser.parseLocalDate("Dec 3, 2018", 0, 11));
+		
+		//Invalid dates and ambiguous formats
+		assertNull("Expect null", CreatedDateParser.parse("2018-02-30", 0, 10));
+		assertNull("Expect null", CreatedDateParser.parse("03/12/2018", 0, 10));
+		assertNull("Expect null (cached)", CreatedDateParser.parse("03/12/2018", 0, 10));
+		
+		//Each call has its own (mutable) calendar
+		assertNotSame("Expect new instance", CreatedDateParser.parse("3 Dec 2018", 0, 10), CreatedDateParser.parse("3 Dec 2018", 0, 10));
+		
+		//Many threads parsing shared dates
+		List<Thread> threads = new ArrayList<>();
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+		for (int t=0; t<4; t++)
+		{
+			Thread thread = new Thread(() ->
+			{
+				try
+				{
+					for (int i=0; i<2000; i++)
+					{
+						String date = (1 + i % 28) + " Feb 2019";
+						assertEquals("Expect day", 1 + i % 28, CreatedDateParser.parse(date, 0, date.length()).getDay());
+					}
+				}
+				catch (Throwable e)
+				{
+					errors.add(e);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertTrue("Expect no errors " + errors, errors.isEmpty());
+	}
+	
 	/**
 	 * Assert string parse to int as required by app
 	 */
@@ -201,6 +1257,42 @@ private static File testResourceOutputDir = new File("src/test/resources/Output"
 		assertEquals("Expect 1.5" , Double.valueOf(1.5), utils.tryParseIngAmt("1.5-2"));
 	}
 	
+	/**
+	 * Assert exception free number parsing, including unicode fractions and mixed numbers
+	 */
+	@Test
+	public void numberScannerTest()
+	{
+		//Ints on a slice, overflow rejected
+		assertEquals("Expect 12", 12L, NumberScanner.parseInt("12. Cake", 0, 2));
+		assertEquals("Expect min int", (long) Integer.MIN_VALUE, NumberScanner.parseInt("-2147483648", 0, 11));
+		assertEquals("Expect no int", NumberScanner.NO_INT, NumberScanner.parseInt("2147483648", 0, 10));
+		assertEquals("Expect no int", NumberScanner.NO_INT, NumberScanner.parseInt("-", 0, 1));
+		assertEquals("Expect no int", NumberScanner.NO_INT, NumberScanner.parseInt("large", 0, 5));
+		
+		//Vulgar fractions, mixed numbers and fraction slash
+		assertEquals("Expect 0.75", 0.75d, NumberScanner.parseAmount("¾", 0, 1), 0.0d);
+		assertEquals("Expect 1/3", 1d / 3, NumberScanner.parseAmount("⅓", 0, 1), 0.0d);
+		assertEquals("Expect 2.125", 2.125d, NumberScanner.parseAmount("2⅛", 0, 2), 0.0d);
+		assertEquals("Expect 0.5", 0.5d, NumberScanner.parseAmount("1⁄2", 0, 3), 0.0d);
+		
+		//Ranges take first, with hyphen or en dash
+		assertEquals("Expect 1.5", 1.5d, NumberScanner.parseAmount("1½–2", 0, 4), 0.0d);
+		assertEquals("Expect 0.1", 0.1d, NumberScanner.parseAmount("0.1-0.2", 0, 7), 0.0d);
+		
+		//Invalid
+		assertTrue("Expect NaN", Double.isNaN(NumberScanner.parseAmount("icing", 0, 5)));
+		assertTrue("Expect NaN", Double.isNaN(NumberScanner.parseAmount("1.5½", 0, 4)));
+		assertTrue("Expect NaN", Double.isNaN(NumberScanner.parseAmount("1/0", 0, 3)));
+		assertTrue("Expect NaN", Double.isNaN(NumberScanner.parseAmount("1.2.3", 0, 5)));
+		
+		//Unicode fraction attached to uom
+		Ingredient ing = new RecipeFileReaderUtils().readIngredientLine("¼tsp salt");
+		assertEquals("Expect 0.25", 0.25d, ing.getAmount(), 0.0d);
+		assertEquals("Expect teaspoons", "teaspoons", ing.getUnit());
+		assertEquals("Expect salt", "salt", ing.getItem());
+	}
+	
 	/**
 	 * Assert reading of number of ingredients and checks elements
 	 */
@@ -242,6 +1334,84 @@ private static File testResourceOutputDir = new File("src/test/resources/Output"
 		assertEquals("Expect lemon zested", "lemon zested", fractionalAmt.getItem());
 	}
 	
+	/**
+	 * Assert attached decimal amounts, separate units and whitespace runs in ingredient lines
+	 */
+	@Test
+	public void readIngredientLineTokenizerTest()
+	{
+		RecipeFileReaderUtils utils = new RecipeFileReaderUtils();
+		
+		//Decimal amount attached to unit
+		Ingredient attachedDecimal = utils.readIngredientLine("1.5kg plain flour");
+		assertEquals("Expect 1.5", 1.5d, attachedDecimal.getAmount(), 0.0d);
+		assertEquals("Expect kilograms", "kilograms", attachedDecimal.getUnit());
+		assertEquals("Expect plain flour", "plain flour", attachedDecimal.getItem());
+		
+		//Separate unit, mixed case, whitespace runs collapsed in item
+		Ingredient separateUnit = utils.readIngredientLine("  2 TBSP   flaked\talmonds ");
+		assertEquals("Expect 2", 2.0d, separateUnit.getAmount(), 0.0d);
+		assertEquals("Expect tablespoons", "tablespoons", separateUnit.getUnit());
+		assertEquals("Expect flaked almonds", "flaked almonds", separateUnit.getItem());
+		
+		//Range with half char, take first
+		Ingredient range = utils.readIngredientLine("1\u00BD-2 tbsp orange juice");
+		assertEquals("Expect 1.5", 1.5d, range.getAmount(), 0.0d);
+		assertEquals("Expect orange juice", "orange juice", range.getItem());
+		
+		//Single word is item only
+		Ingredient single = utils.readIngredientLine("salt");
+		assertNull("Expect null", single.getAmount());
+		assertEquals("Expect salt", "salt", single.getItem());
+	}
+	
+	/**
+	 * Assert unit lexicon matches multi-word and imperial units, and can be replaced
+	 */
+	@Test
+	public void unitOfMeasureLexiconTest() throws IOException
+	{
+		RecipeFileReaderUtils utils = new RecipeFileReaderUtils();
+		
+		//Multi-word unit, separate and attached
+		Ingredient flOz = utils.readIngredientLine("2 Fl  Oz milk");
+		assertEquals("Expect fluid ounces", "fluid ounces", flOz.getUnit());
+		assertEquals("Expect milk", "milk", flOz.getItem());
+		Ingredient attachedFlOz = utils.readIngredientLine("10fl oz double cream");
+		assertEquals("Expect 10", 10.0d, attachedFlOz.getAmount(), 0.0d);
+		assertEquals("Expect fluid ounces", "fluid ounces", attachedFlOz.getUnit());
+		assertEquals("Expect double cream", "double cream", attachedFlOz.getItem());
+		
+		//Imperial, longest match does not swallow item
+		Ingredient oz = utils.readIngredientLine("8oz butter");
+		assertEquals("Expect ounces", "ounces", oz.getUnit());
+		assertEquals("Expect butter", "butter", oz.getItem());
+		
+		//Unit must be a whole word
+		Ingredient notUnit = utils.readIngredientLine("2 large eggs");
+		assertNull("Expect null", notUnit.getUnit());
+		
+		//Custom lexicon
+		UnitOfMeasureLexicon custom = UnitOfMeasureLexicon.load(new ByteArrayInputStream(
+				"# test\ncloves: clove\n".getBytes(StandardCharsets.UTF_8)));
+		assertEquals("Expect 2 aliases", 2, custom.size());
+		assertEquals("Expect cloves", "cloves", custom.lookup("3 CLOVE garlic", 2, 7));
+		assertEquals("Expect end of match", 7, custom.longestMatch("3 clove garlic", 2, 14, true));
+		assertEquals("Expect no match", -1, custom.longestMatch("3 g garlic", 2, 10, true));
+		
+		UnitOfMeasureLexicon previous = UnitOfMeasureLexicon.getDefault();
+		try
+		{
+			UnitOfMeasureLexicon.setDefault(custom);
+			assertEquals("Expect cloves", "cloves", utils.readIngredientLine("3 cloves garlic").getUnit());
+			assertNull("Expect null", utils.readIngredientLine("3 g garlic").getUnit());
+		}
+		finally
+		{
+			UnitOfMeasureLexicon.setDefault(previous);
+		}
+	}
+	
 	/**
 	 * Assert step lines read with and without numbering
 	 */
@@ -280,7 +1450,7 @@ private static File testResourceOutputDir = new File("src/test/resources/Output"
 	 * Test parsing of basic dummy recipe obj
 	 */
 	@Test
-	public void parseAllRecipesTest()
+	public void parseAllRecipesTest() throws IOException
 	{
 		//Init 1 obj
 		List<Recipe> testList = new ArrayList<>();
@@ -288,7 +1458,108 @@ private static File testResourceOutputDir = new File("src/test/resources/Output"
 		testList.add(r);
 		
 		//One file parse
-		assertEquals("Expect successful parsing of one file", 1, RecipeOutputWriter.parseAllRecipes(testList, testResourceOutputDir));
+		assertEquals("Expect successful parsing of one file", 1, RecipeOutputWriter.parseAllRecipes(testList, temp.newFolder("recipe-out")));
+	}
+	
+	/**
+	 * Assert byte scanner handles BOM and all line endings, and large (memory-mapped) files
+	 */
+	@Test
+	public void recipeScannerTest() throws IOException
+	{
+		String recipeText = "\uFEFF1. Lemon Cake by Sam Thompson [2018-12-03]||A lovely cake.|Second lead line|"
+				+ "Ingredients:|225g unsalted butter|4 eggs||Method:|1. Preheat the oven.|2. Bake.";
+		
+		//Same recipe whatever the line ending
+		for (String lineEnding : new String[] { "\n", "\r", "\r\n" })
+		{
+			byte[] content = recipeText.replace("|", lineEnding).getBytes(StandardCharsets.UTF_8);
+			Recipe recipe = RecipeFileReader.parseRecipe(content, "test");
+			assertEquals("Expect id read", 1, recipe.getId());
+			assertEquals("Expect title without BOM", "Lemon Cake", recipe.getMetadata().getTitle());
+			assertEquals("Expect two lead lines", "A lovely cake." + System.lineSeparator() + "Second lead line", 
+					recipe.getContent().getLead());
+			assertEquals("Expect 2 ingredients", 2, recipe.getContent().getIngredients().getIngredient().size());
+			assertEquals("Expect 2 steps", 2, recipe.getContent().getMethod().getStep().size());
+			assertEquals("Expect step numbering stripped", "Bake.", recipe.getContent().getMethod().getStep().get(1));
+		}
+		
+		//File larger than a pooled buffer is mapped
+		StringBuilder longLead = new StringBuilder();
+		while (longLead.length() <= RecipeBufferPool.BUFFER_SIZE)
+			longLead.append("A very long description of a cake. ");
+		File largeFile = temp.newFile("large.txt");
+		Files.write(largeFile.toPath(), recipeText.replace("A lovely cake.", longLead.toString().trim())
+				.replace("|", "\n").getBytes(StandardCharsets.UTF_8));
+		
+		ByteBuffer mapped = RecipeBufferPool.load(largeFile);
+		assertTrue("Expect mapped buffer for large file", mapped.isDirect());
+		Recipe large = RecipeFileReader.parseRecipe(mapped, largeFile.getName());
+		assertTrue("Expect long lead read", large.getContent().getLead().length() > RecipeBufferPool.BUFFER_SIZE);
+		assertEquals("Expect 2 steps", 2, large.getContent().getMethod().getStep().size());
+	}
+	
+	/**
+	 * Assert marshallers are reused per thread, not shared across threads, and output is unchanged
+	 */
+	@Test
+	public void marshallerPoolTest() throws Exception
+	{
+		//Same thread reuses marshaller
+		Marshaller first = RecipeMarshallerPool.getMarshaller();
+		assertSame("Expect marshaller reused on same thread", first, RecipeMarshallerPool.getMarshaller());
+		
+		//Other thread gets its own
+		Marshaller[] other = new Marshaller[1];
+		String[] otherXml = new String[1];
+		Thread thread = new Thread(() -> {
+			try 
+			{
+				other[0] = RecipeMarshallerPool.getMarshaller();
+				otherXml[0] = RecipeOutputWriter.marshalRecipe(createTestRecipe());
+			}
+			catch (JAXBException e) 
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNotSame("Expect separate marshaller per thread", first, other[0]);
+		
+		//Identical output whichever thread marshals
+		String xml = RecipeOutputWriter.marshalRecipe(createTestRecipe());
+		assertTrue("Expect no xml declaration", xml.startsWith("<Recipe id=\"1\">"));
+		assertEquals("Expect same output across threads", xml, otherXml[0]);
+	}
+	
+	/**
+	 * Assert streaming serializer output is identical to JAXB output
+	 */
+	@Test
+	public void streamingSerializerTest()
+	{
+		RecipeSerializer jaxb = XmlBackend.JAXB.getSerializer();
+		RecipeSerializer streaming = XmlBackend.STREAMING.getSerializer();
+		
+		//Sample recipes
+		List<Recipe> recipes = RecipeFileReader.readFilesFromInput(testResourceDir);
+		recipes.add(createTestRecipe());
+		
+		//Chars requiring escape, no date, empty parents
+		Recipe escaped = createTestRecipe();
+		escaped.getMetadata().setCreated(null);
+		escaped.getMetadata().setTitle("Fish & Chips <Classic> \"Best\"\r\nVersion");
+		escaped.getContent().getIngredients().getIngredient().get(0).setUnit(null);
+		escaped.getContent().getMethod().getStep().clear();
+		recipes.add(escaped);
+		recipes.add(new ObjectFactory().createRecipe());
+		
+		for (Recipe recipe : recipes)
+		{
+			assertEquals("Expect identical output for recipe " + recipe.getId(), 
+					RecipeOutputWriter.marshalRecipe(recipe, jaxb), RecipeOutputWriter.marshalRecipe(recipe, streaming));
+		}
 	}
 	
 	/**